@@ -0,0 +1,623 @@
+package com.github.osndok.mrb.grinder;
+
+import org.osjava.jardiff.ClassInfo;
+import org.osjava.jardiff.DiffCriteria;
+import org.osjava.jardiff.DiffException;
+import org.osjava.jardiff.FieldInfo;
+import org.osjava.jardiff.JarDiff;
+import org.osjava.jardiff.MethodInfo;
+import org.osjava.jardiff.PublicDiffCriteria;
+import org.semver.Delta;
+import org.semver.jardiff.DifferenceAccumulatingHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The class, method, and field descriptors of a jar (i.e. what the semver Comparer looks at, but none of the
+ * bytecode), such that a jar's compatibility with a newer one can be decided without the old jar at hand, and
+ * without re-reading either jar's classes.
+ *
+ * Each class also has a hash (of its descriptors, and those of its superclasses) so that a comparison need only
+ * diff the classes that actually changed. Private members are left out, as they can never affect the outcome.
+ */
+public
+class ApiSignature
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(ApiSignature.class);
+
+	/**
+	 * Bumped whenever the serialized form changes, such that stale signatures are recomputed rather than misread.
+	 */
+	private static final
+	int FORMAT = 1;
+
+	private static final
+	DiffCriteria DIFF_CRITERIA = new PublicDiffCriteria();
+
+	/**
+	 * Bumped whenever the criteria (or the interpretation of their differences) change, such that remembered
+	 * compatibility verdicts are not reused across such a change.
+	 */
+	public static final
+	int CRITERIA_VERSION = 1;
+
+	/**
+	 * The outcome of a comparison, along with a (human readable) summary of the differences that decided it.
+	 */
+	public static
+	class Verdict
+	{
+		private final boolean compatible;
+		private final String  differences;
+
+		public
+		Verdict(boolean compatible, String differences)
+		{
+			this.compatible = compatible;
+			this.differences = differences;
+		}
+
+		public
+		boolean isCompatible()
+		{
+			return compatible;
+		}
+
+		/**
+		 * @return one difference per line, or null if there were none
+		 */
+		public
+		String getDifferences()
+		{
+			return differences;
+		}
+	}
+
+	private final
+	Map<String, ClassInfo> classesByName;
+
+	private final
+	Map<String, byte[]> hashesByName;
+
+	private
+	ApiSignature(Map<String, ClassInfo> classesByName) throws IOException
+	{
+		this.classesByName = classesByName;
+		this.hashesByName = new HashMap<String, byte[]>(classesByName.size());
+
+		final
+		MessageDigest md5 = md5();
+
+		for (ClassInfo classInfo : classesByName.values())
+		{
+			final
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+			writeClass(new DataOutputStream(buffer), classInfo);
+
+			hashesByName.put(classInfo.getName(), md5.digest(buffer.toByteArray()));
+		}
+	}
+
+	/**
+	 * Exposes the classes that JarDiff loads, rather than duplicating its class-file visitor.
+	 */
+	private static
+	class Loader extends JarDiff
+	{
+		Map<String, ClassInfo> load(File jar) throws IOException
+		{
+			try
+			{
+				loadOldClasses(jar);
+			}
+			catch (DiffException e)
+			{
+				throw new IOException(e);
+			}
+
+			return oldClassInfo;
+		}
+	}
+
+	/**
+	 * @throws IOException if the jar cannot be read, including (as asm throws unchecked exceptions for them) any
+	 * class files that are malformed, or newer than the bundled asm understands (e.g. those of Java 9 and later)
+	 */
+	public static
+	ApiSignature of(File jar) throws IOException
+	{
+		final
+		Map<String, ClassInfo> loaded;
+
+		try
+		{
+			loaded = new Loader().load(jar);
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException("unable to read the classes of " + jar, e);
+		}
+
+		final
+		Map<String, ClassInfo> classesByName = new HashMap<String, ClassInfo>(loaded.size());
+
+		for (ClassInfo classInfo : loaded.values())
+		{
+			classesByName.put(classInfo.getName(), withoutPrivateMembers(classInfo));
+		}
+
+		return new ApiSignature(classesByName);
+	}
+
+	private static
+	ClassInfo withoutPrivateMembers(ClassInfo classInfo)
+	{
+		final
+		Map<String, MethodInfo> methods = new TreeMap<String, MethodInfo>();
+
+		for (Map.Entry<String, MethodInfo> me : classInfo.getMethodMap().entrySet())
+		{
+			if (!me.getValue().isPrivate())
+			{
+				methods.put(me.getKey(), me.getValue());
+			}
+		}
+
+		final
+		Map<String, FieldInfo> fields = new TreeMap<String, FieldInfo>();
+
+		for (Map.Entry<String, FieldInfo> me : classInfo.getFieldMap().entrySet())
+		{
+			if (!me.getValue().isPrivate())
+			{
+				fields.put(me.getKey(), me.getValue());
+			}
+		}
+
+		return new ClassInfo(classInfo.getVersion(), classInfo.getAccess(), classInfo.getName(),
+								classInfo.getSignature(), classInfo.getSupername(), classInfo.getInterfaces(),
+								methods, fields);
+	}
+
+	public
+	int size()
+	{
+		return classesByName.size();
+	}
+
+	/**
+	 * @return true if a jar with this signature can be replaced by one with the given (newer) signature, which
+	 * is to say that there are no differences at all (to the semver Comparer) in their public API.
+	 */
+	public
+	boolean isCompatibleWithNewer(ApiSignature newer) throws IOException
+	{
+		return compareWithNewer(newer).isCompatible();
+	}
+
+	public
+	Verdict compareWithNewer(ApiSignature newer) throws IOException
+	{
+		final
+		Set<String> changed = new HashSet<String>();
+
+		final
+		Set<String> allNames = new HashSet<String>(classesByName.keySet());
+
+		allNames.addAll(newer.classesByName.keySet());
+
+		for (String name : allNames)
+		{
+			if (!Arrays.equals(this.inheritedHash(name), newer.inheritedHash(name)))
+			{
+				changed.add(name);
+			}
+		}
+
+		log.debug("{} of {} classes changed", changed.size(), allNames.size());
+
+		if (changed.isEmpty())
+		{
+			return new Verdict(true, null);
+		}
+
+		final
+		DifferenceAccumulatingHandler handler = new DifferenceAccumulatingHandler(Collections.<String>emptySet(),
+																				   Collections.<String>emptySet());
+
+		try
+		{
+			new JarDiff().diff(handler, DIFF_CRITERIA, "old", "new", this.relevantTo(changed), newer.relevantTo(changed));
+		}
+		catch (DiffException e)
+		{
+			throw new IOException(e);
+		}
+
+		final
+		Delta delta = handler.getDelta();
+
+		//Given no special information asto if the dependency is one of implementation or simple usage
+		//(though, we might be able to discover most implemenattions by scanning the classes), we must
+		//presume that they *do* implement interfaces, etc.
+		switch (delta.computeCompatibilityType())
+		{
+			case BACKWARD_COMPATIBLE_IMPLEMENTER:
+				return new Verdict(true, null);
+
+			case BACKWARD_COMPATIBLE_USER:
+			case NON_BACKWARD_COMPATIBLE:
+			{
+				final
+				StringBuilder sb = new StringBuilder();
+
+				for (Delta.Difference difference : delta.getDifferences())
+				{
+					log.info("difference: {}", difference.getInfo());
+
+					sb.append(difference.getClass().getSimpleName());
+					sb.append(": ");
+					sb.append(difference.getClassName());
+					sb.append(' ');
+					sb.append(difference.getInfo().getName());
+					sb.append('\n');
+				}
+
+				return new Verdict(false, sb.toString());
+			}
+
+			default:
+				throw new AssertionError();
+		}
+	}
+
+	/**
+	 * JarDiff folds the (non-private) members of a class's superclasses into it, so a class is only unchanged
+	 * if its superclasses are too.
+	 *
+	 * @return a hash of the named class and its superclasses (as far as they are in this signature), or null if the class is absent
+	 */
+	private
+	byte[] inheritedHash(String name)
+	{
+		byte[] hash = hashesByName.get(name);
+
+		if (hash == null)
+		{
+			return null;
+		}
+
+		final
+		MessageDigest md5 = md5();
+
+		String superName = classesByName.get(name).getSupername();
+
+		//NB: bounded, just in case a malformed jar has a cycle.
+		for (int depth = 0; hash != null && depth < 100; depth++)
+		{
+			md5.update(hash);
+			hash = (superName == null ? null : hashesByName.get(superName));
+			superName = (hash == null ? null : classesByName.get(superName).getSupername());
+		}
+
+		return md5.digest();
+	}
+
+	/**
+	 * @return the named classes (those that are present), along with their superclasses, as JarDiff will need them
+	 */
+	private
+	Map<String, ClassInfo> relevantTo(Set<String> names)
+	{
+		final
+		Map<String, ClassInfo> retval = new HashMap<String, ClassInfo>();
+
+		for (String name : names)
+		{
+			ClassInfo classInfo = classesByName.get(name);
+
+			while (classInfo != null && !retval.containsKey(classInfo.getName()))
+			{
+				retval.put(classInfo.getName(), classInfo);
+
+				final
+				String superName = classInfo.getSupername();
+
+				classInfo = (superName == null ? null : classesByName.get(superName));
+			}
+		}
+
+		return retval;
+	}
+
+	public
+	byte[] toBytes() throws IOException
+	{
+		final
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		final
+		DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(buffer));
+
+		out.writeInt(FORMAT);
+		out.writeInt(classesByName.size());
+
+		for (ClassInfo classInfo : new TreeMap<String, ClassInfo>(classesByName).values())
+		{
+			writeClass(out, classInfo);
+		}
+
+		out.close();
+
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * @return the signature that was serialized by toBytes(), or null if it was serialized in an older format
+	 */
+	public static
+	ApiSignature fromBytes(byte[] bytes) throws IOException
+	{
+		final
+		DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+
+		try
+		{
+			if (in.readInt() != FORMAT)
+			{
+				return null;
+			}
+
+			final
+			int count = in.readInt();
+
+			final
+			Map<String, ClassInfo> classesByName = new HashMap<String, ClassInfo>(count * 2);
+
+			for (int i = 0; i < count; i++)
+			{
+				final
+				ClassInfo classInfo = readClass(in);
+
+				classesByName.put(classInfo.getName(), classInfo);
+			}
+
+			return new ApiSignature(classesByName);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * NB: the members are written in key order (see withoutPrivateMembers), so that equal classes hash equally.
+	 */
+	private static
+	void writeClass(DataOutputStream out, ClassInfo classInfo) throws IOException
+	{
+		out.writeUTF(classInfo.getName());
+		out.writeInt(classInfo.getAccess());
+		out.writeInt(classInfo.getVersion());
+		writeNullable(out, classInfo.getSignature());
+		writeNullable(out, classInfo.getSupername());
+		writeStrings(out, classInfo.getInterfaces());
+
+		out.writeInt(classInfo.getMethodMap().size());
+
+		for (MethodInfo methodInfo : classInfo.getMethodMap().values())
+		{
+			out.writeInt(methodInfo.getAccess());
+			out.writeUTF(methodInfo.getName());
+			out.writeUTF(methodInfo.getDesc());
+			writeNullable(out, methodInfo.getSignature());
+			writeStrings(out, methodInfo.getExceptions());
+		}
+
+		out.writeInt(classInfo.getFieldMap().size());
+
+		for (FieldInfo fieldInfo : classInfo.getFieldMap().values())
+		{
+			out.writeInt(fieldInfo.getAccess());
+			out.writeUTF(fieldInfo.getName());
+			out.writeUTF(fieldInfo.getDesc());
+			writeNullable(out, fieldInfo.getSignature());
+			writeConstant(out, fieldInfo.getValue());
+		}
+	}
+
+	/**
+	 * NB: the member maps are keyed the same way as JarDiff's class-file visitor keys them.
+	 */
+	private static
+	ClassInfo readClass(DataInputStream in) throws IOException
+	{
+		final String   name = in.readUTF();
+		final int      access = in.readInt();
+		final int      version = in.readInt();
+		final String   signature = readNullable(in);
+		final String   supername = readNullable(in);
+		final String[] interfaces = readStrings(in);
+
+		final
+		Map<String, MethodInfo> methods = new TreeMap<String, MethodInfo>();
+
+		for (int i = in.readInt(); i > 0; i--)
+		{
+			final
+			MethodInfo methodInfo = new MethodInfo(in.readInt(), in.readUTF(), in.readUTF(), readNullable(in),
+													  readStrings(in));
+
+			methods.put(methodInfo.getName() + methodInfo.getDesc(), methodInfo);
+		}
+
+		final
+		Map<String, FieldInfo> fields = new TreeMap<String, FieldInfo>();
+
+		for (int i = in.readInt(); i > 0; i--)
+		{
+			final
+			FieldInfo fieldInfo = new FieldInfo(in.readInt(), in.readUTF(), in.readUTF(), readNullable(in),
+												   readConstant(in));
+
+			fields.put(fieldInfo.getName(), fieldInfo);
+		}
+
+		return new ClassInfo(version, access, name, signature, supername, interfaces, methods, fields);
+	}
+
+	private static
+	void writeNullable(DataOutputStream out, String s) throws IOException
+	{
+		out.writeBoolean(s != null);
+
+		if (s != null)
+		{
+			out.writeUTF(s);
+		}
+	}
+
+	private static
+	String readNullable(DataInputStream in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static
+	void writeStrings(DataOutputStream out, String[] strings) throws IOException
+	{
+		if (strings == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+
+		out.writeInt(strings.length);
+
+		for (String s : strings)
+		{
+			out.writeUTF(s);
+		}
+	}
+
+	private static
+	String[] readStrings(DataInputStream in) throws IOException
+	{
+		final
+		int length = in.readInt();
+
+		if (length < 0)
+		{
+			return null;
+		}
+
+		final
+		String[] retval = new String[length];
+
+		for (int i = 0; i < length; i++)
+		{
+			retval[i] = in.readUTF();
+		}
+
+		return retval;
+	}
+
+	/**
+	 * A field's constant value, which can only be one of these types (or absent).
+	 */
+	private static
+	void writeConstant(DataOutputStream out, Object value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeByte('0');
+		}
+		else
+		if (value instanceof Integer)
+		{
+			out.writeByte('I');
+			out.writeInt((Integer) value);
+		}
+		else
+		if (value instanceof Long)
+		{
+			out.writeByte('J');
+			out.writeLong((Long) value);
+		}
+		else
+		if (value instanceof Float)
+		{
+			out.writeByte('F');
+			out.writeFloat((Float) value);
+		}
+		else
+		if (value instanceof Double)
+		{
+			out.writeByte('D');
+			out.writeDouble((Double) value);
+		}
+		else
+		if (value instanceof String)
+		{
+			out.writeByte('S');
+			out.writeUTF((String) value);
+		}
+		else
+		{
+			throw new IOException("unexpected constant type: " + value.getClass());
+		}
+	}
+
+	private static
+	Object readConstant(DataInputStream in) throws IOException
+	{
+		final
+		byte type = in.readByte();
+
+		switch (type)
+		{
+			case '0': return null;
+			case 'I': return in.readInt();
+			case 'J': return in.readLong();
+			case 'F': return in.readFloat();
+			case 'D': return in.readDouble();
+			case 'S': return in.readUTF();
+
+			default:
+				throw new IOException("unknown constant type: " + type);
+		}
+	}
+
+	private static
+	MessageDigest md5()
+	{
+		try
+		{
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+}
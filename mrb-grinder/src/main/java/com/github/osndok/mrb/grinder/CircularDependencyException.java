@@ -0,0 +1,31 @@
+package com.github.osndok.mrb.grinder;
+
+import java.util.List;
+
+/**
+ * Thrown when the maven dependency graph (as declared in the pom files) loops back onto
+ * itself, such that no grinding order could satisfy every artifact's requirements.
+ */
+public
+class CircularDependencyException extends Exception
+{
+	private final
+	List<MavenInfo> cycle;
+
+	public
+	CircularDependencyException(List<MavenInfo> cycle)
+	{
+		super("circular maven dependency: "+cycle);
+
+		this.cycle = cycle;
+	}
+
+	/**
+	 * @return the artifacts that form the cycle, where the first is repeated at the end
+	 */
+	public
+	List<MavenInfo> getCycle()
+	{
+		return cycle;
+	}
+}
@@ -0,0 +1,347 @@
+package com.github.osndok.mrb.grinder;
+
+import com.github.osndok.mrb.grinder.rpm.RPMManifold;
+import com.github.osndok.mrb.grinder.util.DependencyGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.module.util.SystemPropertyOrEnvironment;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Grinds whole artifact closures by first resolving the full maven dependency graph (from the
+ * pom files), and then grinding independent artifacts concurrently (leaves first) on a bounded
+ * pool of worker threads.
+ *
+ * This does not replace the recursive grinding in RPMRegistry.getMajorVersionFor(), which is still
+ * the safety net for anything that the pom-level graph could not see (e.g. optional dependencies);
+ * but by the time a given artifact is ground, all of its declared dependencies should already be
+ * in the registry, and that recursion should not be needed.
+ */
+public
+class GrindScheduler
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(GrindScheduler.class);
+
+	public static final
+	int DEFAULT_THREADS = Integer.parseInt(SystemPropertyOrEnvironment.get("GRIND_THREADS",
+		String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+	private final
+	int threads;
+
+	private final
+	DependencyGraph<MavenInfo> graph = new DependencyGraph<MavenInfo>();
+
+	private final
+	Set<MavenInfo> roots = new LinkedHashSet<MavenInfo>();
+
+	private final
+	Set<MavenInfo> alreadyGround = new HashSet<MavenInfo>();
+
+	private final
+	Set<MavenInfo> failures = new LinkedHashSet<MavenInfo>();
+
+	private final
+	Set<MavenInfo> skipped = new LinkedHashSet<MavenInfo>();
+
+	public
+	GrindScheduler()
+	{
+		this(DEFAULT_THREADS);
+	}
+
+	public
+	GrindScheduler(int threads)
+	{
+		if (threads<1)
+		{
+			throw new IllegalArgumentException("must have at least one worker thread, not: "+threads);
+		}
+
+		this.threads = threads;
+	}
+
+	/**
+	 * Adds the given artifact (and all of it's not-yet-ground, non-optional dependencies) to the graph.
+	 */
+	public
+	void add(MavenInfo mavenInfo)
+	{
+		roots.add(mavenInfo);
+
+		final
+		List<MavenInfo> queue=new ArrayList<MavenInfo>();
+
+		if (graph.addNode(mavenInfo))
+		{
+			queue.add(mavenInfo);
+		}
+
+		for (int i=0; i<queue.size(); i++)
+		{
+			final
+			MavenInfo node=queue.get(i);
+
+			for (MavenInfo requirement : declaredRequirementsOf(node))
+			{
+				if (requirement.isOptional())
+				{
+					log.debug("not scheduling optional dependency: {} -> {}", node, requirement);
+					continue;
+				}
+
+				if (!graph.contains(requirement))
+				{
+					if (alreadyGround(requirement))
+					{
+						continue;
+					}
+
+					graph.addNode(requirement);
+					queue.add(requirement);
+				}
+
+				graph.addEdge(node, requirement);
+			}
+		}
+
+		log.info("{} -> {} artifacts in grinding graph", mavenInfo, graph.size());
+	}
+
+	private
+	boolean alreadyGround(MavenInfo mavenInfo)
+	{
+		if (alreadyGround.contains(mavenInfo) || new Main().looksLikeSunTools(mavenInfo))
+		{
+			return true;
+		}
+
+		try
+		{
+			if (RPMManifold.getRepoFor(mavenInfo).getRpmRegistry().contains(mavenInfo))
+			{
+				log.debug("already in registry: {}", mavenInfo);
+				alreadyGround.add(mavenInfo);
+				return true;
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("unable to check registry for {}", mavenInfo, e);
+		}
+
+		return false;
+	}
+
+	private
+	Set<MavenInfo> declaredRequirementsOf(MavenInfo mavenInfo)
+	{
+		try
+		{
+			final
+			MavenPom mavenPom=MavenPom.fetchedFromMavenCentral(mavenInfo);
+
+			final
+			Set<MavenInfo> retval=new LinkedHashSet<MavenInfo>(mavenPom.getDependencies());
+
+			retval.remove(mavenInfo);
+			return retval;
+		}
+		catch (Exception e)
+		{
+			//Not fatal... we just won't know what to grind first, and will fall back to the recursive grinding.
+			log.warn("unable to read pom for {}, treating as a leaf: {}", mavenInfo, e.toString());
+			return Collections.emptySet();
+		}
+	}
+
+	/**
+	 * Grinds every artifact in the graph, such that no artifact is started until all of it's
+	 * requirements have been ground. If any artifact fails, everything that depends on it is
+	 * skipped, but independent branches are still ground.
+	 *
+	 * @return true if (and only if) every artifact in the graph was successfully ground (or was obsolete)
+	 */
+	public
+	boolean run() throws CircularDependencyException, InterruptedException
+	{
+		final
+		List<MavenInfo> cycle=graph.findCycle();
+
+		if (cycle!=null)
+		{
+			throw new CircularDependencyException(cycle);
+		}
+
+		final
+		Map<MavenInfo, Integer> remaining=graph.getRequirementCounts();
+
+		final
+		ExecutorService executor=Executors.newFixedThreadPool(threads);
+
+		try
+		{
+			final
+			CompletionService<MavenInfo> completionService=new ExecutorCompletionService<MavenInfo>(executor);
+
+			int inFlight=0;
+
+			for (Map.Entry<MavenInfo, Integer> me : remaining.entrySet())
+			{
+				if (me.getValue()==0)
+				{
+					completionService.submit(grindTask(me.getKey()));
+					inFlight++;
+				}
+			}
+
+			log.info("grinding {} artifacts with {} threads, {} initially ready", graph.size(), threads, inFlight);
+
+			while (inFlight>0)
+			{
+				final
+				Future<MavenInfo> future=completionService.take();
+
+				inFlight--;
+
+				final
+				MavenInfo finished;
+
+				try
+				{
+					finished=future.get();
+				}
+				catch (ExecutionException e)
+				{
+					final
+					MavenInfo failed=failedArtifact(e);
+
+					failures.add(failed);
+
+					for (MavenInfo dependent : graph.allDependentsOf(Collections.singleton(failed)))
+					{
+						if (skipped.add(dependent))
+						{
+							log.error("skipping {}, because it requires {}", dependent, failed);
+						}
+					}
+
+					continue;
+				}
+
+				for (MavenInfo dependent : graph.getDependents(finished))
+				{
+					final
+					int count=remaining.get(dependent)-1;
+
+					remaining.put(dependent, count);
+
+					if (count==0 && !skipped.contains(dependent))
+					{
+						completionService.submit(grindTask(dependent));
+						inFlight++;
+					}
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		log.info("ground {} artifacts: {} failed, {} skipped", graph.size(), failures.size(), skipped.size());
+
+		return failures.isEmpty() && skipped.isEmpty();
+	}
+
+	private static
+	MavenInfo failedArtifact(ExecutionException e)
+	{
+		final
+		Throwable cause=e.getCause();
+
+		if (cause instanceof GrindFailure)
+		{
+			return ((GrindFailure)cause).mavenInfo;
+		}
+		else
+		{
+			throw new IllegalStateException("unexpected task failure", cause);
+		}
+	}
+
+	private
+	Callable<MavenInfo> grindTask(final MavenInfo mavenInfo)
+	{
+		return new Callable<MavenInfo>()
+		{
+			@Override
+			public
+			MavenInfo call() throws Exception
+			{
+				try
+				{
+					new Main().grindMavenArtifact(mavenInfo);
+				}
+				catch (ObsoleteJarException e)
+				{
+					log.info("obsolete: {}", e.toString());
+				}
+				catch (Exception e)
+				{
+					log.error("unable to grind: {}", mavenInfo, e);
+					throw new GrindFailure(mavenInfo, e);
+				}
+
+				return mavenInfo;
+			}
+		};
+	}
+
+	private static
+	class GrindFailure extends Exception
+	{
+		private final
+		MavenInfo mavenInfo;
+
+		GrindFailure(MavenInfo mavenInfo, Exception cause)
+		{
+			super(mavenInfo.toString(), cause);
+			this.mavenInfo=mavenInfo;
+		}
+	}
+
+	public
+	Set<MavenInfo> getFailures()
+	{
+		return Collections.unmodifiableSet(failures);
+	}
+
+	public
+	Set<MavenInfo> getSkipped()
+	{
+		return Collections.unmodifiableSet(skipped);
+	}
+
+	public
+	Set<MavenInfo> getRoots()
+	{
+		return Collections.unmodifiableSet(roots);
+	}
+}
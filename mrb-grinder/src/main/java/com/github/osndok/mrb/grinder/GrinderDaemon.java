@@ -0,0 +1,493 @@
+package com.github.osndok.mrb.grinder;
+
+import com.github.osndok.mrb.grinder.rpm.RPMManifold;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.module.util.SystemPropertyOrEnvironment;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A resident grinder, which accepts grind requests via a spool directory, such that the manifold, the
+ * registries (and their sqlite connections), and the jit-compiled analysis code stay warm across requests.
+ *
+ * The spool directory looks like this:
+ *
+ * incoming/ID.req  - one command-line argument per line, written by the client (to a dot-file, then renamed)
+ * active/ID.req    - a request that the daemon has claimed (by renaming it out of incoming)
+ * done/ID.status   - the exit status (first line), followed by any failures, written by the daemon
+ * daemon.pid       - the pid of the running daemon, which is touched every poll interval as a heartbeat (by a
+ *                    thread of its own, such that a long grind does not look like a dead daemon)
+ *
+ * Requests are processed one-at-a-time, in the order they were submitted; a single request can still
+ * ask for concurrency via "--parallel". Only the arguments are sent (with file arguments made absolute, in
+ * lieu of sending the working directory), so a client should only opt in (via USE_DAEMON) if it shares the
+ * daemon's settings.
+ *
+ * A spool directory (rather than a socket) was chosen because it needs no extra wire protocol, survives
+ * a daemon restart, and is trivially inspected or cleaned up with standard tools.
+ */
+public
+class GrinderDaemon
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(GrinderDaemon.class);
+
+	public static final
+	File SPOOL = new File(SystemPropertyOrEnvironment.get("MRB_SPOOL", "/var/spool/mrb-grinder"));
+
+	/**
+	 * If true, the command-line tool hands its requests to a running daemon (if any). Off by default, as the
+	 * daemon grinds with its *own* environment (e.g. repo locations, DEBUG, and every other setting that is read
+	 * from the environment once, at startup), not the client's, which it has no way of applying.
+	 */
+	public static final
+	boolean USE_DAEMON = SystemPropertyOrEnvironment.getBoolean("USE_DAEMON", false);
+
+	private static final
+	long POLL_MILLIS = Long.parseLong(SystemPropertyOrEnvironment.get("DAEMON_POLL_MILLIS", "250"));
+
+	/**
+	 * A daemon is considered dead if its heartbeat is older than this.
+	 */
+	private static final
+	long HEARTBEAT_TIMEOUT = Math.max(10000, 20 * POLL_MILLIS);
+
+	private static final
+	String REQUEST_SUFFIX = ".req";
+
+	private static final
+	String STATUS_SUFFIX = ".status";
+
+	private final
+	File incoming;
+
+	private final
+	File active;
+
+	private final
+	File done;
+
+	private final
+	File pidFile;
+
+	public
+	GrinderDaemon(File spool)
+	{
+		this.incoming = new File(spool, "incoming");
+		this.active = new File(spool, "active");
+		this.done = new File(spool, "done");
+		this.pidFile = new File(spool, "daemon.pid");
+	}
+
+	public
+	void run() throws IOException
+	{
+		mkdirs(incoming);
+		mkdirs(active);
+		mkdirs(done);
+
+		if (isRunning(pidFile.getParentFile()))
+		{
+			throw new IOException("another grinder daemon appears to be running: " + pidFile);
+		}
+
+		writeLines(pidFile, Arrays.asList(getPid()));
+
+		final
+		Timer heartbeat = new Timer("grinder-daemon-heartbeat", true);
+
+		heartbeat.schedule(new TimerTask()
+		{
+			@Override
+			public
+			void run()
+			{
+				if (!pidFile.setLastModified(System.currentTimeMillis()))
+				{
+					log.error("unable to touch: {}", pidFile);
+				}
+			}
+		}, 0, POLL_MILLIS);
+
+		try
+		{
+			failLeftoverRequests();
+
+			//Warm up the slow-to-start bits before any client is waiting on us.
+			RPMManifold.getInstance();
+
+			log.info("grinder daemon ready, spooling from: {}", pidFile.getParentFile());
+
+			while (true)
+			{
+				final
+				File request = nextRequest();
+
+				if (request == null)
+				{
+					try
+					{
+						Thread.sleep(POLL_MILLIS);
+					}
+					catch (InterruptedException e)
+					{
+						log.info("interrupted, stopping");
+						return;
+					}
+
+					continue;
+				}
+
+				process(request);
+			}
+		}
+		finally
+		{
+			heartbeat.cancel();
+		}
+	}
+
+	/**
+	 * @return the oldest claimable request (which is now in the active directory), or null if there are none
+	 */
+	private
+	File nextRequest()
+	{
+		final
+		File[] files = incoming.listFiles();
+
+		if (files == null)
+		{
+			return null;
+		}
+
+		Arrays.sort(files);
+
+		for (File file : files)
+		{
+			final
+			String name = file.getName();
+
+			if (name.startsWith(".") || !name.endsWith(REQUEST_SUFFIX))
+			{
+				continue;
+			}
+
+			final
+			File claimed = new File(active, name);
+
+			//NB: the rename is what makes the claim atomic (e.g. vs. a client that is giving up on us).
+			if (file.renameTo(claimed))
+			{
+				return claimed;
+			}
+		}
+
+		return null;
+	}
+
+	private
+	void process(File request)
+	{
+		final
+		String id = idOf(request);
+
+		final
+		List<String> failures = new ArrayList<String>();
+
+		int status;
+
+		try
+		{
+			final
+			List<String> args = readLines(request);
+
+			log.info("request {}: {}", id, args);
+
+			final
+			long startTime = System.currentTimeMillis();
+
+			status = Main.grindAll(args.toArray(new String[args.size()]), failures);
+
+			log.info("request {}: exit status {} after {} ms", id, status, System.currentTimeMillis() - startTime);
+		}
+		catch (Throwable t)
+		{
+			log.error("request {}: failed", id, t);
+			failures.add(t.toString());
+			status = 1;
+		}
+
+		try
+		{
+			writeStatus(id, status, failures);
+		}
+		catch (IOException e)
+		{
+			log.error("request {}: unable to write status", id, e);
+		}
+
+		if (!request.delete())
+		{
+			log.warn("unable to delete: {}", request);
+		}
+	}
+
+	/**
+	 * Any request that a previous daemon had claimed (but not finished) is failed, rather than retried,
+	 * as it might be the very thing that killed it.
+	 */
+	private
+	void failLeftoverRequests() throws IOException
+	{
+		final
+		File[] files = active.listFiles();
+
+		if (files == null)
+		{
+			return;
+		}
+
+		for (File file : files)
+		{
+			if (file.getName().endsWith(REQUEST_SUFFIX))
+			{
+				log.warn("failing request left over from previous daemon: {}", file);
+				writeStatus(idOf(file), 1, Arrays.asList("grinder daemon died while processing this request"));
+				file.delete();
+			}
+		}
+	}
+
+	private
+	void writeStatus(String id, int status, List<String> failures) throws IOException
+	{
+		final
+		List<String> lines = new ArrayList<String>();
+
+		lines.add(String.valueOf(status));
+		lines.addAll(failures);
+
+		final
+		File tmp = new File(done, "." + id + STATUS_SUFFIX);
+
+		writeLines(tmp, lines);
+
+		if (!tmp.renameTo(new File(done, id + STATUS_SUFFIX)))
+		{
+			throw new IOException("unable to rename: " + tmp);
+		}
+	}
+
+	/**
+	 * @return true if a daemon has recently signaled that it is alive via the given spool directory
+	 */
+	public static
+	boolean isRunning(File spool)
+	{
+		final
+		File pidFile = new File(spool, "daemon.pid");
+
+		return pidFile.exists() && System.currentTimeMillis() - pidFile.lastModified() < HEARTBEAT_TIMEOUT;
+	}
+
+	/**
+	 * Hands the given command-line arguments to the running daemon, and waits for it to finish.
+	 *
+	 * @return the exit status of the request, or null if the daemon died before it could claim the request (in which case the request was withdrawn)
+	 */
+	public static
+	Integer submit(File spool, String[] args) throws IOException
+	{
+		final
+		String id = System.currentTimeMillis() + "-" + getPid() + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt());
+
+		final
+		File incoming = new File(spool, "incoming");
+
+		final
+		File request = new File(incoming, id + REQUEST_SUFFIX);
+
+		final
+		File status = new File(new File(spool, "done"), id + STATUS_SUFFIX);
+
+		{
+			final
+			File tmp = new File(incoming, "." + id + REQUEST_SUFFIX);
+
+			writeLines(tmp, absoluteArguments(args));
+
+			if (!tmp.renameTo(request))
+			{
+				throw new IOException("unable to rename: " + tmp);
+			}
+		}
+
+		log.info("submitted request {} to grinder daemon", id);
+
+		while (!status.exists())
+		{
+			if (!isRunning(spool))
+			{
+				//If we can withdraw the request, the daemon never saw it...
+				if (request.renameTo(new File(incoming, "." + id + ".withdrawn")))
+				{
+					new File(incoming, "." + id + ".withdrawn").delete();
+					return null;
+				}
+
+				if (!status.exists())
+				{
+					throw new IOException("grinder daemon died while processing request: " + id);
+				}
+
+				break;
+			}
+
+			try
+			{
+				Thread.sleep(POLL_MILLIS);
+			}
+			catch (InterruptedException e)
+			{
+				throw new IOException(e);
+			}
+		}
+
+		final
+		List<String> lines = readLines(status);
+
+		status.delete();
+
+		for (String failure : lines.subList(1, lines.size()))
+		{
+			log.error("daemon: {}", failure);
+		}
+
+		return Integer.parseInt(lines.get(0).trim());
+	}
+
+	/**
+	 * The daemon (almost certainly) has a different working directory than the client, so any
+	 * file arguments must be made absolute before being sent.
+	 */
+	private static
+	List<String> absoluteArguments(String[] args)
+	{
+		final
+		List<String> retval = new ArrayList<String>(args.length);
+
+		for (String arg : args)
+		{
+			if (arg.startsWith("--") || arg.equals("tools") || arg.indexOf(':') > 0)
+			{
+				retval.add(arg);
+			}
+			else
+			{
+				retval.add(new File(arg).getAbsolutePath());
+			}
+		}
+
+		return retval;
+	}
+
+	private static
+	String idOf(File request)
+	{
+		final
+		String name = request.getName();
+
+		return name.substring(0, name.length() - REQUEST_SUFFIX.length());
+	}
+
+	private static
+	String getPid()
+	{
+		//e.g. "12345@hostname"
+		final
+		String name = ManagementFactory.getRuntimeMXBean().getName();
+
+		final
+		int at = name.indexOf('@');
+
+		return (at > 0 ? name.substring(0, at) : name);
+	}
+
+	private static
+	void mkdirs(File dir) throws IOException
+	{
+		if (!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("unable to create directory: " + dir);
+		}
+	}
+
+	private static
+	List<String> readLines(File file) throws IOException
+	{
+		final
+		List<String> retval = new ArrayList<String>();
+
+		final
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+		try
+		{
+			String line;
+
+			while ((line = br.readLine()) != null)
+			{
+				if (line.length() > 0)
+				{
+					retval.add(line);
+				}
+			}
+		}
+		finally
+		{
+			br.close();
+		}
+
+		return retval;
+	}
+
+	private static
+	void writeLines(File file, List<String> lines) throws IOException
+	{
+		final
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+
+		try
+		{
+			for (String line : lines)
+			{
+				out.println(line);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		if (out.checkError())
+		{
+			throw new IOException("unable to write: " + file);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.github.osndok.mrb.grinder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The outputs of MavenJar's bytecode analysis (the tools, reactor entries, plugin classes, and referenced
+ * classes of a jar, for a given module key), such that they can be stored with the jar's hash, and a regrind
+ * of the same bytes can skip re-reading the classes.
+ *
+ * NB: plugin classes are recorded with the names of the interfaces that they implement, rather than with the
+ * modules that provide those interfaces, as the latter depend on what else is in the repo (not just the jar).
+ */
+public
+class JarAnalysis
+{
+	/**
+	 * Bumped whenever the analysis (or its serialized form) changes, such that results from an older grinder
+	 * are recomputed rather than reused.
+	 */
+	public static final
+	int VERSION = 1;
+
+	private final
+	Map<String, String> execClassesByToolName;
+
+	private final
+	Map<String, Properties> reactorPropertiesByPath;
+
+	private final
+	Map<String, List<String>> pluginInterfacesByClassName;
+
+	private final
+	Set<String> referencedClassNames;
+
+	public
+	JarAnalysis(
+				   Map<String, String> execClassesByToolName,
+				   Map<String, Properties> reactorPropertiesByPath,
+				   Map<String, List<String>> pluginInterfacesByClassName,
+				   Set<String> referencedClassNames
+	)
+	{
+		this.execClassesByToolName = execClassesByToolName;
+		this.reactorPropertiesByPath = reactorPropertiesByPath;
+		this.pluginInterfacesByClassName = pluginInterfacesByClassName;
+		this.referencedClassNames = referencedClassNames;
+	}
+
+	public
+	Map<String, String> getExecClassesByToolName()
+	{
+		return execClassesByToolName;
+	}
+
+	public
+	Map<String, Properties> getReactorPropertiesByPath()
+	{
+		return reactorPropertiesByPath;
+	}
+
+	public
+	Map<String, List<String>> getPluginInterfacesByClassName()
+	{
+		return pluginInterfacesByClassName;
+	}
+
+	public
+	Set<String> getReferencedClassNames()
+	{
+		return referencedClassNames;
+	}
+
+	public
+	byte[] toBytes() throws IOException
+	{
+		final
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		final
+		DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(buffer));
+
+		out.writeInt(execClassesByToolName.size());
+
+		for (Map.Entry<String, String> me : new TreeMap<String, String>(execClassesByToolName).entrySet())
+		{
+			out.writeUTF(me.getKey());
+			out.writeUTF(me.getValue());
+		}
+
+		out.writeInt(reactorPropertiesByPath.size());
+
+		for (Map.Entry<String, Properties> me : new TreeMap<String, Properties>(reactorPropertiesByPath).entrySet())
+		{
+			out.writeUTF(me.getKey());
+
+			final
+			Set<String> names = new TreeSet<String>(me.getValue().stringPropertyNames());
+
+			out.writeInt(names.size());
+
+			for (String name : names)
+			{
+				out.writeUTF(name);
+				out.writeUTF(me.getValue().getProperty(name));
+			}
+		}
+
+		out.writeInt(pluginInterfacesByClassName.size());
+
+		for (Map.Entry<String, List<String>> me : new TreeMap<String, List<String>>(pluginInterfacesByClassName).entrySet())
+		{
+			out.writeUTF(me.getKey());
+			writeStrings(out, me.getValue());
+		}
+
+		writeStrings(out, referencedClassNames);
+
+		out.close();
+
+		return buffer.toByteArray();
+	}
+
+	public static
+	JarAnalysis fromBytes(byte[] bytes) throws IOException
+	{
+		final
+		DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+
+		try
+		{
+			final
+			Map<String, String> execClassesByToolName = new HashMap<String, String>();
+
+			for (int i = in.readInt(); i > 0; i--)
+			{
+				execClassesByToolName.put(in.readUTF(), in.readUTF());
+			}
+
+			final
+			Map<String, Properties> reactorPropertiesByPath = new HashMap<String, Properties>();
+
+			for (int i = in.readInt(); i > 0; i--)
+			{
+				final
+				String path = in.readUTF();
+
+				final
+				Properties properties = new Properties();
+
+				for (int j = in.readInt(); j > 0; j--)
+				{
+					properties.setProperty(in.readUTF(), in.readUTF());
+				}
+
+				reactorPropertiesByPath.put(path, properties);
+			}
+
+			final
+			Map<String, List<String>> pluginInterfacesByClassName = new HashMap<String, List<String>>();
+
+			for (int i = in.readInt(); i > 0; i--)
+			{
+				final
+				String className = in.readUTF();
+
+				pluginInterfacesByClassName.put(className, readStrings(in, new ArrayList<String>()));
+			}
+
+			final
+			Set<String> referencedClassNames = readStrings(in, new TreeSet<String>());
+
+			return new JarAnalysis(execClassesByToolName, reactorPropertiesByPath, pluginInterfacesByClassName,
+									  referencedClassNames);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static
+	void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException
+	{
+		out.writeInt(strings.size());
+
+		for (String s : strings)
+		{
+			out.writeUTF(s);
+		}
+	}
+
+	private static
+	<T extends Collection<String>> T readStrings(DataInputStream in, T retval) throws IOException
+	{
+		for (int i = in.readInt(); i > 0; i--)
+		{
+			retval.add(in.readUTF());
+		}
+
+		return retval;
+	}
+}
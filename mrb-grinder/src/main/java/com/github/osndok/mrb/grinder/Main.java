@@ -1,5 +1,6 @@
 package com.github.osndok.mrb.grinder;
 
+import com.github.osndok.mrb.grinder.aether.ArtifactResolver;
 import com.github.osndok.mrb.grinder.api.SpecShard;
 import com.github.osndok.mrb.grinder.api.WarFileInfo;
 import com.github.osndok.mrb.grinder.api.WarProcessingPlugin;
@@ -10,6 +11,7 @@ import com.github.osndok.mrb.grinder.rpm.RPMRepo;
 import com.github.osndok.mrb.grinder.rpm.RPMSpec;
 import com.github.osndok.mrb.grinder.util.Exec;
 import com.github.osndok.mrb.grinder.util.SpecSourceAllocatorImpl;
+import com.github.osndok.mrb.grinder.util.Workspace;
 import com.github.osndok.mrb.grinder.webapps.HJLinkedWebapp;
 import com.github.osndok.mrb.grinder.webapps.HJUnlinkedWebapp;
 import com.github.osndok.mrb.grinder.webapps.TomcatUnlinkedWebapp;
@@ -48,47 +50,158 @@ class Main
 	public static final  boolean RECURSIVE = SystemPropertyOrEnvironment.getBoolean("RECURSIVE", true);
 	private static final boolean DEBUG     = SystemPropertyOrEnvironment.getBoolean("DEBUG", true);
 
+	/**
+	 * If true (the default), yum metadata is rebuilt once at the end of the run (or as batch limits are reached)
+	 * rather than after every single rpm.
+	 */
+	private static final boolean DEFER_METADATA = SystemPropertyOrEnvironment.getBoolean("DEFER_METADATA", true);
+
 	//TODO: atm, "force" may be construed two ways... specific to the top-level grinding (replace this jar), or global ("I just want it to work"). Maybe split it?
 	public static boolean FORCE = false;
 
 	//TODO: let us "eat our own dog food" and rid ourselves of this main method!!! and 'Main' class name!!!
 	public static
 	void main(String[] args) throws IOException
+	{
+		if (args.length == 1 && args[0].equals("--daemon"))
+		{
+			new GrinderDaemon(GrinderDaemon.SPOOL).run();
+			return;
+		}
+
+		if (GrinderDaemon.USE_DAEMON && GrinderDaemon.isRunning(GrinderDaemon.SPOOL))
+		{
+			final
+			Integer status = GrinderDaemon.submit(GrinderDaemon.SPOOL, args);
+
+			if (status != null)
+			{
+				System.exit(status);
+			}
+
+			log.warn("grinder daemon went away, grinding locally");
+		}
+
+		System.exit(grindAll(args, null));
+	}
+
+	/**
+	 * Grinds everything named by the given command-line arguments, continuing past any individual failures.
+	 *
+	 * @param failures if non-null, receives a one-line description of each failure
+	 * @return the process exit status, zero if (and only if) everything was ground (or was obsolete)
+	 */
+	static
+	int grindAll(String[] args, Collection<String> failures)
 	{
 		final
 		Main main = new Main();
 
 		int status = 0;
 
-		for (String arg : args)
+		if (DEFER_METADATA)
 		{
-			try
+			RPMManifold.getInstance().beginBatch();
+		}
+
+		//When parallel, maven coordinates are only collected in the loop, and then ground all-at-once.
+		GrindScheduler scheduler = null;
+
+		try
+		{
+			for (String arg : args)
 			{
-				if (arg.equals("--force"))
+				try
 				{
-					FORCE = true;
+					if (arg.equals("--force"))
+					{
+						FORCE = true;
+					}
+					else if (arg.equals("--parallel"))
+					{
+						scheduler = new GrindScheduler();
+					}
+					else if (arg.equals("tools"))
+					{
+						main.getSunTools();
+					}
+					else if (arg.indexOf(':') > 0)
+					{
+						if (scheduler == null)
+						{
+							main.grindMavenArtifact(MavenInfo.parse(arg));
+						}
+						else
+						{
+							scheduler.add(MavenInfo.parse(arg));
+						}
+					}
+					else
+					{
+						main.grind(new File(arg));
+					}
 				}
-				else if (arg.equals("tools"))
+				catch (Exception e)
 				{
-					main.getSunTools();
+					log.error("unable to grind: {}", arg, e);
+					status = 1;
+
+					if (failures != null)
+					{
+						failures.add(arg + ": " + e);
+					}
 				}
-				else if (arg.indexOf(':') > 0)
+			}
+
+			if (scheduler != null)
+			{
+				try
 				{
-					main.grindMavenArtifact(MavenInfo.parse(arg));
+					if (!scheduler.run())
+					{
+						log.error("failed: {}, skipped: {}", scheduler.getFailures(), scheduler.getSkipped());
+						status = 1;
+
+						if (failures != null)
+						{
+							failures.add("failed: " + scheduler.getFailures() + ", skipped: " + scheduler.getSkipped());
+						}
+					}
 				}
-				else
+				catch (Exception e)
 				{
-					main.grind(new File(arg));
+					log.error("unable to grind: {}", scheduler.getRoots(), e);
+					status = 1;
+
+					if (failures != null)
+					{
+						failures.add(scheduler.getRoots() + ": " + e);
+					}
 				}
 			}
-			catch (Exception e)
+		}
+		finally
+		{
+			//NB: when run from the daemon, "--force" must not leak into the next request.
+			FORCE = false;
+		}
+
+		try
+		{
+			RPMManifold.getInstance().finishBatch();
+		}
+		catch (Exception e)
+		{
+			log.error("unable to rebuild repo metadata", e);
+			status = 1;
+
+			if (failures != null)
 			{
-				log.error("unable to grind: {}", arg, e);
-				status = 1;
+				failures.add("unable to rebuild repo metadata: " + e);
 			}
 		}
 
-		System.exit(status);
+		return status;
 	}
 
 	private
@@ -119,7 +232,7 @@ class Main
 			{
 				log.debug("not a writable directory: {}", parentFile);
 
-				tempDirectory = new File(Exec.toString("mktemp", "-d", "/tmp/mrb-grinder-XXXXXXXX").trim());
+				tempDirectory = Workspace.createTempDirectory("mrb-grinder-");
 
 				log.debug("created: {}", tempDirectory);
 
@@ -128,7 +241,7 @@ class Main
 					final
 					File newFile = new File(tempDirectory, file.getName());
 					{
-						Exec.andWait("cp", "-v", file.getAbsolutePath(), newFile.getAbsolutePath());
+						Workspace.linkOrCopy(file, newFile);
 					}
 
 					file = newFile;
@@ -159,7 +272,7 @@ class Main
 		{
 			if (tempDirectory!=null)
 			{
-				Exec.andWait("rm", "-rf", tempDirectory.getAbsolutePath());
+				Workspace.deleteRecursively(tempDirectory);
 			}
 		}
 	}
@@ -176,11 +289,14 @@ class Main
 		MavenJar mavenJar = new MavenJar(jar);
 		MavenInfo mavenInfo = mavenJar.getInfo();
 
-		return grindJar(jar, mavenJar, mavenInfo, null, null);
+		return grindJar(jar, mavenJar, mavenInfo, null, null, null);
 	}
 
+	/**
+	 * @param moduleKey if non-null, the module key that the caller has already determined (e.g. to generate the extra shards), otherwise it is determined here
+	 */
 	private
-	ModuleKey grindJar(File jar, MavenJar mavenJar, MavenInfo mavenInfo, File warFile, Collection<SpecShard> extraShards) throws IOException, ObsoleteJarException
+	ModuleKey grindJar(File jar, MavenJar mavenJar, MavenInfo mavenInfo, ModuleKey moduleKey, File warFile, Collection<SpecShard> extraShards) throws IOException, ObsoleteJarException
 	{
 		final
 		RPMRepo rpmRepo= RPMManifold.getRepoFor(mavenInfo);
@@ -192,45 +308,32 @@ class Main
 
 		if (!avoidCompatibilityCheck)
 		{
+			//NB: only an early-out, the authoritative check is made by publish(), below.
 			rpmRegistry.shouldNotContain(mavenInfo);
 		}
 
-		ModuleKey moduleKey=rpmRepo.mostSpecificCompatibleAndPreExistingVersion(mavenJar, avoidCompatibilityCheck);
-
-		File spec= RPMSpec.write(moduleKey, mavenJar, this, warFile, extraShards);
-
-		Exec.andWait("cat", spec.getAbsolutePath());
-
-		File[] rpms= RPM.buildMany(spec, jar, warFile);
-
-		for (File rpm : rpms)
+		if (moduleKey==null)
 		{
-			rpmRepo.add(rpm);
+			moduleKey=rpmRepo.mostSpecificCompatibleAndPreExistingVersion(mavenJar, avoidCompatibilityCheck);
 		}
 
-		if (avoidCompatibilityCheck)
+		File[] rpms= RPMSpec.build(moduleKey, mavenJar, this, warFile, extraShards);
+
+		try
 		{
 			//TODO: when force-adding a jar, shouldn't we remove (or overwrite) the entry instead of dropping it? e.g. it surly has a different jar-hash?
-			//We need to check first, to avoid reduplicated entries...
-			if (!rpmRegistry.contains(mavenInfo))
-			{
-				rpmRegistry.append(mavenInfo, moduleKey, jar);
-			}
-		}
-		else
-		{
-			//We already checked via the shouldNotContain() call... albiet, a bit racy.
-			rpmRegistry.append(mavenInfo, moduleKey, jar);
+			//Should another grinder have beaten us to it, this throws ObsoleteJarException (or, when forced, keeps their entry).
+			moduleKey=rpmRepo.publish(mavenInfo, moduleKey, mavenJar, rpms, avoidCompatibilityCheck);
 		}
-
-		spec.delete();
-
-		for (File rpm : rpms)
+		finally
 		{
-			rpm.delete();
+			for (File rpm : rpms)
+			{
+				rpm.delete();
+			}
 		}
 
-		rpmRepo.rebuildMetadata();
+		rpmRepo.maybeRebuildMetadata();
 
 		return moduleKey;
 	}
@@ -259,7 +362,7 @@ class Main
 	{
 		//(1) Expand the war to a temporary directory (such that we can re-jar it, or rpmbuild it?)
 		final
-		File dir=new File(Exec.toString("/usr/bin/mktemp", "-d", "/tmp/mrb-grinder-war-XXXXXXXX").trim());
+		File dir=Workspace.createTempDirectory("mrb-grinder-war-");
 
 		assert(dir.isDirectory());
 
@@ -394,7 +497,7 @@ class Main
 			log.info("built classes-only jar: {}", jar);
 		}
 
-		//(5) try and guess (in a heavily race-prone way) what the final module key will be :-(
+		//(5) determine the final module key, which is then handed to grindJar() so that the sub-packages cannot disagree with the main package.
 
 		final
 		boolean avoidCompatibilityCheck=(mavenInfo.isSnapshot() || FORCE);
@@ -450,9 +553,9 @@ class Main
 			}
 		}
 
-		//(6)  write the spec/rpm to the repo, hoping that the repo has not changed and that the redundant compat check will be swift.
+		//(6)  write the spec/rpm to the repo... should another grinder have published this war in the meantime, the registry will say so.
 
-		return grindJar(jar, mavenJar, mavenInfo, warFile, shards);
+		return grindJar(jar, mavenJar, mavenInfo, moduleKey, warFile, shards);
 	}
 
 	private static
@@ -528,6 +631,21 @@ class Main
 		return file.getName().toLowerCase().endsWith(".war");
 	}
 
+	/**
+	 * The maven artifacts being ground by the current thread (outermost first), which can become
+	 * a deep stack as missing dependencies are recursively ground via RPMRegistry.getMajorVersionFor().
+	 */
+	private static final
+	ThreadLocal<List<MavenInfo>> grindingStack = new ThreadLocal<List<MavenInfo>>()
+	{
+		@Override
+		protected
+		List<MavenInfo> initialValue()
+		{
+			return new ArrayList<MavenInfo>();
+		}
+	};
+
 	public
 	ModuleKey grindMavenArtifact(MavenInfo mavenInfo) throws IOException, ObsoleteJarException
 	{
@@ -537,28 +655,58 @@ class Main
 		}
 
 		final
-		File dir=new File(Exec.toString("mktemp", "-d", "/tmp/mrb-maven-dep-copy-XXXXXXXX").trim());
+		List<MavenInfo> stack = grindingStack.get();
 
-		boolean success=false;
+		final
+		int index = stack.indexOf(mavenInfo);
+
+		if (index >= 0)
+		{
+			final
+			List<MavenInfo> cycle = new ArrayList<MavenInfo>(stack.subList(index, stack.size()));
+
+			cycle.add(mavenInfo);
+
+			throw new IOException(new CircularDependencyException(cycle));
+		}
+
+		stack.add(mavenInfo);
 
 		try
 		{
-			log.info("downloading {} to {}", mavenInfo, dir);
-			Exec.andWait("mvn","dependency:copy","-Dartifact="+mavenInfo.getDependencyCopyString(), "-DoutputDirectory="+dir.getAbsolutePath());
+			return _grindMavenArtifact(mavenInfo);
+		}
+		finally
+		{
+			stack.remove(stack.size()-1);
+		}
+	}
 
-			final
-			File[] onlyOne = dir.listFiles();
+	private
+	ModuleKey _grindMavenArtifact(MavenInfo mavenInfo) throws IOException, ObsoleteJarException
+	{
+		final
+		File dir=Workspace.createTempDirectory("mrb-maven-dep-copy-");
 
-			if (onlyOne==null || onlyOne.length!=1)
-			{
-				throw new IOException("expecting only one maven download, but got: "+ Arrays.toString(onlyOne));
-			}
+		boolean success=false;
 
+		try
+		{
 			final
-			File file=onlyOne[0];
+			File file=download(mavenInfo, dir);
 
-			final
-			File pomFile=guessLocalPomPath(mavenInfo, file);
+			File pomFile;
+			{
+				try
+				{
+					pomFile=ArtifactResolver.getInstance().resolvePom(mavenInfo);
+				}
+				catch (IOException e)
+				{
+					log.warn("unable to resolve pom for {}: {}", mavenInfo, e.toString());
+					pomFile=guessLocalPomPath(mavenInfo, file);
+				}
+			}
 
 			MavenPom mavenPom=null;
 			{
@@ -646,7 +794,7 @@ class Main
 					mavenJar.setMavenPom(mavenPom);
 				}
 
-				retval = grindJar(file, mavenJar, mavenInfo, null, null);
+				retval = grindJar(file, mavenJar, mavenInfo, null, null, null);
 			}
 			else
 			if (isPomFile(file))
@@ -683,18 +831,49 @@ class Main
 		{
 			if (!DEBUG || success)
 			{
-				new File(dir, "out/noarch").delete();
+				log.debug("rm -rf: {}", dir);
+				Workspace.deleteRecursively(dir);
+			}
+		}
+	}
 
-				for (File file : notNull(dir.listFiles()))
-				{
-					log.debug("delete: {}", file);
-					file.delete();
-				}
+	/**
+	 * Places a copy of the given maven artifact into the given (empty) directory, preferably via the
+	 * shared in-process aether session, but falling back to 'mvn dependency:copy' should that fail.
+	 */
+	private
+	File download(MavenInfo mavenInfo, File dir) throws IOException
+	{
+		try
+		{
+			final
+			File resolved=ArtifactResolver.getInstance().resolve(mavenInfo);
 
-				log.debug("rmdir: {}", dir);
-				dir.delete();
-			}
+			final
+			File retval=new File(dir, resolved.getName());
+
+			log.info("copying {} to {}", mavenInfo, retval);
+			Workspace.linkOrCopy(resolved, retval);
+
+			return retval;
+		}
+		catch (IOException e)
+		{
+			log.warn("unable to resolve {} in-process, falling back to maven: {}", mavenInfo, e.toString());
+		}
+
+		log.info("downloading {} to {}", mavenInfo, dir);
+		Exec.andWait("mvn","dependency:copy","-Dartifact="+mavenInfo.getDependencyCopyString(), "-DoutputDirectory="+dir.getAbsolutePath());
+
+		final
+		File[] onlyOne = dir.listFiles();
+
+		if (onlyOne==null || onlyOne.length!=1)
+		{
+			throw new IOException("expecting only one maven download, but got: "+ Arrays.toString(onlyOne));
 		}
+
+		return onlyOne[0];
 	}
 
 	private
@@ -790,6 +969,16 @@ class Main
 
 	public
 	ModuleKey getSunTools() throws IOException
+	{
+		//NB: the scheduler may have several grinders asking for this at once.
+		synchronized (Main.class)
+		{
+			return _getSunTools();
+		}
+	}
+
+	private
+	ModuleKey _getSunTools() throws IOException
 	{
 		final
 		MavenInfo mavenInfo=new MavenInfo("com.sun", "sun-tools", "1");
@@ -819,6 +1008,8 @@ class Main
 				rpmFile.delete();
 			}
 
+			rpmRepo.maybeRebuildMetadata();
+
 			//NB: only deletes the spec on success...
 			spec.delete();
 		}
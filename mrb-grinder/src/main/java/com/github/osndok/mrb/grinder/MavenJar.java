@@ -2,13 +2,14 @@ package com.github.osndok.mrb.grinder;
 
 import com.github.osndok.mrb.grinder.rpm.RPM;
 import com.github.osndok.mrb.grinder.rpm.RPMManifold;
+import com.github.osndok.mrb.grinder.rpm.RPMRegistry;
 import com.github.osndok.mrb.grinder.rpm.RPMRepo;
+import com.github.osndok.mrb.grinder.util.ConstantPoolScanner;
 import org.apache.bcel.Constants;
 import org.apache.bcel.classfile.AnnotationEntry;
 import org.apache.bcel.classfile.Attribute;
 import org.apache.bcel.classfile.ClassParser;
 import org.apache.bcel.classfile.Constant;
-import org.apache.bcel.classfile.ConstantClass;
 import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.classfile.ConstantString;
 import org.apache.bcel.classfile.ConstantUtf8;
@@ -30,17 +31,24 @@ import javax.module.util.ModuleKey;
 import javax.module.ReactorClients;
 import javax.module.util.Convert;
 import javax.module.util.FuzzyEntryPoint;
+import javax.module.util.SystemPropertyOrEnvironment;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -62,20 +70,47 @@ class MavenJar
 	private
 	Map<String, String> execClassesByToolName;
 
+	/**
+	 * @return the plugin classes in this jar, by the interfaces that they implement, by the module that provides
+	 * each interface... which can only be known once the dependencies have been listed
+	 */
 	public
 	Map<ModuleKey, Map<String, Set<String>>> getPluginMapping(ModuleKey moduleKey) throws IOException
 	{
-		if (execClassesByToolName == null)
+		if (pluginInterfacesByClassName == null)
 		{
 			//TODO: complete the factor-out operation....
 			scanModuleClasses(moduleKey);
 		}
 
+		if (pluginMapping == null)
+		{
+			final
+			Map<ModuleKey, Map<String, Set<String>>> retval = new HashMap<ModuleKey, Map<String, Set<String>>>();
+
+			for (Map.Entry<String, List<String>> me : pluginInterfacesByClassName.entrySet())
+			{
+				for (String interfaceName : me.getValue())
+				{
+					addPluginMapping(retval, moduleKey, me.getKey(), interfaceName);
+				}
+			}
+
+			pluginMapping = retval;
+		}
+
 		return pluginMapping;
 	}
 
-	private final
-	Map<ModuleKey, Map<String, Set<String>>> pluginMapping = new HashMap<ModuleKey, Map<String, Set<String>>>();
+	/**
+	 * The interfaces of each @Plugin class in this jar, as found by the class scan (which may well precede the
+	 * listing of dependencies, and so does not look for the module that provides each interface).
+	 */
+	private
+	Map<String, List<String>> pluginInterfacesByClassName;
+
+	private
+	Map<ModuleKey, Map<String, Set<String>>> pluginMapping;
 
 	private
 	Set<Dependency> dependencies;
@@ -101,6 +136,37 @@ class MavenJar
 		return file;
 	}
 
+	private
+	String jarHash;
+
+	public
+	String getJarHash() throws IOException
+	{
+		if (jarHash == null)
+		{
+			jarHash = RPMRegistry.getJarHash(file);
+		}
+
+		return jarHash;
+	}
+
+	private
+	ApiSignature apiSignature;
+
+	/**
+	 * @return the public API of this jar, which is computed once (e.g. for the compatibility checks) and then stored with its rpm
+	 */
+	public
+	ApiSignature getApiSignature() throws IOException
+	{
+		if (apiSignature == null)
+		{
+			apiSignature = ApiSignature.of(file);
+		}
+
+		return apiSignature;
+	}
+
 	public
 	JarFile getJarFile()
 	{
@@ -229,13 +295,325 @@ class MavenJar
 		return reactorPropertiesByPath;
 	}
 
+	/**
+	 * Every (non-array) class named in the constant pool of any class in this jar, as collected by the same pass
+	 * over the classes that finds the tools, plugins, and reactor entries.
+	 */
+	private
+	Set<String> referencedClassNames;
+
+	private
+	Set<String> getReferencedClassNames(ModuleKey moduleKey) throws IOException
+	{
+		if (referencedClassNames == null)
+		{
+			scanModuleClasses(moduleKey);
+		}
+
+		return referencedClassNames;
+	}
+
+	/**
+	 * The constant pool strings without at least one of which (or a reference to a supported Runnable-like
+	 * interface) a class cannot be a tool, plugin, or reactor entry, and therefore need not be fully parsed.
+	 */
+	private static final
+	List<String> CLASS_MARKERS = Arrays.asList(
+		"main",
+		"JAVAX_MODULE_EXEC",
+		"Ljavax/module/CommandLineTool;",
+		"Ljavax/module/Plugin;",
+		"Ljavax/module/ReactorEntry;"
+	);
+
+	private static
+	boolean refersToSupportedInterface(List<String> classNames, Map<String, Boolean> memo)
+	{
+		for (String className : classNames)
+		{
+			Boolean supported = memo.get(className);
+
+			if (supported == null)
+			{
+				supported = FuzzyEntryPoint.supportedInterfaceName(className.replace('/', '.'));
+				memo.put(className, supported);
+			}
+
+			if (supported)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * How many threads may analyze classes at once, across all the jars being ground by this process.
+	 */
+	private static final
+	ForkJoinPool CLASS_SCAN_POOL = new ForkJoinPool(Integer.parseInt(SystemPropertyOrEnvironment.get("CLASS_SCAN_THREADS",
+		String.valueOf(Runtime.getRuntime().availableProcessors()))));
+
+	/**
+	 * The number of class entries below which a scan is not split any further.
+	 */
+	private static final
+	int CLASS_SCAN_CHUNK = 128;
+
+	/**
+	 * One scanner per thread (e.g. each of the pool's workers), such that its buffers and interned class names
+	 * are reused from one chunk (and jar) to the next, as the scanner was meant to be.
+	 */
+	private static final
+	ThreadLocal<ConstantPoolScanner> CLASS_SCANNERS = new ThreadLocal<ConstantPoolScanner>()
+	{
+		@Override
+		protected
+		ConstantPoolScanner initialValue()
+		{
+			return new ConstantPoolScanner(CLASS_MARKERS);
+		}
+	};
+
+	/**
+	 * The number of interned class names beyond which a thread's scanner is replaced, such that a long-lived
+	 * thread (e.g. in the daemon) does not keep every class name that it has ever seen.
+	 */
+	private static final
+	int CLASS_SCANNER_MAX_INTERNED = 100000;
+
+	private static
+	ConstantPoolScanner classScanner()
+	{
+		ConstantPoolScanner retval = CLASS_SCANNERS.get();
+
+		if (retval.getInternedCount() > CLASS_SCANNER_MAX_INTERNED)
+		{
+			retval = new ConstantPoolScanner(CLASS_MARKERS);
+			CLASS_SCANNERS.set(retval);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Everything about one class that can be worked out without regard to any other class, such that this (the
+	 * expensive part) can be done in parallel, leaving the merging (and anything that looks up other classes) to
+	 * be done in order.
+	 */
+	private static
+	class ClassAnalysis
+	{
+		JavaClass javaClass;
+		boolean hasMainMethod;
+		String requestedCommandLineToolName;
+		boolean noCommandLineUtility;
+	}
+
+	/**
+	 * The result of scanning a run of class entries: the candidate classes (in the order given), and every class that
+	 * any of them refers to.
+	 */
+	private static
+	class ClassScan
+	{
+		final
+		List<ClassAnalysis> candidates = new ArrayList<ClassAnalysis>();
+
+		final
+		Set<String> referencedClassNames = new HashSet<String>();
+
+		void addAll(ClassScan later)
+		{
+			candidates.addAll(later.candidates);
+			referencedClassNames.addAll(later.referencedClassNames);
+		}
+	}
+
+	private
+	class ClassScanTask extends RecursiveTask<ClassScan>
+	{
+		private final
+		List<JarEntry> entries;
+
+		private final
+		ModuleKey moduleKey;
+
+		ClassScanTask(List<JarEntry> entries, ModuleKey moduleKey)
+		{
+			this.entries = entries;
+			this.moduleKey = moduleKey;
+		}
+
+		@Override
+		protected
+		ClassScan compute()
+		{
+			final
+			int size = entries.size();
+
+			if (size > CLASS_SCAN_CHUNK)
+			{
+				final
+				ClassScanTask first = new ClassScanTask(entries.subList(0, size / 2), moduleKey);
+
+				first.fork();
+
+				final
+				ClassScan second = new ClassScanTask(entries.subList(size / 2, size), moduleKey).compute();
+
+				final
+				ClassScan retval = first.join();
+
+				retval.addAll(second);
+				return retval;
+			}
+
+			try
+			{
+				return scanClasses(entries, moduleKey);
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	private
+	ClassScan scanClassesInParallel(List<JarEntry> classEntries, ModuleKey moduleKey) throws IOException
+	{
+		if (classEntries.size() <= CLASS_SCAN_CHUNK)
+		{
+			return scanClasses(classEntries, moduleKey);
+		}
+
+		try
+		{
+			return CLASS_SCAN_POOL.invoke(new ClassScanTask(classEntries, moduleKey));
+		}
+		catch (RuntimeException e)
+		{
+			//NB: the pool may have re-wrapped the exception that we wrapped...
+			for (Throwable t = e; t != null; t = t.getCause())
+			{
+				if (t instanceof IOException)
+				{
+					throw (IOException) t;
+				}
+			}
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Scans each of the given classes (once) for the classes that it refers to, and fully parses & analyzes
+	 * those (few) that might be tools, plugins, or reactor entries. Safe to call from several threads at once, as
+	 * each thread has its own scanner, and it only looks at each class by itself, never consulting BCEL's (global,
+	 * and unsynchronized) Repository.
+	 */
+	private
+	ClassScan scanClasses(List<JarEntry> classEntries, ModuleKey moduleKey) throws IOException
+	{
+		final
+		ClassScan retval = new ClassScan();
+
+		final
+		ConstantPoolScanner scanner = classScanner();
+
+		final
+		Map<String, Boolean> supportedInterfaceNames = new HashMap<String, Boolean>();
+
+		for (JarEntry jarEntry : classEntries)
+		{
+			scanner.scan(jarFile.getInputStream(jarEntry));
+
+			//NB: of every class, including those that cannot be tools or plugins.
+			retval.referencedClassNames.addAll(scanner.getClassNames());
+
+			if (!scanner.isPublic() || scanner.isAbstract())
+			{
+				log.trace("non-public, or abstract: {}", jarEntry.getName());
+				continue;
+			}
+
+			if (!scanner.hasMarker() && !refersToSupportedInterface(scanner.getClassNames(), supportedInterfaceNames))
+			{
+				log.trace("nothing of interest: {}", jarEntry.getName());
+				continue;
+			}
+
+			log.debug("parse class: {}", jarEntry.getName());
+
+			final
+			ClassAnalysis analysis = new ClassAnalysis();
+
+			final
+			JavaClass javaClass = new ClassParser(scanner.asInputStream(), file.getName()).parse();
+
+			analysis.javaClass = javaClass;
+			analysis.hasMainMethod = hasPublicStaticMainMethod(javaClass);
+			analysis.requestedCommandLineToolName = computeExplicitCommandLineToolName(javaClass, moduleKey);
+			analysis.noCommandLineUtility = markedAsNoCommandLineUtility(javaClass);
+
+			retval.candidates.add(analysis);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Whether to store the analysis of each jar in the registry, and reuse it for a jar with the same hash.
+	 */
+	private static final
+	boolean JAR_ANALYSIS_CACHE = SystemPropertyOrEnvironment.getBoolean("JAR_ANALYSIS_CACHE", true);
+
 	private
 	void scanModuleClasses(ModuleKey moduleKey) throws IOException
 	{
-		log.debug("scanModuleClasses: {}", moduleKey);
+		if (!JAR_ANALYSIS_CACHE)
+		{
+			analyzeModuleClasses(moduleKey);
+			return;
+		}
+
+		final
+		RPMRegistry registry = getRpmRepo().getRpmRegistry();
+
+		final
+		JarAnalysis jarAnalysis = registry.getJarAnalysis(getJarHash(), moduleKey.toString());
+
+		if (jarAnalysis == null)
+		{
+			registry.putJarAnalysis(getJarHash(), moduleKey.toString(), analyzeModuleClasses(moduleKey));
+			return;
+		}
+
+		log.debug("reusing analysis of {} as {}", file, moduleKey);
+
+		execClassesByToolName = jarAnalysis.getExecClassesByToolName();
+		reactorPropertiesByPath = jarAnalysis.getReactorPropertiesByPath();
+		referencedClassNames = jarAnalysis.getReferencedClassNames();
+		pluginInterfacesByClassName = jarAnalysis.getPluginInterfacesByClassName();
+	}
+
+	/**
+	 * Scans each class in the jar (once) for the classes that it refers to, fully parses those (few) that might
+	 * be tools, plugins, or reactor entries (all of which is done in parallel), and then merges the results in
+	 * the order that they have always been visited in (that of a HashMap keyed by entry name).
+	 */
+	private
+	JarAnalysis analyzeModuleClasses(ModuleKey moduleKey) throws IOException
+	{
+		log.debug("analyzeModuleClasses: {}", moduleKey);
 
 		execClassesByToolName = new HashMap<String, String>();
 		reactorPropertiesByPath = new HashMap<String, Properties>();
+		referencedClassNames = new TreeSet<String>();
+		pluginInterfacesByClassName = new HashMap<String, List<String>>();
+
 		String mainClassName = getMainClassName();
 
 		boolean hasOverride = false;
@@ -258,13 +636,36 @@ class MavenJar
 		for (String name : store.get("SubTypesScanner").values())
 		*/
 
-		for (JavaClass javaClass : allJavaClasses())
+		//NB: filled in jar order, and then read in its own order, as tool-name contention depends on it.
+		final
+		Map<String,JarEntry> entriesByNames=new HashMap<String, JarEntry>();
+
+		Enumeration e = jarFile.entries();
+
+		while (e.hasMoreElements())
 		{
-			if (!javaClass.isPublic() || javaClass.isAbstract())
+			final
+			JarEntry jarEntry = (JarEntry) e.nextElement();
+
+			if (jarEntry.getName().endsWith(".class"))
 			{
-				log.debug("non-public, or abstract: {}", javaClass);
-				continue;
+				entriesByNames.put(jarEntry.getName(), jarEntry);
 			}
+		}
+
+		final
+		List<JarEntry> classEntries = new ArrayList<JarEntry>(entriesByNames.values());
+
+		final
+		ClassScan classScan = scanClassesInParallel(classEntries, moduleKey);
+
+		referencedClassNames.addAll(classScan.referencedClassNames);
+
+		//NB: in the same order as ever (that of entriesByNames), such that tool-name contention is resolved as it always was.
+		for (ClassAnalysis analysis : classScan.candidates)
+		{
+			final
+			JavaClass javaClass = analysis.javaClass;
 
 			String name = javaClass.getClassName();
 			log.trace("class name: {} ( {} / {} )", name, javaClass.getMajor(), javaClass.getMinor());
@@ -290,47 +691,8 @@ class MavenJar
 				//TODO: support inheritance? cross module boundaries?
 				//TODO: don't stride across deps, do that only once (inefficient if many plugins).
 
-				for (String interfaceName : javaClass.getInterfaceNames())
-				{
-					String entryName = classEntryName(interfaceName);
-					ModuleKey targetModuleKey;
-
-					if (inThisJar(entryName))
-					{
-						targetModuleKey = moduleKey;
-					}
-					else
-					{
-						targetModuleKey = dependencyForClassName(entryName);
-					}
-
-					if (targetModuleKey == null)
-					{
-						log.debug("plugin target not found: {}", entryName);
-					}
-					else
-					{
-						log.info("plugin: {} implements {} :: {}", name, targetModuleKey, interfaceName);
-
-						Map<String, Set<String>> implementationsByInterface = pluginMapping.get(targetModuleKey);
-
-						if (implementationsByInterface == null)
-						{
-							implementationsByInterface = new HashMap<String, Set<String>>();
-							pluginMapping.put(targetModuleKey, implementationsByInterface);
-						}
-
-						Set<String> implementations = implementationsByInterface.get(interfaceName);
-
-						if (implementations == null)
-						{
-							implementations = new HashSet<String>();
-							implementationsByInterface.put(interfaceName, implementations);
-						}
-
-						implementations.add(name);
-					}
-				}
+				//NB: which modules provide these interfaces is worked out later, by getPluginMapping().
+				pluginInterfacesByClassName.put(name, Arrays.asList(javaClass.getInterfaceNames()));
 			}
 
 			/*
@@ -347,14 +709,15 @@ class MavenJar
 			}
 			*/
 
-			boolean hasMainMethod = hasPublicStaticMainMethod(javaClass);
-			String requestedCommandLineToolName = computeExplicitCommandLineToolName(javaClass, moduleKey);
+			boolean hasMainMethod = analysis.hasMainMethod;
+			String requestedCommandLineToolName = analysis.requestedCommandLineToolName;
 
-			if (markedAsNoCommandLineUtility(javaClass))
+			if (analysis.noCommandLineUtility)
 			{
 				log.debug("@NoCommandLineUtility: {}", name);
 			}
 			else
+			//NB: isSupportedRunnableOrCallable() looks up other classes in BCEL's Repository, so it is only done here, in one thread.
 			if (hasMainMethod || requestedCommandLineToolName != null || isSupportedRunnableOrCallable(javaClass))
 			{
 				String className = name;//aClass.getName();
@@ -428,6 +791,56 @@ class MavenJar
 		{
 			execClassesByToolName.put("sysconfig", "true");
 		}
+
+		return new JarAnalysis(execClassesByToolName, reactorPropertiesByPath, pluginInterfacesByClassName,
+								  referencedClassNames);
+	}
+
+	/**
+	 * Records the given plugin class in the given plugin mapping, under the module that provides the given interface.
+	 */
+	private
+	void addPluginMapping(Map<ModuleKey, Map<String, Set<String>>> pluginMapping, ModuleKey moduleKey, String name,
+						  String interfaceName) throws IOException
+	{
+		String entryName = classEntryName(interfaceName);
+		ModuleKey targetModuleKey;
+
+		if (inThisJar(entryName))
+		{
+			targetModuleKey = moduleKey;
+		}
+		else
+		{
+			targetModuleKey = dependencyForClassName(entryName);
+		}
+
+		if (targetModuleKey == null)
+		{
+			log.debug("plugin target not found: {}", entryName);
+		}
+		else
+		{
+			log.info("plugin: {} implements {} :: {}", name, targetModuleKey, interfaceName);
+
+			Map<String, Set<String>> implementationsByInterface = pluginMapping.get(targetModuleKey);
+
+			if (implementationsByInterface == null)
+			{
+				implementationsByInterface = new HashMap<String, Set<String>>();
+				pluginMapping.put(targetModuleKey, implementationsByInterface);
+			}
+
+			Set<String> implementations = implementationsByInterface.get(interfaceName);
+
+			if (implementations == null)
+			{
+				implementations = new HashSet<String>();
+				implementationsByInterface.put(interfaceName, implementations);
+			}
+
+			implementations.add(name);
+		}
 	}
 
 	private
@@ -655,6 +1068,13 @@ class MavenJar
 	private static final
 	ObjectType ENUM_TYPE=new ObjectType("java.lang.Enum");
 
+	/**
+	 * Guards BCEL's Repository, which is global and unsynchronized, and which several jars (each being ground
+	 * by a different thread) might otherwise load classes into at once.
+	 */
+	private static final
+	Object BCEL_REPOSITORY_LOCK = new Object();
+
 	private
 	boolean isConvertable(ObjectType type)
 	{
@@ -662,7 +1082,15 @@ class MavenJar
 
 		try
 		{
-			if (type.isCastableTo(ENUM_TYPE))
+			final
+			boolean castableToEnum;
+
+			synchronized (BCEL_REPOSITORY_LOCK)
+			{
+				castableToEnum = type.isCastableTo(ENUM_TYPE);
+			}
+
+			if (castableToEnum)
 			{
 				log.debug("enum argument: {}", type);
 				return true;
@@ -1032,6 +1460,7 @@ class MavenJar
 			catch (JarHasNoPomException e)
 			{
 				log.error("no pom file in jar", e);
+				dependencies = declaredDependencies;
 				return declaredDependencies;
 			}
 
@@ -1071,39 +1500,15 @@ class MavenJar
 		final
 		Set<Dependency> retval = new HashSet<Dependency>(declaredDependencies);
 
-		//TODO: combine this with the scanModuleClasses above...
 		/*
 		Maven allows for implicit transitive dependencies. While convenient for coding, they are quite
 		sloppy when modularizing. Therefore, we must (at least) make a best-effort check to ensure that
 		our jar has all the *ACTUAL* dependencies that it needs, otherwise there will be CNF thrown at
 		runtime.
 		 */
-		for (JavaClass javaClass : allJavaClasses())
+		for (String className : getReferencedClassNames(moduleKey))
 		{
-			ConstantPool constantPool = javaClass.getConstantPool();
-			int l = constantPool.getLength();
-
-			for (int i = 0; i < l; i++)
-			{
-				Constant constant = constantPool.getConstant(i);
-
-				if (constant instanceof ConstantClass)
-				{
-					ConstantClass cClass = (ConstantClass) constant;
-					String className = constantPool.constantToString(constantPool.getConstant(cClass.getNameIndex()));
-					log.trace("parsed {} -> {}", cClass, className);
-
-					if (className.charAt(0) == '[')
-					{
-						//it's an array type... don't bother.
-					}
-					else
-					{
-						ensurePossiblyTransitiveDependencyIsIncluded(className + ".class", declaredDependencies,
-																		rpmRepo, retval);
-					}
-				}
-			}
+			ensurePossiblyTransitiveDependencyIsIncluded(className + ".class", declaredDependencies, rpmRepo, retval);
 		}
 
 		dependencies = retval;
@@ -1132,58 +1537,112 @@ class MavenJar
 		}
 		else
 		{
-			if (transitiveDependenciesByEntryName == null)
+			if (dependencyClosure == null)
 			{
 				log.info("indexing transitive dependencies...");
+				dependencyClosure = dependencyClosureOf(declaredDependencies);
+			}
 
-				directDependenciesByEntryName = new HashMap<String, Dependency>();
-				transitiveDependenciesByEntryName=new HashMap<String, Dependency>();
+			final
+			Set<ModuleKey> providers = RPMManifold.getInstance().getModulesProviding(classEntryName);
 
-				for (Dependency dependency : declaredDependencies)
-				{
-					RPM rpm = RPMManifold.getInstance().getAnyRpmMatching(dependency);
+			for (ModuleKey provider : providers)
+			{
+				final
+				Dependency dependency = dependencyClosure.get(closureKey(provider));
 
-					rpm.dumpInnerJarClassEntries(dependency, directDependenciesByEntryName);
+				if (dependency != null && declaredDependencies.contains(dependency))
+				{
+					log.trace("in-dep: {}: {}", dependency, classEntryName);
+					return;
+				}
+			}
 
-					//To be nice, we go one level deep... beyond that, and you are on your own!
-					for (Dependency transitive : rpm.listModuleDependencies(dependency))
-					{
-						final
-						RPM requiredRpm=RPMManifold.getInstance().getAnyRpmMatching(transitive);
+			for (ModuleKey provider : providers)
+			{
+				final
+				Dependency dependency = dependencyClosure.get(closureKey(provider));
 
-						requiredRpm.dumpInnerJarClassEntries(transitive, transitiveDependenciesByEntryName);
-					}
+				if (dependency != null)
+				{
+					log.warn("use of {} implies transitive dependency: {}", classEntryName, dependency);
+					actualDependencies.add(dependency);
+					return;
 				}
 			}
 
-			Dependency dependency=directDependenciesByEntryName.get(classEntryName);
+			//We don't make this fatal, because there *are* ways to use undeclared classes via reflection and whatnot.
+			log.error("{} not found in dependencies, this module may therefore be broken", classEntryName);
+		}
+	}
+
+	/**
+	 * @return every module reachable from the given dependencies (to full transitive depth), keyed by module name
+	 * and major version, where the declared dependencies take precedence; as a side effect, ensures that every
+	 * such module is in the repository-wide class index.
+	 */
+	private
+	Map<String, Dependency> dependencyClosureOf(Set<Dependency> declaredDependencies) throws IOException
+	{
+		final
+		RPMManifold rpmManifold = RPMManifold.getInstance();
+
+		final
+		Map<String, Dependency> retval = new LinkedHashMap<String, Dependency>();
+
+		final
+		List<Dependency> queue = new ArrayList<Dependency>();
 
-			if (dependency!=null)
+		for (Dependency dependency : declaredDependencies)
+		{
+			if (retval.put(closureKey(dependency), dependency) == null)
 			{
-				log.trace("in-dep: {}: {}", dependency, classEntryName);
-				return;
+				queue.add(dependency);
 			}
+		}
+
+		for (int i = 0; i < queue.size(); i++)
+		{
+			final
+			Dependency dependency = queue.get(i);
 
-			dependency=transitiveDependenciesByEntryName.get(classEntryName);
+			final
+			RPM rpm = rpmManifold.getAnyRpmMatching(dependency);
 
-			if (dependency==null)
+			if (rpm == null)
 			{
-				//We don't make this fatal, because there *are* ways to use undeclared classes via reflection and whatnot.
-				log.error("{} not found in dependencies, this module may therefore be broken", classEntryName);
+				log.error("unable to locate dependency: {}", dependency);
+				continue;
 			}
-			else
+
+			rpmManifold.ensureClassEntriesIndexed(rpm);
+
+			for (Dependency transitive : rpm.listModuleDependencies(dependency))
 			{
-				log.warn("use of {} implies transitive dependency: {}", classEntryName, dependency);
-				actualDependencies.add(dependency);
+				if (!retval.containsKey(closureKey(transitive)))
+				{
+					retval.put(closureKey(transitive), transitive);
+					queue.add(transitive);
+				}
 			}
 		}
+
+		log.debug("{} declared dependencies -> {} in closure", declaredDependencies.size(), retval.size());
+
+		return retval;
 	}
 
-	private
-	Map<String,Dependency> directDependenciesByEntryName;
+	private static
+	String closureKey(ModuleKey moduleKey)
+	{
+		final
+		String majorVersion = (moduleKey.getMajorVersion() == null ? "snapshot" : moduleKey.getMajorVersion());
+
+		return moduleKey.getModuleName() + ":" + majorVersion;
+	}
 
 	private
-	Map<String,Dependency> transitiveDependenciesByEntryName;
+	Map<String,Dependency> dependencyClosure;
 
 	private
 	boolean isSystemClass(String classEntryName)
@@ -1199,77 +1658,6 @@ class MavenJar
 		return (entry!=null);
 	}
 
-	private
-	Iterable<JavaClass> allJavaClasses()
-	{
-		final
-		Map<String,JarEntry> entriesByNames=new HashMap<String, JarEntry>();
-
-		Enumeration e = jarFile.entries();
-
-		while (e.hasMoreElements())
-		{
-			JarEntry je = (JarEntry) e.nextElement();
-			String name = je.getName();
-
-			if (name.endsWith(".class"))
-			{
-				entriesByNames.put(name, je);
-			}
-		}
-
-		final
-		Iterator<Map.Entry<String, JarEntry>> nameIterator=entriesByNames.entrySet().iterator();
-
-		final
-		Iterator<JavaClass> metaIterator=new Iterator<JavaClass>()
-		{
-			@Override
-			public
-			boolean hasNext()
-			{
-				return nameIterator.hasNext();
-			}
-
-			@Override
-			public
-			JavaClass next()
-			{
-				Map.Entry<String, JarEntry> me=nameIterator.next();
-				String name=me.getKey();
-				JarEntry jarEntry=me.getValue();
-				log.debug("parse class: {}", name);
-				try
-				{
-					InputStream inputStream = jarFile.getInputStream(jarEntry);
-					return new ClassParser(inputStream, file.getName()).parse();
-				}
-				catch (IOException e)
-				{
-					throw new RuntimeException("cannot parse class file", e);
-				}
-			}
-
-			@Override
-			public
-			void remove()
-			{
-				throw new UnsupportedOperationException();
-			}
-		};
-
-		//NB: this iterable can only be iterated once per function call.
-		return new Iterable<JavaClass>()
-		{
-			@Override
-			public
-			Iterator<JavaClass> iterator()
-			{
-				return metaIterator;
-			}
-		};
-	}
-
 	public
 	String getDescription() throws IOException, JarHasNoPomException
 	{
@@ -1,16 +1,9 @@
 package com.github.osndok.mrb.grinder;
 
-import com.github.osndok.mrb.grinder.aether.ConsoleRepositoryListener;
-import com.github.osndok.mrb.grinder.aether.ConsoleTransferListener;
-import com.github.osndok.mrb.grinder.aether.ManualRepositorySystemFactory;
-import org.apache.maven.repository.internal.MavenRepositorySystemSession;
+import com.github.osndok.mrb.grinder.aether.ArtifactResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.sonatype.aether.RepositorySystem;
-import org.sonatype.aether.RepositorySystemSession;
 import org.sonatype.aether.artifact.Artifact;
-import org.sonatype.aether.repository.LocalRepository;
-import org.sonatype.aether.repository.RemoteRepository;
 import org.sonatype.aether.resolution.ArtifactDescriptorException;
 import org.sonatype.aether.resolution.ArtifactDescriptorRequest;
 import org.sonatype.aether.resolution.ArtifactDescriptorResult;
@@ -381,23 +374,19 @@ class MavenPom
 				log.info("moving to aether backup plan: {}", e.toString());
 			}
 
-			RepositorySystem system = ManualRepositorySystemFactory.newRepositorySystem();
-
-			RepositorySystemSession session = newRepositorySystemSession(system);
+			ArtifactResolver resolver = ArtifactResolver.getInstance();
 
 			Artifact artifact = new DefaultArtifact( mavenInfo.toString() );
 
-			RemoteRepository repo = new RemoteRepository( "central", "default", "http://repo1.maven.org/maven2/" );
-
 			ArtifactDescriptorRequest descriptorRequest = new ArtifactDescriptorRequest();
 			descriptorRequest.setArtifact( artifact );
-			descriptorRequest.addRepository( repo );
+			descriptorRequest.setRepositories( resolver.getRepositories() );
 
 			ArtifactDescriptorResult descriptorResult;
 
 			try
 			{
-				descriptorResult=system.readArtifactDescriptor( session, descriptorRequest );
+				descriptorResult=resolver.getSystem().readArtifactDescriptor( resolver.getSession(), descriptorRequest );
 			}
 			catch (ArtifactDescriptorException e1)
 			{
@@ -513,22 +502,6 @@ class MavenPom
 		return scope!=null && (scope.equals("test") || scope.equals("provided"));
 	}
 
-	private static
-	RepositorySystemSession newRepositorySystemSession(RepositorySystem system)
-	{
-		//TODO: ask someone "in the know" if this is redundant (or dangerous), should we have to specify the "default" user repo?
-		String HOME=System.getenv("HOME");
-		LocalRepository localRepo = new LocalRepository( HOME+"/.m2/repository" );
-
-		MavenRepositorySystemSession session = new MavenRepositorySystemSession();
-		session.setLocalRepositoryManager( system.newLocalRepositoryManager( localRepo ) );
-		session.setTransferListener( new ConsoleTransferListener() );
-		session.setRepositoryListener( new ConsoleRepositoryListener() );
-		// uncomment to generate dirty trees
-		// session.setDependencyGraphTransformer( null );
-		return session;
-	}
-
 	public
 	Set<MavenInfo> getDependencies()
 	{
@@ -669,6 +642,26 @@ class MavenPom
 	public static
 	MavenPom fetchedFromMavenCentral(MavenInfo mavenInfo) throws IOException, ParserConfigurationException, SAXException
 	{
+		//Preferably via the shared aether session, which leaves a copy in the local repo for next time...
+		try
+		{
+			final
+			FileInputStream fis = new FileInputStream(ArtifactResolver.getInstance().resolvePom(mavenInfo));
+
+			try
+			{
+				return new MavenPom(mavenInfo, fis);
+			}
+			finally
+			{
+				fis.close();
+			}
+		}
+		catch (IOException e)
+		{
+			log.debug("unable to resolve pom via aether: {}", e.toString());
+		}
+
 		final
 		String artifactId = mavenInfo.getArtifactId();
 
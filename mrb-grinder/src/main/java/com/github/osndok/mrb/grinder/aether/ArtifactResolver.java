@@ -0,0 +1,183 @@
+package com.github.osndok.mrb.grinder.aether;
+
+import com.github.osndok.mrb.grinder.MavenInfo;
+import org.apache.maven.repository.internal.MavenRepositorySystemSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.aether.RepositorySystem;
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.repository.LocalRepository;
+import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.resolution.ArtifactRequest;
+import org.sonatype.aether.resolution.ArtifactResolutionException;
+import org.sonatype.aether.resolution.ArtifactResult;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+
+import javax.module.util.SystemPropertyOrEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single, in-process aether repository system (and session) that is shared for the whole run, such
+ * that resolving an artifact does not require spinning up a whole maven process (e.g. 'mvn dependency:copy'),
+ * and the pom that goes with it is found exactly (rather than guessed at).
+ *
+ * The remote repositories can be specified (comma-separated, in order of preference) via MAVEN_REPOS.
+ */
+public
+class ArtifactResolver
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(ArtifactResolver.class);
+
+	private static final
+	String MAVEN_REPOS = SystemPropertyOrEnvironment.get("MAVEN_REPOS", "https://repo1.maven.org/maven2/");
+
+	private static
+	ArtifactResolver INSTANCE;
+
+	public static synchronized
+	ArtifactResolver getInstance()
+	{
+		if (INSTANCE == null)
+		{
+			INSTANCE = new ArtifactResolver();
+		}
+
+		return INSTANCE;
+	}
+
+	private final
+	RepositorySystem system;
+
+	private final
+	RepositorySystemSession session;
+
+	private final
+	List<RemoteRepository> repositories;
+
+	private
+	ArtifactResolver()
+	{
+		this.system = ManualRepositorySystemFactory.newRepositorySystem();
+		this.session = newRepositorySystemSession(system);
+		this.repositories = remoteRepositories(MAVEN_REPOS);
+	}
+
+	private static
+	RepositorySystemSession newRepositorySystemSession(RepositorySystem system)
+	{
+		//TODO: ask someone "in the know" if this is redundant (or dangerous), should we have to specify the "default" user repo?
+		String HOME=System.getenv("HOME");
+		LocalRepository localRepo = new LocalRepository( HOME+"/.m2/repository" );
+
+		MavenRepositorySystemSession session = new MavenRepositorySystemSession();
+		session.setLocalRepositoryManager( system.newLocalRepositoryManager( localRepo ) );
+		session.setTransferListener( new ConsoleTransferListener() );
+		session.setRepositoryListener( new ConsoleRepositoryListener() );
+		// uncomment to generate dirty trees
+		// session.setDependencyGraphTransformer( null );
+		return session;
+	}
+
+	private static
+	List<RemoteRepository> remoteRepositories(String urls)
+	{
+		final
+		List<RemoteRepository> retval = new ArrayList<RemoteRepository>();
+
+		for (String url : urls.split(","))
+		{
+			url = url.trim();
+
+			if (url.length() == 0)
+			{
+				continue;
+			}
+
+			//The first is (conventionally) called "central", which aether uses as a hint for mirror selection.
+			final
+			String id = (retval.isEmpty() ? "central" : "repo" + retval.size());
+
+			retval.add(new RemoteRepository(id, "default", url));
+		}
+
+		return Collections.unmodifiableList(retval);
+	}
+
+	public
+	RepositorySystem getSystem()
+	{
+		return system;
+	}
+
+	public
+	RepositorySystemSession getSession()
+	{
+		return session;
+	}
+
+	public
+	List<RemoteRepository> getRepositories()
+	{
+		return repositories;
+	}
+
+	/**
+	 * @return the local (~/.m2) copy of the artifact itself (by default, a jar), downloading it if needed
+	 */
+	public
+	File resolve(MavenInfo mavenInfo) throws IOException
+	{
+		final
+		String extension = (mavenInfo.getPackaging() == null ? "jar" : mavenInfo.getPackaging());
+
+		return resolve(new DefaultArtifact(mavenInfo.getGroupId(), mavenInfo.getArtifactId(), mavenInfo.getClassifier(),
+											  extension, mavenInfo.getVersion()));
+	}
+
+	/**
+	 * @return the local (~/.m2) copy of the artifact's pom file, downloading it if needed
+	 */
+	public
+	File resolvePom(MavenInfo mavenInfo) throws IOException
+	{
+		return resolve(new DefaultArtifact(mavenInfo.getGroupId(), mavenInfo.getArtifactId(), null, "pom",
+											  mavenInfo.getVersion()));
+	}
+
+	private
+	File resolve(Artifact artifact) throws IOException
+	{
+		final
+		ArtifactRequest request = new ArtifactRequest(artifact, repositories, null);
+
+		final
+		ArtifactResult result;
+
+		try
+		{
+			result = system.resolveArtifact(session, request);
+		}
+		catch (ArtifactResolutionException e)
+		{
+			throw new IOException("unable to resolve: " + artifact, e);
+		}
+
+		final
+		File file = result.getArtifact().getFile();
+
+		if (file == null || !file.isFile())
+		{
+			throw new IOException("resolved " + artifact + ", but have no file: " + file);
+		}
+
+		log.debug("resolved {} -> {}", artifact, file);
+
+		return file;
+	}
+}
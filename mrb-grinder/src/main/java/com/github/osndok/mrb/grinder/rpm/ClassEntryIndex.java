@@ -0,0 +1,194 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The sorted list of entry names (e.g. "com/example/Foo.class") within an rpm's inner jar, such that
+ * asking "does this module provide that class?" is a binary search rather than an extraction.
+ *
+ * On disk, an index is a plain text file (one entry per line, after a version line) that lives in the
+ * repo's ".mrb/class-entries" directory, named after the rpm file. It is written when the rpm is added
+ * to the repo, or lazily (on first use) for rpms that predate the index. An index that is older than
+ * it's rpm (e.g. a replaced snapshot) is rebuilt.
+ */
+public
+class ClassEntryIndex
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(ClassEntryIndex.class);
+
+	private static final
+	String VERSION_LINE = "mrb-class-entries 1";
+
+	private final
+	String[] sortedEntries;
+
+	private
+	ClassEntryIndex(String[] sortedEntries)
+	{
+		this.sortedEntries = sortedEntries;
+	}
+
+	public static
+	ClassEntryIndex of(Collection<String> entryNames)
+	{
+		final
+		String[] entries = entryNames.toArray(new String[entryNames.size()]);
+
+		Arrays.sort(entries);
+
+		return new ClassEntryIndex(entries);
+	}
+
+	/**
+	 * @return where the index for the given rpm file is kept (which is only meaningful for rpms within a repo)
+	 */
+	static
+	File indexFileFor(File rpmFile)
+	{
+		return new File(new File(new File(rpmFile.getParentFile(), ".mrb"), "class-entries"), rpmFile.getName() + ".idx");
+	}
+
+	/**
+	 * @return the index for the given rpm, reading it from disk if it is current, or building (and persisting) it otherwise
+	 */
+	static
+	ClassEntryIndex forRpm(RPM rpm, File rpmFile) throws IOException
+	{
+		final
+		File indexFile = indexFileFor(rpmFile);
+
+		if (indexFile.exists() && indexFile.lastModified() >= rpmFile.lastModified())
+		{
+			try
+			{
+				return read(indexFile);
+			}
+			catch (IOException e)
+			{
+				log.warn("rebuilding unreadable index: {}", indexFile, e);
+			}
+		}
+
+		log.debug("indexing: {}", rpmFile);
+
+		final
+		ClassEntryIndex retval = of(rpm.listInnerJarEntries());
+
+		try
+		{
+			retval.write(indexFile);
+		}
+		catch (IOException e)
+		{
+			//Not fatal, we will just have to extract it again next time.
+			log.warn("unable to write: {}", indexFile, e);
+		}
+
+		return retval;
+	}
+
+	static
+	ClassEntryIndex read(File indexFile) throws IOException
+	{
+		final
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+
+		try
+		{
+			if (!VERSION_LINE.equals(br.readLine()))
+			{
+				throw new IOException(indexFile + ": unknown index version");
+			}
+
+			final
+			List<String> entries = new ArrayList<String>();
+
+			String line;
+
+			while ((line = br.readLine()) != null)
+			{
+				entries.add(line);
+			}
+
+			//NB: already sorted, unless someone has been editing it by hand.
+			return of(entries);
+		}
+		finally
+		{
+			br.close();
+		}
+	}
+
+	void write(File indexFile) throws IOException
+	{
+		final
+		File dir = indexFile.getParentFile();
+
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+		{
+			throw new IOException("unable to create directory: " + dir);
+		}
+
+		final
+		File tmp = new File(dir, "." + indexFile.getName() + ".tmp");
+
+		final
+		Writer out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+
+		try
+		{
+			out.write(VERSION_LINE);
+			out.write('\n');
+
+			for (String entry : sortedEntries)
+			{
+				out.write(entry);
+				out.write('\n');
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		if (!tmp.renameTo(indexFile))
+		{
+			tmp.delete();
+			throw new IOException("unable to rename: " + tmp);
+		}
+	}
+
+	public
+	boolean contains(String entryName)
+	{
+		return Arrays.binarySearch(sortedEntries, entryName) >= 0;
+	}
+
+	public
+	List<String> getEntries()
+	{
+		return Collections.unmodifiableList(Arrays.asList(sortedEntries));
+	}
+
+	public
+	int size()
+	{
+		return sortedEntries.length;
+	}
+}
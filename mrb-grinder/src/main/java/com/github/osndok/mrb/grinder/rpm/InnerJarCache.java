@@ -0,0 +1,197 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.module.util.SystemPropertyOrEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded directory of inner jars that have already been extracted from rpms, such that (e.g.) the
+ * compatibility check of a popular dependency does not re-extract the same jar for every module that needs it.
+ *
+ * Entries are keyed by the rpm's signature digest (so a replaced snapshot rpm is naturally a different entry),
+ * and are evicted least-recently-used first, using the file modification time as the "last used" stamp. As the
+ * cache is just a directory, it is shared across threads, runs, and daemon restarts.
+ *
+ * Each repo has its own cache, in its state directory (beside its registry), as a cache hit is trusted without
+ * re-checking it, and so the cache must not be somewhere (like a fixed name in /tmp) that another user could
+ * create first, or plant a jar in. A shared cache directory & size limit can be specified via MRB_JAR_CACHE and
+ * MRB_JAR_CACHE_MB, respectively.
+ */
+public
+class InnerJarCache
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(InnerJarCache.class);
+
+	/**
+	 * If given, a single cache directory that all the repos share.
+	 */
+	private static final
+	String MRB_JAR_CACHE = SystemPropertyOrEnvironment.get("MRB_JAR_CACHE", null);
+
+	private static final
+	long MAX_BYTES = Long.parseLong(SystemPropertyOrEnvironment.get("MRB_JAR_CACHE_MB", "512")) * 1024 * 1024;
+
+	/**
+	 * Entries used more recently than this are never evicted, as a concurrent grind may be about to read them.
+	 */
+	private static final
+	long MIN_AGE_MILLIS = 60 * 1000;
+
+	private static final
+	Map<File, InnerJarCache> instancesByDirectory = new HashMap<File, InnerJarCache>();
+
+	/**
+	 * @return the cache of inner jars extracted from the given repo's rpms
+	 */
+	public static synchronized
+	InnerJarCache forRepo(RPMRepo rpmRepo)
+	{
+		final
+		File directory = (MRB_JAR_CACHE == null ? new File(rpmRepo.getStateDirectory(), "inner-jars") : new File(MRB_JAR_CACHE));
+
+		InnerJarCache retval = instancesByDirectory.get(directory);
+
+		if (retval == null)
+		{
+			retval = new InnerJarCache(directory, MAX_BYTES);
+			instancesByDirectory.put(directory, retval);
+		}
+
+		return retval;
+	}
+
+	private final
+	File directory;
+
+	private final
+	long maxBytes;
+
+	InnerJarCache(File directory, long maxBytes)
+	{
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the (shared, read-only) extracted inner jar of the given rpm, which must not be modified or deleted
+	 * @throws java.io.FileNotFoundException if the rpm does not contain a jar file
+	 */
+	public
+	File get(RPM rpm) throws IOException
+	{
+		final
+		File retval = new File(directory, rpm.getDigest() + ".jar");
+
+		if (retval.isFile())
+		{
+			log.debug("hit: {} -> {}", rpm.getFile(), retval);
+			retval.setLastModified(System.currentTimeMillis());
+			return retval;
+		}
+
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+		{
+			throw new IOException("unable to create directory: " + directory);
+		}
+
+		log.debug("miss: {}", rpm.getFile());
+
+		final
+		File tmp = File.createTempFile(".extracting-", ".tmp", directory);
+
+		try
+		{
+			rpm.extractInnerJar(tmp);
+
+			//NB: if another thread (or process) got here first, the rename simply replaces an identical file.
+			if (!tmp.renameTo(retval))
+			{
+				throw new IOException("unable to rename: " + tmp);
+			}
+		}
+		finally
+		{
+			tmp.delete();
+		}
+
+		evict(retval);
+
+		return retval;
+	}
+
+	/**
+	 * Deletes the least-recently-used entries (other than the given one) until the cache fits within it's size limit.
+	 */
+	private synchronized
+	void evict(File keep)
+	{
+		final
+		File[] files = directory.listFiles();
+
+		if (files == null)
+		{
+			return;
+		}
+
+		long total = 0;
+
+		for (File file : files)
+		{
+			total += file.length();
+		}
+
+		if (total <= maxBytes)
+		{
+			return;
+		}
+
+		Arrays.sort(files, new Comparator<File>()
+		{
+			@Override
+			public
+			int compare(File a, File b)
+			{
+				final
+				long x = a.lastModified();
+
+				final
+				long y = b.lastModified();
+
+				return (x < y ? -1 : (x == y ? 0 : 1));
+			}
+		});
+
+		final
+		long recently = System.currentTimeMillis() - MIN_AGE_MILLIS;
+
+		for (File file : files)
+		{
+			if (total <= maxBytes)
+			{
+				break;
+			}
+
+			if (file.equals(keep) || file.lastModified() > recently || !file.getName().endsWith(".jar"))
+			{
+				continue;
+			}
+
+			final
+			long length = file.length();
+
+			if (file.delete())
+			{
+				log.debug("evicted: {}", file);
+				total -= length;
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import com.github.osndok.mrb.grinder.MavenInfo;
+import com.github.osndok.mrb.grinder.util.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bloom filter of the jar hashes in every registry of the manifold, such that asking "has any repo
+ * seen this jar?" about an unknown jar (which is the usual answer) does not probe every registry.
+ *
+ * The registries remain the source of truth: a (probable) hit is still looked up in each registry, in
+ * order. Our own appends are added to the filter as they are committed, and a miss is only trusted if no
+ * registry has gained a row (by max rowid) since the filter was last loaded, which catches the entries
+ * appended by any other process.
+ */
+class JarHashIndex
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(JarHashIndex.class);
+
+	private static
+	class Source
+	{
+		final RPMRegistry registry;
+
+		long lastRowid;
+
+		Source(RPMRegistry registry)
+		{
+			this.registry = registry;
+		}
+	}
+
+	private final
+	List<Source> sources;
+
+	private
+	BloomFilter bloomFilter;
+
+	/**
+	 * @param registries in the order that they should be probed, without duplicates
+	 */
+	JarHashIndex(List<RPMRegistry> registries) throws IOException
+	{
+		this.sources = new ArrayList<Source>(registries.size());
+
+		int expectedSize = 0;
+
+		for (RPMRegistry registry : registries)
+		{
+			sources.add(new Source(registry));
+			expectedSize += registry.countEntries();
+			registry.addJarHashIndex(this);
+		}
+
+		//Room to grow, as the filter is never rebuilt during a run.
+		this.bloomFilter = new BloomFilter(expectedSize * 2 + 1024);
+
+		final
+		long start = System.currentTimeMillis();
+
+		refresh();
+
+		log.debug("loaded {} jar hashes from {} registries in {}ms", bloomFilter.size(), sources.size(),
+					 System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Loads any registry entries that were added since the last load.
+	 *
+	 * @return true if any registry had changed
+	 */
+	private
+	boolean refresh() throws IOException
+	{
+		boolean retval = false;
+
+		for (Source source : sources)
+		{
+			if (source.registry.getMaxRowid() > source.lastRowid)
+			{
+				source.lastRowid = source.registry.loadJarHashes(source.lastRowid, bloomFilter);
+				retval = true;
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Called by a registry once the given jar hash has been committed to it.
+	 */
+	synchronized
+	void added(String jarHash)
+	{
+		bloomFilter.add(jarHash);
+	}
+
+	synchronized
+	MavenInfo get(String jarHash) throws IOException
+	{
+		if (!bloomFilter.mightContain(jarHash) && !(refresh() && bloomFilter.mightContain(jarHash)))
+		{
+			log.debug("not in any registry: {}", jarHash);
+			return null;
+		}
+
+		for (Source source : sources)
+		{
+			final
+			MavenInfo mavenInfo = source.registry.getMavenInfoFor(jarHash);
+
+			if (mavenInfo != null)
+			{
+				return mavenInfo;
+			}
+		}
+
+		return null;
+	}
+}
@@ -1,12 +1,9 @@
 package com.github.osndok.mrb.grinder.rpm;
 
-import com.github.osndok.mrb.grinder.MavenInfo;
+import com.github.osndok.mrb.grinder.ApiSignature;
 import com.github.osndok.mrb.grinder.MavenJar;
 import com.github.osndok.mrb.grinder.util.Exec;
-import org.osjava.jardiff.DiffCriteria;
-import org.osjava.jardiff.PublicDiffCriteria;
-import org.semver.Comparer;
-import org.semver.Delta;
+import com.github.osndok.mrb.grinder.util.Workspace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,16 +12,20 @@ import javax.module.ModuleInfo;
 import javax.module.util.ModuleKey;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * Created by robert on 10/30/14.
@@ -41,9 +42,6 @@ class RPM
 	private
 	ModuleKey moduleKey;
 
-	private final
-	DiffCriteria diffCriteria = new PublicDiffCriteria();
-
 	public
 	RPM(File file)
 	{
@@ -55,12 +53,29 @@ class RPM
 	{
 		if (moduleKey == null)
 		{
-			String namePipeVersion = Exec.toString("rpm", "--queryformat", "%{NAME}|%{VERSION}", "-qp",
-													  file.getAbsolutePath());
-			log.debug("namePipeVersion='{}'", namePipeVersion);
-			String[] bits = namePipeVersion.split(REGEX_SAFE_PIPING_SYMBOL);
-			String rpmName = bits[0];
-			String rpmVersion = bits[1];
+			String rpmName;
+			String rpmVersion;
+
+			try
+			{
+				final
+				RPMHeader header = getHeader();
+
+				rpmName = header.getName();
+				rpmVersion = header.getVersion();
+			}
+			catch (IOException e)
+			{
+				log.warn("unable to read rpm header in-process, asking rpm: {}", e.toString());
+
+				String namePipeVersion = Exec.toString("rpm", "--queryformat", "%{NAME}|%{VERSION}", "-qp",
+														  file.getAbsolutePath());
+				log.debug("namePipeVersion='{}'", namePipeVersion);
+				String[] bits = namePipeVersion.split(REGEX_SAFE_PIPING_SYMBOL);
+				rpmName = bits[0];
+				rpmVersion = bits[1];
+			}
+
 			String noPrefix = maybeRemovePrefix(rpmName, RPMSpec.RPM_NAME_PREFIX);
 			log.debug("rpm name ('{}') -to-module-name-> '{}'", rpmName, noPrefix);
 			try
@@ -76,6 +91,67 @@ class RPM
 		return moduleKey;
 	}
 
+	public
+	File getFile()
+	{
+		return file;
+	}
+
+	private
+	RPMHeader header;
+
+	/**
+	 * @return the (in-process parsed) rpm header, which is read at most once per RPM object
+	 */
+	public
+	RPMHeader getHeader() throws IOException
+	{
+		if (header == null)
+		{
+			header = RPMHeader.read(file);
+		}
+
+		return header;
+	}
+
+	/**
+	 * @return a hex string that identifies this rpm's exact contents (from the signature, so without reading the payload)
+	 */
+	public
+	String getDigest() throws IOException
+	{
+		final
+		RPMHeader signature = getHeader().getSignature();
+
+		//The md5 covers both the header & payload, the sha1 only the header (which, in turn, has the file digests).
+		final
+		byte[] md5 = signature.getBinary(RPMHeader.SIGTAG_MD5);
+
+		if (md5 != null)
+		{
+			final
+			StringBuilder sb = new StringBuilder(md5.length * 2);
+
+			for (byte b : md5)
+			{
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+
+			return sb.toString();
+		}
+
+		final
+		String sha1 = signature.getString(RPMHeader.SIGTAG_SHA1);
+
+		if (sha1 != null)
+		{
+			return sha1;
+		}
+
+		throw new IOException(file + ": has no signature digest");
+	}
+
 	private
 	ModuleKey addMinorVersion(ModuleKey moduleKey, String rpmVersion)
 	{
@@ -116,43 +192,74 @@ class RPM
 	}
 
 	public
-	boolean innerJarIsCompatibleWithNewer(MavenJar mavenJar) throws IOException
+	boolean innerJarIsCompatibleWithNewer(MavenJar mavenJar, RPMRepo rpmRepo) throws IOException
 	{
-		MavenInfo mavenInfo=mavenJar.getInfo();
-		File innerJar=File.createTempFile(mavenInfo.getArtifactId()+"-", ".jar");
+		final
+		RPMRegistry rpmRegistry = rpmRepo.getRpmRegistry();
 
-		try
+		final
+		String digest = getDigest();
+
+		final
+		String jarHash = mavenJar.getJarHash();
+
+		ApiSignature.Verdict verdict = rpmRegistry.getCompatibilityVerdict(digest, jarHash, ApiSignature.CRITERIA_VERSION);
+
+		if (verdict == null)
 		{
-			Exec.andWait("bash", "-c", "rpm2cpio "+file+" | cpio -i --to-stdout '*.jar' > "+innerJar);
+			final
+			ApiSignature older;
 
-			Set<String> includes = Collections.emptySet();
-			Set<String> excludes = Collections.emptySet();
-			Delta delta = new Comparer(diffCriteria, innerJar, mavenJar.getFile(), includes, excludes).diff();
+			final
+			ApiSignature newer;
 
-			//Given no special information asto if the dependency is one of implementation or simple usage
-			//(though, we might be able to discover most implemenattions by scanning the classes), we must
-			//presume that they *do* implement interfaces, etc.
-			switch(delta.computeCompatibilityType())
+			try
 			{
-				case BACKWARD_COMPATIBLE_IMPLEMENTER:
-					return true;
-
-				case BACKWARD_COMPATIBLE_USER:
-				case NON_BACKWARD_COMPATIBLE:
-					for (Delta.Difference difference : delta.getDifferences())
-					{
-						log.info("difference: {}", difference.getInfo());
-					}
-					return false;
-
-				default:
-					throw new AssertionError();
+				older = getApiSignature(rpmRepo);
+				newer = mavenJar.getApiSignature();
 			}
+			catch (IOException e)
+			{
+				//NB: not remembered, as it is not a verdict about the api (which may become readable, later).
+				log.warn("unable to compare the api of {} with {}, so presuming that it is not compatible", file,
+							mavenJar.getFile(), e);
+				return false;
+			}
+
+			verdict = older.compareWithNewer(newer);
+			rpmRegistry.putCompatibilityVerdict(digest, jarHash, ApiSignature.CRITERIA_VERSION, verdict);
 		}
-		finally
+		else
 		{
-			innerJar.delete();
+			log.debug("already compared {} with {}: compatible={}", file, mavenJar.getFile(), verdict.isCompatible());
 		}
+
+		return verdict.isCompatible();
+	}
+
+	/**
+	 * @return the public API of this rpm's inner jar, as recorded in the given repo's registry when the rpm was added, or
+	 * (for rpms that predate that) as extracted from the rpm now, and then recorded for next time.
+	 */
+	ApiSignature getApiSignature(RPMRepo rpmRepo) throws IOException
+	{
+		final
+		RPMRegistry rpmRegistry = rpmRepo.getRpmRegistry();
+
+		final
+		String digest = getDigest();
+
+		ApiSignature retval = rpmRegistry.getApiSignature(digest);
+
+		if (retval == null)
+		{
+			log.debug("no api signature for {}, extracting it", file);
+
+			retval = ApiSignature.of(InnerJarCache.forRepo(rpmRepo).get(this));
+			rpmRegistry.putApiSignature(digest, retval);
+		}
+
+		return retval;
 	}
 
 	private static final Logger log = LoggerFactory.getLogger(RPM.class);
@@ -183,7 +290,7 @@ class RPM
 		{
 			//TODO: BUG: sourceDir often is simply "/tmp", in which case there could be a war-file collision
 			//Make sure the war file also appears in the soon-to-be-important 'sources' directory...
-			Exec.andWait("cp", "-v", "-f", warFile.getAbsolutePath(), sourceDir);
+			Workspace.linkOrCopy(warFile, new File(sourceDir, warFile.getName()));
 		}
 
 		String lines = Exec.toString("rpmbuild", "--define", "_rpmdir " + out, "--define",
@@ -246,19 +353,129 @@ class RPM
 	public
 	boolean innerJarContainsEntry(ModuleKey moduleKey, String entryName) throws IOException
 	{
-		File innerJar=File.createTempFile(moduleKey.toString()+"-", ".jar");
+		return getClassEntryIndex().contains(entryName);
+	}
+
+	private
+	ClassEntryIndex classEntryIndex;
+
+	/**
+	 * @return the (persisted) list of entries in the inner jar, which is built (at most) once per rpm file
+	 */
+	public
+	ClassEntryIndex getClassEntryIndex() throws IOException
+	{
+		if (classEntryIndex==null)
+		{
+			classEntryIndex=ClassEntryIndex.forRpm(this, file);
+		}
+
+		return classEntryIndex;
+	}
+
+	/**
+	 * @return the name of every (non-directory) entry in the inner jar, or an empty list if there is no inner jar
+	 */
+	List<String> listInnerJarEntries() throws IOException
+	{
+		final
+		List<String> retval=new ArrayList<String>();
+
+		if (knownToNotContainAJarFile())
+		{
+			return retval;
+		}
+
+		final
+		RPMPayload payload;
+
+		try
+		{
+			payload=openInnerJar();
+		}
+		catch (FileNotFoundException e)
+		{
+			log.debug("no inner jar: {}", e.toString());
+			return retval;
+		}
+
+		try
+		{
+			final
+			ZipInputStream zis=new ZipInputStream(payload.getInputStream());
+
+			ZipEntry entry;
+
+			while ((entry=zis.getNextEntry())!=null)
+			{
+				if (!entry.isDirectory())
+				{
+					retval.add(entry.getName());
+				}
+			}
+		}
+		finally
+		{
+			payload.close();
+		}
+
+		return retval;
+	}
+
+	/**
+	 * @return the rpm's payload, positioned at the (first) inner jar file
+	 * @throws FileNotFoundException if the rpm does not contain a jar file
+	 */
+	private
+	RPMPayload openInnerJar() throws IOException
+	{
+		final
+		RPMPayload payload=RPMPayload.open(file);
+
+		if (payload.seekToSuffix(".jar"))
+		{
+			return payload;
+		}
+		else
+		{
+			payload.close();
+			throw new FileNotFoundException(file+" does not contain a jar file");
+		}
+	}
+
+	void extractInnerJar(File destination) throws IOException
+	{
+		final
+		RPMPayload payload=openInnerJar();
 
 		try
 		{
-			Exec.andWait("bash", "-c", "rpm2cpio "+file+" | cpio -i --to-stdout '*.jar' > "+innerJar);
+			final
+			InputStream in=payload.getInputStream();
+
+			final
+			OutputStream out=new FileOutputStream(destination);
+
+			try
+			{
+				final
+				byte[] buffer=new byte[64*1024];
+
+				int read;
 
-			JarFile jarFile=new JarFile(innerJar);
-			ZipEntry entry = jarFile.getEntry(entryName);
-			return (entry!=null);
+				while ((read=in.read(buffer))>0)
+				{
+					out.write(buffer, 0, read);
+				}
+			}
+			finally
+			{
+				out.close();
+			}
 		}
 		finally
 		{
-			innerJar.delete();
+			payload.close();
 		}
 	}
 
@@ -268,23 +485,36 @@ class RPM
 		//NB: must match spec templates!
 		String depsName=moduleKey.getModuleName()+".deps";
 
-		File innerDeps=File.createTempFile(moduleKey.toString()+"-", ".deps");
+		final
+		RPMPayload payload=RPMPayload.open(file);
 
 		try
 		{
-			String lines=Exec.toString("bash", "-c", "rpm2cpio "+file+" | cpio -i --to-stdout '*/"+depsName+"'");
-			log.trace("listing {} deps:\n{}", moduleKey, lines);
+			final
+			InputStream in;
+			{
+				if (payload.seekToSuffix("/"+depsName))
+				{
+					in=payload.getInputStream();
+				}
+				else
+				{
+					//As with cpio, a missing deps file reads as empty.
+					log.warn("{} does not contain {}", file, depsName);
+					in=new ByteArrayInputStream(new byte[0]);
+				}
+			}
 
 			log.debug("MODULE_NAME={}", moduleKey.getModuleName());
 			log.debug("MAJOR_VERSION={}", moduleKey.getMajorVersion());
 			log.debug("MINOR_VERSION={}", moduleKey.getMinorVersion());
 			log.debug("TO_STRING={}", moduleKey);
 
-			return ModuleInfo.read(new ByteArrayInputStream(lines.getBytes()), moduleKey).getDependencies();
+			return ModuleInfo.read(in, moduleKey).getDependencies();
 		}
 		finally
 		{
-			innerDeps.delete();
+			payload.close();
 		}
 	}
 
@@ -309,38 +539,13 @@ class RPM
 			return;
 		}
 
-		final
-		File innerJar=File.createTempFile("mrb-gather-deps-", ".jar");
-
-		try
+		for (String entryName : getClassEntryIndex().getEntries())
 		{
-			Exec.andWait("bash", "-c", "rpm2cpio " + file + " | cpio -i --to-stdout '*.jar' > " + innerJar);
-
-			final
-			JarFile jar=new JarFile(innerJar);
-
-			try
-			{
-				for (JarEntry jarEntry : Collections.list(jar.entries()))
-				{
-					final
-					String entryName=jarEntry.getName();
-
-					if (entryName.endsWith(".class"))
-					{
-						dependenciesByEntryName.put(entryName, dependency);
-					}
-				}
-			}
-			finally
+			if (entryName.endsWith(".class"))
 			{
-				jar.close();
+				dependenciesByEntryName.put(entryName, dependency);
 			}
 		}
-		finally
-		{
-			innerJar.delete();
-		}
 	}
 
 	private
@@ -0,0 +1,478 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal, read-only, in-process parser of an rpm file's lead, signature, and header sections (but
+ * not the payload), such that we need not fork an 'rpm -qp' process just to learn an rpm's name & version.
+ *
+ * Both the signature and the header are "header structures", which consist of an eight-byte magic/reserved
+ * preamble, the index length (number of entries), the data length, the index entries (tag, type, offset, count)
+ * and finally the data store to which the offsets refer. All numbers are big-endian.
+ *
+ * @url http://ftp.rpm.org/max-rpm/s1-rpm-file-format-rpm-file-format.html
+ */
+public
+class RPMHeader
+{
+	public static final int NAME              = 1000;
+	public static final int VERSION           = 1001;
+	public static final int RELEASE           = 1002;
+	public static final int PROVIDENAME       = 1047;
+	public static final int REQUIRENAME       = 1049;
+	public static final int PAYLOADFORMAT     = 1124;
+	public static final int PAYLOADCOMPRESSOR = 1125;
+
+	public static final int SIGTAG_SIZE        = 1000;
+	public static final int SIGTAG_MD5         = 1004;
+	public static final int SIGTAG_PAYLOADSIZE = 1007;
+	public static final int SIGTAG_SHA1        = 269;
+
+	private static final int TYPE_CHAR         = 1;
+	private static final int TYPE_INT8         = 2;
+	private static final int TYPE_INT16        = 3;
+	private static final int TYPE_INT32        = 4;
+	private static final int TYPE_INT64        = 5;
+	private static final int TYPE_STRING       = 6;
+	private static final int TYPE_BIN          = 7;
+	private static final int TYPE_STRING_ARRAY = 8;
+	private static final int TYPE_I18NSTRING   = 9;
+
+	static final int LEAD_SIZE = 96;
+
+	private static final int LEAD_MAGIC   = 0xedabeedb;
+	private static final int HEADER_MAGIC = 0x8eade801;
+
+	/**
+	 * A sanity limit, such that a corrupt (or non-rpm) file cannot make us allocate a huge buffer.
+	 */
+	private static final int MAX_SECTION_SIZE = 64 * 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static
+	class Entry
+	{
+		final int type;
+		final int offset;
+		final int count;
+
+		Entry(int type, int offset, int count)
+		{
+			this.type = type;
+			this.offset = offset;
+			this.count = count;
+		}
+	}
+
+	private final
+	Map<Integer, Entry> entries;
+
+	private final
+	ByteBuffer store;
+
+	/**
+	 * The file position at which this header structure begins.
+	 */
+	private final
+	long start;
+
+	/**
+	 * The file position just past this header structure (not including any padding).
+	 */
+	private final
+	long end;
+
+	private
+	RPMHeader signature;
+
+	private
+	RPMHeader(Map<Integer, Entry> entries, ByteBuffer store, long start, long end)
+	{
+		this.entries = entries;
+		this.store = store;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return the main header of the given rpm file, which (in turn) provides access to it's signature header
+	 */
+	public static
+	RPMHeader read(File file) throws IOException
+	{
+		final
+		FileInputStream fis = new FileInputStream(file);
+
+		try
+		{
+			return read(fis.getChannel(), file.toString());
+		}
+		finally
+		{
+			fis.close();
+		}
+	}
+
+	static
+	RPMHeader read(FileChannel channel, String context) throws IOException
+	{
+		final
+		ByteBuffer lead = readFully(channel, 0, LEAD_SIZE, context);
+
+		if (lead.getInt(0) != LEAD_MAGIC)
+		{
+			throw new IOException(context + ": not an rpm file (bad lead magic)");
+		}
+
+		final
+		RPMHeader signature = readSection(channel, LEAD_SIZE, context);
+
+		//NB: the signature (and only the signature) is padded out to an eight-byte boundary.
+		final
+		long headerStart = (signature.end + 7) & ~7L;
+
+		final
+		RPMHeader retval = readSection(channel, headerStart, context);
+
+		retval.signature = signature;
+
+		return retval;
+	}
+
+	private static
+	RPMHeader readSection(FileChannel channel, long position, String context) throws IOException
+	{
+		final
+		ByteBuffer preamble = readFully(channel, position, 16, context);
+
+		if (preamble.getInt(0) != HEADER_MAGIC)
+		{
+			throw new IOException(context + ": bad header magic at offset " + position);
+		}
+
+		final
+		int indexLength = preamble.getInt(8);
+
+		final
+		int storeLength = preamble.getInt(12);
+
+		if (indexLength < 0 || storeLength < 0 || indexLength * 16L + storeLength > MAX_SECTION_SIZE)
+		{
+			throw new IOException(context + ": unreasonable header size at offset " + position);
+		}
+
+		final
+		ByteBuffer index = readFully(channel, position + 16, indexLength * 16, context);
+
+		final
+		ByteBuffer store = readFully(channel, position + 16 + indexLength * 16, storeLength, context);
+
+		final
+		Map<Integer, Entry> entries = new HashMap<Integer, Entry>(indexLength * 2);
+
+		for (int i = 0; i < indexLength; i++)
+		{
+			final
+			int tag = index.getInt();
+
+			final
+			int type = index.getInt();
+
+			final
+			int offset = index.getInt();
+
+			final
+			int count = index.getInt();
+
+			if (offset < 0 || offset > storeLength)
+			{
+				throw new IOException(context + ": tag " + tag + " points outside of the header store");
+			}
+
+			entries.put(tag, new Entry(type, offset, count));
+		}
+
+		return new RPMHeader(entries, store, position, position + 16 + indexLength * 16 + storeLength);
+	}
+
+	private static
+	ByteBuffer readFully(FileChannel channel, long position, int length, String context) throws IOException
+	{
+		final
+		ByteBuffer retval = ByteBuffer.allocate(length);
+
+		while (retval.hasRemaining())
+		{
+			if (channel.read(retval, position + retval.position()) < 0)
+			{
+				throw new EOFException(context + ": truncated rpm, at offset " + (position + retval.position()));
+			}
+		}
+
+		retval.flip();
+		return retval;
+	}
+
+	public
+	RPMHeader getSignature()
+	{
+		return signature;
+	}
+
+	/**
+	 * @return the file offset at which this header begins (for the main header, just after the signature's padding)
+	 */
+	public
+	long getHeaderOffset()
+	{
+		return start;
+	}
+
+	/**
+	 * @return the file offset at which the (compressed) cpio payload begins
+	 */
+	public
+	long getPayloadOffset()
+	{
+		return end;
+	}
+
+	public
+	boolean contains(int tag)
+	{
+		return entries.containsKey(tag);
+	}
+
+	/**
+	 * @return the (first) string value of the given tag, or null if the header does not contain it
+	 */
+	public
+	String getString(int tag)
+	{
+		final
+		Entry entry = entries.get(tag);
+
+		if (entry == null)
+		{
+			return null;
+		}
+
+		switch (entry.type)
+		{
+			case TYPE_STRING:
+			case TYPE_STRING_ARRAY:
+			case TYPE_I18NSTRING:
+				return stringAt(entry.offset);
+
+			default:
+				throw new IllegalArgumentException("tag " + tag + " is not a string, but type " + entry.type);
+		}
+	}
+
+	/**
+	 * @return all the string values of the given tag, or an empty list if the header does not contain it
+	 */
+	public
+	List<String> getStringArray(int tag)
+	{
+		final
+		Entry entry = entries.get(tag);
+
+		if (entry == null)
+		{
+			return Collections.emptyList();
+		}
+
+		if (entry.type == TYPE_STRING)
+		{
+			return Collections.singletonList(stringAt(entry.offset));
+		}
+
+		if (entry.type != TYPE_STRING_ARRAY && entry.type != TYPE_I18NSTRING)
+		{
+			throw new IllegalArgumentException("tag " + tag + " is not a string array, but type " + entry.type);
+		}
+
+		final
+		List<String> retval = new ArrayList<String>(entry.count);
+
+		int offset = entry.offset;
+
+		for (int i = 0; i < entry.count; i++)
+		{
+			final
+			int nul = indexOfNul(offset);
+
+			retval.add(new String(store.array(), offset, nul - offset, UTF8));
+			offset = nul + 1;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * @return the (first) numeric value of the given tag, or null if the header does not contain it
+	 */
+	public
+	Long getNumber(int tag)
+	{
+		final
+		Entry entry = entries.get(tag);
+
+		if (entry == null)
+		{
+			return null;
+		}
+
+		switch (entry.type)
+		{
+			case TYPE_CHAR:
+			case TYPE_INT8:  return (long) (store.get(entry.offset) & 0xff);
+			case TYPE_INT16: return (long) (store.getShort(entry.offset) & 0xffff);
+			case TYPE_INT32: return store.getInt(entry.offset) & 0xffffffffL;
+			case TYPE_INT64: return store.getLong(entry.offset);
+
+			default:
+				throw new IllegalArgumentException("tag " + tag + " is not numeric, but type " + entry.type);
+		}
+	}
+
+	/**
+	 * @return all the numeric values of the given tag, or an empty array if the header does not contain it
+	 */
+	public
+	long[] getNumbers(int tag)
+	{
+		final
+		Entry entry = entries.get(tag);
+
+		if (entry == null)
+		{
+			return new long[0];
+		}
+
+		final
+		long[] retval = new long[entry.count];
+
+		for (int i = 0; i < entry.count; i++)
+		{
+			switch (entry.type)
+			{
+				case TYPE_CHAR:
+				case TYPE_INT8:  retval[i] = store.get(entry.offset + i) & 0xff; break;
+				case TYPE_INT16: retval[i] = store.getShort(entry.offset + 2 * i) & 0xffff; break;
+				case TYPE_INT32: retval[i] = store.getInt(entry.offset + 4 * i) & 0xffffffffL; break;
+				case TYPE_INT64: retval[i] = store.getLong(entry.offset + 8 * i); break;
+
+				default:
+					throw new IllegalArgumentException("tag " + tag + " is not numeric, but type " + entry.type);
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * @return a copy of the raw bytes of the given (binary) tag, or null if the header does not contain it
+	 */
+	public
+	byte[] getBinary(int tag)
+	{
+		final
+		Entry entry = entries.get(tag);
+
+		if (entry == null)
+		{
+			return null;
+		}
+
+		if (entry.type != TYPE_BIN)
+		{
+			throw new IllegalArgumentException("tag " + tag + " is not binary, but type " + entry.type);
+		}
+
+		final
+		byte[] retval = new byte[entry.count];
+
+		System.arraycopy(store.array(), entry.offset, retval, 0, entry.count);
+
+		return retval;
+	}
+
+	private
+	String stringAt(int offset)
+	{
+		return new String(store.array(), offset, indexOfNul(offset) - offset, UTF8);
+	}
+
+	private
+	int indexOfNul(int offset)
+	{
+		final
+		byte[] bytes = store.array();
+
+		for (int i = offset; i < bytes.length; i++)
+		{
+			if (bytes[i] == 0)
+			{
+				return i;
+			}
+		}
+
+		throw new IllegalStateException("unterminated string in header store at offset " + offset);
+	}
+
+	public
+	String getName()
+	{
+		return getString(NAME);
+	}
+
+	public
+	String getVersion()
+	{
+		return getString(VERSION);
+	}
+
+	public
+	String getRelease()
+	{
+		return getString(RELEASE);
+	}
+
+	public
+	List<String> getProvides()
+	{
+		return getStringArray(PROVIDENAME);
+	}
+
+	public
+	List<String> getRequires()
+	{
+		return getStringArray(REQUIRENAME);
+	}
+
+	/**
+	 * @return the payload compressor (e.g. "gzip", "xz", "zstd"), which rpm presumes to be gzip if unspecified
+	 */
+	public
+	String getPayloadCompressor()
+	{
+		final
+		String retval = getString(PAYLOADCOMPRESSOR);
+
+		return (retval == null ? "gzip" : retval);
+	}
+}
@@ -1,18 +1,32 @@
 package com.github.osndok.mrb.grinder.rpm;
 
 import com.github.osndok.mrb.grinder.MavenInfo;
+import com.github.osndok.mrb.grinder.util.GroupIdTrie;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.module.util.ModuleKey;
 import javax.module.util.SystemPropertyOrEnvironment;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This is used to route private groupIds (as matched by prefix) to separate rpm
@@ -40,41 +54,33 @@ class RPMManifold
 	private
 	RPMRepo repoFor(String groupId)
 	{
-		int longestPrefixLength=0;
-		RPMRepo retval=defaultRepo;
+		final
+		RPMRepo memo=reposByGroupId.get(groupId);
 
-		for (Map.Entry<String, RPMRepo> me : reposByPrefix.entrySet())
+		if (memo!=null)
 		{
-			final
-			String groupPrefix=me.getKey();
+			return memo;
+		}
 
-			final
-			RPMRepo rpmRepo=me.getValue();
+		final
+		RPMRepo routed=routes.get(groupId);
 
-			int prefixLength=groupPrefix.length();
+		final
+		RPMRepo retval=(routed==null ? defaultRepo : routed);
 
-			if (prefixLength>longestPrefixLength && groupId.startsWith(groupPrefix))
-			{
-				log.debug("{} matches: {} / {} / {} / {}", rpmRepo, prefixLength, longestPrefixLength, groupPrefix,
-							 groupId);
-				longestPrefixLength=prefixLength;
-				retval=rpmRepo;
-			}
-			else
-			{
-				log.debug("{} does *not* match: {} / {} / {} / {}", rpmRepo, prefixLength, longestPrefixLength, groupPrefix, groupId);
-			}
+		//NB: a race may cause a duplicate log message, but never a different answer.
+		if (reposByGroupId.putIfAbsent(groupId, retval)==null)
+		{
+			log.info("{} -> {} (prefix: {})", groupId, retval, routes.getMatchingPrefix(groupId));
 		}
 
-		log.info("{} -> {}", groupId, retval);
-
 		return retval;
 	}
 
 	private static final
 	Logger log = LoggerFactory.getLogger(RPMManifold.class);
 
-	private static
+	private static volatile
 	RPMManifold INSTANCE;
 
 	public static
@@ -153,6 +159,10 @@ class RPMManifold
 			}
 		}
 
+		rpmManifold.routes=GroupIdTrie.compile(rpmManifold.reposByPrefix);
+
+		log.debug("compiled {} routes", rpmManifold.routes.size());
+
 		return rpmManifold;
 	}
 
@@ -210,6 +220,15 @@ class RPMManifold
 	private final
 	Map<String, RPMRepo> reposByPrefix = new LinkedHashMap<String, RPMRepo>(5);
 
+	/**
+	 * The reposByPrefix, compiled (once all the routes have been added) for quick lookup.
+	 */
+	private
+	GroupIdTrie<RPMRepo> routes;
+
+	private final
+	ConcurrentMap<String, RPMRepo> reposByGroupId = new ConcurrentHashMap<String, RPMRepo>();
+
 	private
 	RPMManifold(RPMRepo defaultRepo)
 	{
@@ -217,7 +236,7 @@ class RPMManifold
 	}
 
 	public static final
-	void main(String[] args)
+	void main(String[] args) throws IOException
 	{
 		boolean WITH_PREFIX = SystemPropertyOrEnvironment.getBoolean("WITH_PREFIX", false);
 		boolean NO_PREFIX = SystemPropertyOrEnvironment.getBoolean("NO_PREFIX", false);
@@ -225,9 +244,43 @@ class RPMManifold
 		if (args.length == 0)
 		{
 			System.err.println(String.format("usage: %s groupId [groupId [groupId ...]]", JAVAX_MODULE_EXEC));
+			System.err.println(String.format("       %s - < groupIds.txt", JAVAX_MODULE_EXEC));
 			System.err.println("theory: given a maven group id, return the configured/target rpm repo therefor");
 			System.exit(1);
 		}
+		else if (args.length == 1 && args[0].equals("-"))
+		{
+			//Batch mode: one groupId per line, which (like multiple arguments) defaults to printing the prefix.
+			final
+			BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+			final
+			PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+
+			String line;
+
+			while ((line = in.readLine()) != null)
+			{
+				final
+				String groupId = line.trim();
+
+				if (groupId.length() == 0)
+				{
+					continue;
+				}
+
+				if (!NO_PREFIX)
+				{
+					out.print(groupId);
+					out.print('\t');
+				}
+
+				out.println(getRepoFor(groupId).getDirectory().getAbsolutePath());
+			}
+
+			out.flush();
+			System.exit(out.checkError() ? 1 : 0);
+		}
 		else if (WITH_PREFIX || (args.length > 1 && !NO_PREFIX))
 		{
 			for (String arg : args)
@@ -284,21 +337,161 @@ class RPMManifold
 		return getInstance().getMavenInfoFromAnyRegistry(jarHash);
 	}
 
+	private
+	JarHashIndex jarHashIndex;
+
 	private
 	MavenInfo getMavenInfoFromAnyRegistry(String jarHash) throws IOException
 	{
-		for (RPMRepo rpmRepo : reposByPrefix.values())
+		return getJarHashIndex().get(jarHash);
+	}
+
+	private synchronized
+	JarHashIndex getJarHashIndex() throws IOException
+	{
+		if (jarHashIndex == null)
 		{
 			final
-			MavenInfo mavenInfo = rpmRepo.getRpmRegistry().getMavenInfoFor(jarHash);
+			List<RPMRegistry> registries = new ArrayList<RPMRegistry>();
+
+			final
+			Set<File> seen = new HashSet<File>();
+
+			//NB: same order as getAllRepos(), the default repo being last.
+			for (RPMRepo rpmRepo : getAllRepos())
+			{
+				if (seen.add(rpmRepo.getDirectory().getAbsoluteFile()))
+				{
+					registries.add(rpmRepo.getRpmRegistry());
+				}
+			}
+
+			jarHashIndex = new JarHashIndex(registries);
+		}
+
+		return jarHashIndex;
+	}
+
+	/**
+	 * @return every configured repo, the default repo being last
+	 */
+	public
+	Collection<RPMRepo> getAllRepos()
+	{
+		final
+		List<RPMRepo> retval = new ArrayList<RPMRepo>(reposByPrefix.values());
+
+		retval.add(defaultRepo);
+
+		return retval;
+	}
+
+	/**
+	 * Begins a batch (or session) during which yum metadata is not rebuilt after every addition,
+	 * but only as the batch limits are reached, and finally by finishBatch().
+	 */
+	public
+	void beginBatch()
+	{
+		for (RPMRepo rpmRepo : getAllRepos())
+		{
+			rpmRepo.setDeferMetadata(true);
+		}
+	}
+
+	/**
+	 * Rebuilds the metadata for every repo that was touched during the batch, which should be
+	 * called even if (or especially if) grinding has failed.
+	 */
+	public
+	void finishBatch() throws IOException
+	{
+		IOException first = null;
+
+		for (RPMRepo rpmRepo : getAllRepos())
+		{
+			try
+			{
+				rpmRepo.flushMetadata();
+			}
+			catch (IOException e)
+			{
+				log.error("unable to rebuild metadata for {}", rpmRepo, e);
+
+				if (first == null)
+				{
+					first = e;
+				}
+			}
+
+			rpmRepo.setDeferMetadata(false);
+		}
+
+		if (first != null)
+		{
+			throw first;
+		}
+	}
+
+	/**
+	 * @return the configured repo that contains the given rpm file, or null if it is not in any repo
+	 */
+	public
+	RPMRepo getRepoContaining(RPM rpm)
+	{
+		final
+		File dir = rpm.getFile().getAbsoluteFile().getParentFile();
 
-			if (mavenInfo != null)
+		for (RPMRepo rpmRepo : getAllRepos())
+		{
+			if (rpmRepo.getDirectory().getAbsoluteFile().equals(dir))
 			{
-				return mavenInfo;
+				return rpmRepo;
 			}
 		}
 
-		return defaultRepo.getRpmRegistry().getMavenInfoFor(jarHash);
+		return null;
+	}
+
+	/**
+	 * Ensures that the given rpm's classes are in it's repo's class index (which is normally done as the rpm is added).
+	 */
+	public
+	void ensureClassEntriesIndexed(RPM rpm) throws IOException
+	{
+		final
+		RPMRepo rpmRepo = getRepoContaining(rpm);
+
+		if (rpmRepo == null)
+		{
+			throw new IOException("not in any configured repo: " + rpm.getFile());
+		}
+
+		rpmRepo.getRpmRegistry().indexClassEntries(rpm);
+	}
+
+	/**
+	 * @return every module (from any repo) whose rpms contain the given class entry
+	 */
+	public
+	Set<ModuleKey> getModulesProviding(String classEntryName) throws IOException
+	{
+		final
+		Set<ModuleKey> retval = new LinkedHashSet<ModuleKey>();
+
+		final
+		Set<File> seen = new HashSet<File>();
+
+		for (RPMRepo rpmRepo : getAllRepos())
+		{
+			//NB: two prefixes might route to the same directory (and therefore the same registry).
+			if (seen.add(rpmRepo.getDirectory().getAbsoluteFile()))
+			{
+				retval.addAll(rpmRepo.getRpmRegistry().getModulesProviding(classEntryName));
+			}
+		}
+
+		return retval;
 	}
 
 	public
@@ -0,0 +1,387 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import com.github.osndok.mrb.grinder.util.StreamGobbler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.LZMAInputStream;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A forward-only, streaming reader of an rpm's payload (a compressed "newc" cpio archive), such that
+ * a single file can be pulled out of an rpm without forking rpm2cpio & cpio, and without writing it to
+ * a temporary file.
+ *
+ * Payloads that are compressed in a manner that we cannot decompress in-process (e.g. zstd) are still
+ * streamed, but from an 'rpm2cpio' process.
+ *
+ * @url https://www.mkssoftware.com/docs/man4/cpio.4.asp
+ */
+public
+class RPMPayload implements Closeable
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(RPMPayload.class);
+
+	private static final String NEWC_MAGIC     = "070701";
+	private static final String NEWC_CRC_MAGIC = "070702";
+	private static final String TRAILER        = "TRAILER!!!";
+
+	private static final int NEWC_HEADER_SIZE = 110;
+
+	private final
+	InputStream in;
+
+	private final
+	Process process;
+
+	private
+	String entryName;
+
+	private
+	long entrySize;
+
+	private
+	int entryMode;
+
+	/**
+	 * How many bytes of the current entry (including it's padding) have not yet been consumed.
+	 */
+	private
+	long entryRemaining;
+
+	private
+	RPMPayload(InputStream in, Process process)
+	{
+		this.in = in;
+		this.process = process;
+	}
+
+	public static
+	RPMPayload open(File rpm) throws IOException
+	{
+		final
+		RPMHeader header = RPMHeader.read(rpm);
+
+		final
+		String compressor = header.getPayloadCompressor();
+
+		final
+		InputStream raw = new BufferedInputStream(new FileInputStream(rpm), 64 * 1024);
+
+		try
+		{
+			skipFully(raw, header.getPayloadOffset());
+
+			if (compressor.equals("gzip"))
+			{
+				return new RPMPayload(new GZIPInputStream(raw, 64 * 1024), null);
+			}
+			else
+			if (compressor.equals("xz"))
+			{
+				return new RPMPayload(new BufferedInputStream(new XZInputStream(raw), 64 * 1024), null);
+			}
+			else
+			if (compressor.equals("lzma"))
+			{
+				return new RPMPayload(new BufferedInputStream(new LZMAInputStream(raw), 64 * 1024), null);
+			}
+		}
+		catch (IOException e)
+		{
+			raw.close();
+			throw e;
+		}
+
+		raw.close();
+
+		log.debug("{}: cannot decompress '{}' payloads in-process, using rpm2cpio", rpm, compressor);
+
+		final
+		Process process = Runtime.getRuntime().exec(new String[]{"rpm2cpio", rpm.getAbsolutePath()});
+
+		process.getOutputStream().close();
+		new StreamGobbler(process.getErrorStream(), System.err, "ERR> ").start();
+
+		return new RPMPayload(new BufferedInputStream(process.getInputStream(), 64 * 1024), process);
+	}
+
+	/**
+	 * Advances to the next entry in the archive, skipping whatever remains of the current one.
+	 *
+	 * @return false if there are no more entries
+	 */
+	public
+	boolean nextEntry() throws IOException
+	{
+		skipFully(in, entryRemaining);
+		entryRemaining = 0;
+
+		final
+		byte[] header = new byte[NEWC_HEADER_SIZE];
+
+		readFully(in, header);
+
+		final
+		String magic = new String(header, 0, 6, "US-ASCII");
+
+		if (!magic.equals(NEWC_MAGIC) && !magic.equals(NEWC_CRC_MAGIC))
+		{
+			throw new IOException("unsupported cpio format, magic: " + magic);
+		}
+
+		entryMode = (int) hexField(header, 2);
+		entrySize = hexField(header, 7);
+
+		final
+		int nameSize = (int) hexField(header, 12);
+
+		final
+		byte[] name = new byte[nameSize];
+
+		readFully(in, name);
+
+		//Both the name and the data are padded out to four-byte boundaries (the name, *including* the header).
+		skipFully(in, pad4(NEWC_HEADER_SIZE + nameSize));
+
+		//NB: trailing nul
+		entryName = new String(name, 0, Math.max(0, nameSize - 1), "UTF-8");
+
+		if (entryName.equals(TRAILER))
+		{
+			entryName = null;
+			return false;
+		}
+
+		entryRemaining = entrySize + pad4(entrySize);
+
+		return true;
+	}
+
+	/**
+	 * Advances to the next *regular file* entry whose name ends with the given suffix (e.g. ".jar", or "/foo.deps").
+	 *
+	 * @return false if no such entry was found
+	 */
+	public
+	boolean seekToSuffix(String suffix) throws IOException
+	{
+		while (nextEntry())
+		{
+			if (isRegularFile() && entryName.endsWith(suffix))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the name of the current entry, which (for rpm payloads) generally starts with "./"
+	 */
+	public
+	String getEntryName()
+	{
+		return entryName;
+	}
+
+	public
+	long getEntrySize()
+	{
+		return entrySize;
+	}
+
+	public
+	boolean isRegularFile()
+	{
+		return (entryMode & 0170000) == 0100000;
+	}
+
+	/**
+	 * @return a stream of the current entry's contents, which is only valid until the next call to nextEntry(), and which need not be closed
+	 */
+	public
+	InputStream getInputStream()
+	{
+		return new FilterInputStream(in)
+		{
+			private
+			long remaining = entrySize;
+
+			@Override
+			public
+			int read() throws IOException
+			{
+				if (remaining <= 0)
+				{
+					return -1;
+				}
+
+				final
+				int retval = in.read();
+
+				if (retval >= 0)
+				{
+					consumed(1);
+				}
+
+				return retval;
+			}
+
+			@Override
+			public
+			int read(byte[] b, int off, int len) throws IOException
+			{
+				if (remaining <= 0)
+				{
+					return -1;
+				}
+
+				final
+				int retval = in.read(b, off, (int) Math.min(len, remaining));
+
+				if (retval > 0)
+				{
+					consumed(retval);
+				}
+
+				return retval;
+			}
+
+			@Override
+			public
+			long skip(long n) throws IOException
+			{
+				final
+				long retval = in.skip(Math.min(n, remaining));
+
+				consumed(retval);
+
+				return retval;
+			}
+
+			@Override
+			public
+			int available() throws IOException
+			{
+				return (int) Math.min(in.available(), remaining);
+			}
+
+			private
+			void consumed(long n)
+			{
+				remaining -= n;
+				entryRemaining -= n;
+			}
+
+			@Override
+			public
+			boolean markSupported()
+			{
+				return false;
+			}
+
+			@Override
+			public
+			void close()
+			{
+				//The underlying stream belongs to the payload.
+			}
+		};
+	}
+
+	@Override
+	public
+	void close() throws IOException
+	{
+		try
+		{
+			in.close();
+		}
+		finally
+		{
+			if (process != null)
+			{
+				//NB: we often stop reading long before the end of the archive.
+				process.destroy();
+			}
+		}
+	}
+
+	private static
+	long hexField(byte[] header, int field) throws IOException
+	{
+		//The magic is six bytes, followed by thirteen eight-byte hex fields.
+		final
+		String hex = new String(header, 6 + (field - 1) * 8, 8, "US-ASCII");
+
+		try
+		{
+			return Long.parseLong(hex, 16);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("corrupt cpio header field: " + hex);
+		}
+	}
+
+	private static
+	long pad4(long length)
+	{
+		return (4 - (length & 3)) & 3;
+	}
+
+	private static
+	void readFully(InputStream in, byte[] bytes) throws IOException
+	{
+		int offset = 0;
+
+		while (offset < bytes.length)
+		{
+			final
+			int read = in.read(bytes, offset, bytes.length - offset);
+
+			if (read < 0)
+			{
+				throw new EOFException("truncated cpio archive");
+			}
+
+			offset += read;
+		}
+	}
+
+	private static
+	void skipFully(InputStream in, long n) throws IOException
+	{
+		while (n > 0)
+		{
+			final
+			long skipped = in.skip(n);
+
+			if (skipped > 0)
+			{
+				n -= skipped;
+			}
+			else
+			if (in.read() < 0)
+			{
+				throw new EOFException("truncated rpm payload");
+			}
+			else
+			{
+				n--;
+			}
+		}
+	}
+}
@@ -1,14 +1,18 @@
 package com.github.osndok.mrb.grinder.rpm;
 
+import com.github.osndok.mrb.grinder.ApiSignature;
 import com.github.osndok.mrb.grinder.DependencyNotProcessedException;
+import com.github.osndok.mrb.grinder.JarAnalysis;
 import com.github.osndok.mrb.grinder.Main;
 import com.github.osndok.mrb.grinder.MavenInfo;
 import com.github.osndok.mrb.grinder.ObsoleteJarException;
-import com.github.osndok.mrb.grinder.util.Exec;
+import com.github.osndok.mrb.grinder.util.BloomFilter;
+import com.github.osndok.mrb.grinder.util.FileHash;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.module.util.ModuleKey;
+import javax.module.util.SystemPropertyOrEnvironment;
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
@@ -17,6 +21,16 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The "Registry" is currently a flat file stashed in the target rpm repo that contains all the
@@ -49,40 +63,190 @@ class RPMRegistry
 	private final
 	Connection connection;
 
+	/**
+	 * If true (the default), the database is kept in write-ahead-log mode, such that readers (e.g. other grinders)
+	 * do not block the writer, and that each commit need not rewrite (and sync) the main database file.
+	 */
+	private static final
+	boolean REGISTRY_WAL = SystemPropertyOrEnvironment.getBoolean("REGISTRY_WAL", true);
+
+	/**
+	 * How long to wait for another process (e.g. a parallel grinder) to finish writing to the registry, before
+	 * giving up with a "database is locked" error.
+	 */
+	private static final
+	String REGISTRY_BUSY_TIMEOUT_MS = SystemPropertyOrEnvironment.get("REGISTRY_BUSY_TIMEOUT_MS", "60000");
+
 	public
 	RPMRegistry(RPMRepo rpmRepo) throws SQLException
 	{
 		this.databaseFile = new File(rpmRepo.getDirectory(), "repodata/maven-rpms.db");
 
+		//NB: 'immediate' transactions take the write lock up front, such that two writers wait (per the busy
+		//timeout) for each other, rather than both reading and then failing to upgrade to a write lock.
 		final
-		boolean createTables=!(databaseFile.exists());
-		this.connection = DriverManager.getConnection("jdbc:sqlite:"+databaseFile.getAbsolutePath());
+		Properties properties = new Properties();
+		properties.setProperty("busy_timeout", REGISTRY_BUSY_TIMEOUT_MS);
+		properties.setProperty("transaction_mode", "IMMEDIATE");
+
+		this.connection = DriverManager.getConnection("jdbc:sqlite:"+databaseFile.getAbsolutePath(), properties);
+
+		if (REGISTRY_WAL)
+		{
+			pragma(connection, "journal_mode=WAL");
+			pragma(connection, "synchronous=NORMAL");
+		}
+
+		migrate(connection);
+	}
+
+	/**
+	 * The schema, as a list of upgrades, such that the database's "user_version" is the number of them that
+	 * have been applied. NB: only ever append to this list. The statements are idempotent, as databases that
+	 * predate the versioning (user_version=0) may already contain some of the tables.
+	 */
+	private static final
+	String[][] MIGRATIONS = {
+		//1: the registry itself
+		{
+			"CREATE TABLE IF NOT EXISTS processed ("+
+				"groupId      TEXT NOT NULL,"+
+				"artifactId   TEXT NOT NULL,"+
+				"version      TEXT NOT NULL,"+
+				"packaging    TEXT NOT NULL,"+
+				"classifier   TEXT,"+
+				"moduleName   TEXT NOT NULL,"+
+				"majorVersion TEXT NOT NULL,"+
+				"minorVersion TEXT,"+
+				"jarHash      TEXT NOT NULL"+
+			")",
+		},
+		//2: the repository-wide "which module provides this class?" index, which is maintained incrementally as
+		//rpms are added to the repo (or lazily, for rpms that predate it). The 'indexedRpms' table records
+		//which rpm files (and at which modification time) have been folded into it.
+		{
+			"CREATE TABLE IF NOT EXISTS classEntries ("+
+				"entryName    TEXT NOT NULL,"+
+				"moduleName   TEXT NOT NULL,"+
+				"majorVersion TEXT NOT NULL,"+
+				"rpmFile      TEXT NOT NULL"+
+			")",
+			"CREATE INDEX IF NOT EXISTS classEntries_entryName ON classEntries (entryName)",
+			"CREATE INDEX IF NOT EXISTS classEntries_rpmFile ON classEntries (rpmFile)",
+			"CREATE TABLE IF NOT EXISTS indexedRpms ("+
+				"rpmFile      TEXT PRIMARY KEY,"+
+				"lastModified INTEGER NOT NULL"+
+			")",
+		},
+		//3: without which, every registry lookup is a full table scan
+		{
+			"CREATE INDEX IF NOT EXISTS processed_jarHash ON processed (jarHash)",
+			"CREATE INDEX IF NOT EXISTS processed_mavenInfo ON processed (groupId, artifactId, version, classifier)",
+		},
+		//4: one entry per artifact, such that two grinders cannot both register the same one (the first wins)
+		{
+			"DELETE FROM processed WHERE rowid NOT IN (SELECT min(rowid) FROM processed GROUP BY groupId, artifactId, version, classifier)",
+			"DROP INDEX IF EXISTS processed_mavenInfo",
+			"CREATE UNIQUE INDEX IF NOT EXISTS processed_unique ON processed (groupId, artifactId, version, classifier)",
+		},
+		//5: the public api of each rpm's inner jar (see ApiSignature), keyed by the rpm's digest
+		{
+			"CREATE TABLE IF NOT EXISTS apiSignatures ("+
+				"rpmDigest    TEXT PRIMARY KEY,"+
+				"signature    BLOB NOT NULL"+
+			")",
+		},
+		//6: remembered compatibility verdicts, as a regrind (or retry) would otherwise ask the same questions again
+		{
+			"CREATE TABLE IF NOT EXISTS compatibilityVerdicts ("+
+				"oldRpmDigest TEXT NOT NULL,"+
+				"newJarHash   TEXT NOT NULL,"+
+				"criteria     INTEGER NOT NULL,"+
+				"compatible   INTEGER NOT NULL,"+
+				"differences  TEXT,"+
+				"PRIMARY KEY (oldRpmDigest, newJarHash, criteria)"+
+			")",
+		},
+		//7: the results of MavenJar's bytecode analysis (see JarAnalysis), so that identical bytes are analyzed but once
+		{
+			"CREATE TABLE IF NOT EXISTS jarAnalyses ("+
+				"jarHash      TEXT NOT NULL,"+
+				"moduleKey    TEXT NOT NULL,"+
+				"version      INTEGER NOT NULL,"+
+				"analysis     BLOB NOT NULL,"+
+				"PRIMARY KEY (jarHash, moduleKey, version)"+
+			")",
+		},
+	};
+
+	private static
+	void migrate(Connection connection) throws SQLException
+	{
+		Statement s = connection.createStatement();
+		try
+		{
+			if (readUserVersion(s) >= MIGRATIONS.length)
+			{
+				return;
+			}
+
+			connection.setAutoCommit(false);
+			try
+			{
+				//NB: another process may have migrated it while we were waiting for the write lock.
+				for (int i = readUserVersion(s); i < MIGRATIONS.length; i++)
+				{
+					log.info("migrating registry schema to version {}", i + 1);
 
-		if (createTables)
+					for (String sql : MIGRATIONS[i])
+					{
+						s.executeUpdate(sql);
+					}
+				}
+
+				//NB: pragmas cannot take parameters, but this is just an integer.
+				s.executeUpdate("PRAGMA user_version=" + MIGRATIONS.length + ";");
+
+				connection.commit();
+			}
+			catch (SQLException e)
+			{
+				connection.rollback();
+				throw e;
+			}
+			finally
+			{
+				connection.setAutoCommit(true);
+			}
+		}
+		finally
 		{
-			createTables(connection);
+			s.close();
 		}
 	}
 
 	private static
-	void createTables(Connection connection) throws SQLException
+	int readUserVersion(Statement s) throws SQLException
+	{
+		ResultSet resultSet = s.executeQuery("PRAGMA user_version;");
+		try
+		{
+			return resultSet.next() ? resultSet.getInt(1) : 0;
+		}
+		finally
+		{
+			resultSet.close();
+		}
+	}
+
+	private static
+	void pragma(Connection connection, String pragma) throws SQLException
 	{
 		Statement s = connection.createStatement();
 		try
 		{
-			s.executeUpdate(
-				"CREATE TABLE processed ("+
-					"groupId      TEXT NOT NULL,"+
-					"artifactId   TEXT NOT NULL,"+
-					"version      TEXT NOT NULL,"+
-					"packaging    TEXT NOT NULL,"+
-					"classifier   TEXT,"+
-					"moduleName   TEXT NOT NULL,"+
-					"majorVersion TEXT NOT NULL,"+
-					"minorVersion TEXT,"+
-					"jarHash      TEXT NOT NULL"+
-				")"
-			);
+			//NB: some pragmas (e.g. journal_mode) return a row, and some do not.
+			s.execute("PRAGMA " + pragma + ";");
 		}
 		finally
 		{
@@ -90,6 +254,163 @@ class RPMRegistry
 		}
 	}
 
+	/**
+	 * Folds the write-ahead-log back into the main database file, such that the file can be safely copied
+	 * (e.g. by createrepo, or a repo sync) without the log.
+	 */
+	public synchronized
+	void checkpoint() throws IOException
+	{
+		if (!REGISTRY_WAL)
+		{
+			return;
+		}
+
+		try
+		{
+			pragma(connection, "wal_checkpoint(FULL)");
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	private final
+	Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+	/**
+	 * @return a prepared statement that is kept for the life of the registry, and that must therefore not be closed
+	 */
+	private
+	PreparedStatement statement(String sql) throws SQLException
+	{
+		PreparedStatement retval = statements.get(sql);
+
+		if (retval == null)
+		{
+			retval = connection.prepareStatement(sql);
+			statements.put(sql, retval);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * @return the most recent time that this registry's database was written to (by any process)
+	 */
+	public
+	long getLastModified()
+	{
+		//NB: in write-ahead-log mode, the main database file only changes at checkpoints.
+		return Math.max(databaseFile.lastModified(), new File(databaseFile.getPath()+"-wal").lastModified());
+	}
+
+	/**
+	 * @return the highest rowid in the registry, which (unlike the database file's modification time) is sure to
+	 * change with every append, by any process, no matter how close together
+	 */
+	public synchronized
+	long getMaxRowid() throws IOException
+	{
+		try
+		{
+			PreparedStatement ps = statement("SELECT max(rowid) FROM processed;");
+
+			ResultSet resultSet = ps.executeQuery();
+			try
+			{
+				//NB: max() of an empty table is null, which getLong() reads as zero.
+				return resultSet.next() ? resultSet.getLong(1) : 0;
+			}
+			finally
+			{
+				resultSet.close();
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * The jar hash indexes that this registry belongs to, which are told of each jar hash as it is committed.
+	 */
+	private final
+	List<JarHashIndex> jarHashIndexes = new CopyOnWriteArrayList<JarHashIndex>();
+
+	void addJarHashIndex(JarHashIndex jarHashIndex)
+	{
+		jarHashIndexes.add(jarHashIndex);
+	}
+
+	/**
+	 * Adds the jar hashes of every registry entry past the given rowid to the given filter.
+	 *
+	 * @return the highest rowid seen, to be passed back in on the next (incremental) load
+	 */
+	public synchronized
+	long loadJarHashes(long afterRowid, BloomFilter bloomFilter) throws IOException
+	{
+		try
+		{
+			PreparedStatement ps = statement("SELECT rowid, jarHash FROM processed WHERE rowid>? ORDER BY rowid;");
+			ps.setLong(1, afterRowid);
+
+			ResultSet resultSet = ps.executeQuery();
+			try
+			{
+				long retval=afterRowid;
+
+				while (resultSet.next())
+				{
+					retval=resultSet.getLong(1);
+					bloomFilter.add(resultSet.getString(2));
+				}
+
+				return retval;
+			}
+			finally
+			{
+				resultSet.close();
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	public synchronized
+	int countEntries() throws IOException
+	{
+		try
+		{
+			Statement s = connection.createStatement();
+			try
+			{
+				ResultSet resultSet = s.executeQuery("SELECT count(*) FROM processed;");
+				try
+				{
+					return resultSet.next() ? resultSet.getInt(1) : 0;
+				}
+				finally
+				{
+					resultSet.close();
+				}
+			}
+			finally
+			{
+				s.close();
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
 	private static final
 	String MODULE_KEY="moduleName, majorVersion, minorVersion";
 
@@ -114,55 +435,157 @@ class RPMRegistry
 		return get(mavenInfo)!=null;
 	}
 
-	public
+	/**
+	 * How many artifact lookups (hits or misses) to remember, least-recently-used first out.
+	 */
+	private static final
+	int REGISTRY_CACHE_SIZE = Integer.parseInt(SystemPropertyOrEnvironment.get("REGISTRY_CACHE_SIZE", "10000"));
+
+	/**
+	 * How long a miss is remembered for (at most), as another grinder might register the artifact at any time.
+	 */
+	private static final
+	long REGISTRY_MISS_MILLIS = Long.parseLong(SystemPropertyOrEnvironment.get("REGISTRY_MISS_MILLIS", "5000"));
+
+	/**
+	 * A remembered lookup, where a null module key is a miss.
+	 */
+	private static
+	class CachedLookup
+	{
+		final ModuleKey moduleKey;
+		final long      expires;
+
+		CachedLookup(ModuleKey moduleKey, long expires)
+		{
+			this.moduleKey = moduleKey;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * As entries are never changed once registered (the first grinder wins), a hit can be remembered for as
+	 * long as there is room for it. A miss is forgotten after a short time, or as soon as the database changes.
+	 */
+	private final
+	Map<MavenInfo, CachedLookup> cache = new LinkedHashMap<MavenInfo, CachedLookup>(256, 0.75f, true)
+	{
+		@Override
+		protected
+		boolean removeEldestEntry(Map.Entry<MavenInfo, CachedLookup> eldest)
+		{
+			return size() > REGISTRY_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * The database modification time, as of when the oldest remembered miss was looked up.
+	 */
+	private
+	long cacheLastModified;
+
+	public synchronized
 	ModuleKey get(MavenInfo mavenInfo) throws IOException
 	{
+		final
+		CachedLookup cached = cache.get(mavenInfo);
+
+		if (cached != null)
+		{
+			if (cached.moduleKey != null)
+			{
+				return cached.moduleKey;
+			}
+
+			if (System.currentTimeMillis() < cached.expires && getLastModified() == cacheLastModified)
+			{
+				return null;
+			}
+		}
+
 		try
 		{
-			PreparedStatement ps = connection.prepareStatement("SELECT "+MODULE_KEY+" FROM processed WHERE groupId=? AND artifactId=? AND version=? AND classifier=? LIMIT 1;");
+			final
+			ModuleKey retval = lookup(mavenInfo);
 
-			try
+			if (retval == null)
 			{
-				ps.setString(1, mavenInfo.getGroupId());
-				ps.setString(2, mavenInfo.getArtifactId());
-				ps.setString(3, mavenInfo.getVersion());
+				forgetMissesIfModified();
+				cache.put(mavenInfo, new CachedLookup(null, System.currentTimeMillis() + REGISTRY_MISS_MILLIS));
+			}
+			else
+			{
+				cache.put(mavenInfo, new CachedLookup(retval, Long.MAX_VALUE));
+			}
 
-				//NB: *Apparently* the sqlite-jdbc layer translates nulls to empty strings? or doesn't let you match nulls?
-				if (mavenInfo.getClassifier()==null)
-				{
-					ps.setString(4, "");
-				}
-				else
-				{
-					ps.setString(4, mavenInfo.getClassifier());
-				}
+			return retval;
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
 
-				ResultSet resultSet = ps.executeQuery();
+	/**
+	 * Drops every remembered miss if the database has been written to (by anyone) since they were looked up.
+	 */
+	private
+	void forgetMissesIfModified()
+	{
+		final
+		long lastModified = getLastModified();
 
-				try
-				{
-					if (resultSet.next())
-					{
-						return moduleKey(resultSet);
-					}
-					else
-					{
-						return null;
-					}
-				}
-				finally
+		if (lastModified != cacheLastModified)
+		{
+			final
+			Iterator<CachedLookup> i = cache.values().iterator();
+
+			while (i.hasNext())
+			{
+				if (i.next().moduleKey == null)
 				{
-					resultSet.close();
+					i.remove();
 				}
 			}
-			finally
+
+			cacheLastModified = lastModified;
+		}
+	}
+
+	private
+	ModuleKey lookup(MavenInfo mavenInfo) throws SQLException
+	{
+		PreparedStatement ps = statement("SELECT "+MODULE_KEY+" FROM processed WHERE groupId=? AND artifactId=? AND version=? AND classifier=? LIMIT 1;");
+		ps.setString(1, mavenInfo.getGroupId());
+		ps.setString(2, mavenInfo.getArtifactId());
+		ps.setString(3, mavenInfo.getVersion());
+
+		//NB: *Apparently* the sqlite-jdbc layer translates nulls to empty strings? or doesn't let you match nulls?
+		if (mavenInfo.getClassifier()==null)
+		{
+			ps.setString(4, "");
+		}
+		else
+		{
+			ps.setString(4, mavenInfo.getClassifier());
+		}
+
+		ResultSet resultSet = ps.executeQuery();
+
+		try
+		{
+			if (resultSet.next())
 			{
-				ps.close();
+				return moduleKey(resultSet);
+			}
+			else
+			{
+				return null;
 			}
 		}
-		catch (SQLException e)
+		finally
 		{
-			throw new IOException(e);
+			resultSet.close();
 		}
 		/*
 		final
@@ -237,62 +660,198 @@ class RPMRegistry
 		*/
 	}
 
-	public
-	void append(MavenInfo mavenInfo, ModuleKey moduleKey, File jarFile) throws IOException
+	/**
+	 * Rows to be written to the registry together (see commit()), such that either all or none of them are
+	 * recorded, and at the cost of a single transaction.
+	 */
+	public static
+	class Batch
 	{
-		String jarHash = getJarHash(jarFile);
+		private final List<MavenInfo> mavenInfos = new ArrayList<MavenInfo>();
+		private final List<ModuleKey> moduleKeys = new ArrayList<ModuleKey>();
+		private final List<File>      jarFiles   = new ArrayList<File>();
 
-		String majorVersion=moduleKey.getMajorVersion();
+		private final
+		Map<String, byte[]> apiSignaturesByRpmDigest = new LinkedHashMap<String, byte[]>();
 
-		if (majorVersion==null)
+		/**
+		 * @see RPMRegistry#append(MavenInfo, ModuleKey, File)
+		 */
+		public
+		void append(MavenInfo mavenInfo, ModuleKey moduleKey, File jarFile)
 		{
-			majorVersion="snapshot";
+			mavenInfos.add(mavenInfo);
+			moduleKeys.add(moduleKey);
+			jarFiles.add(jarFile);
 		}
 
-		try
+		/**
+		 * @see RPMRegistry#putApiSignature(String, ApiSignature)
+		 */
+		public
+		void putApiSignature(String rpmDigest, ApiSignature apiSignature) throws IOException
+		{
+			//NB: serialized now, rather than while the registry is locked.
+			apiSignaturesByRpmDigest.put(rpmDigest, apiSignature.toBytes());
+		}
+	}
+
+	/**
+	 * An artifact that is already registered (e.g. by a concurrent grinder) is not an error, and is left as-is.
+	 *
+	 * @return the module key now registered for the given artifact, which is the given one, unless another grinder registered it first
+	 */
+	public
+	ModuleKey append(MavenInfo mavenInfo, ModuleKey moduleKey, File jarFile) throws IOException
+	{
+		final
+		Batch batch = new Batch();
+
+		batch.append(mavenInfo, moduleKey, jarFile);
+
+		return commit(batch).get(0);
+	}
+
+	/**
+	 * Writes all of the given batch's rows in a single transaction. As with append(), an artifact that is already
+	 * registered is not an error, and is left as-is.
+	 *
+	 * @return the module key now registered for each of the batch's appended artifacts, in order
+	 */
+	public
+	List<ModuleKey> commit(Batch batch) throws IOException
+	{
+		//NB: hashing can take a while, and needs no lock.
+		final
+		List<String> jarHashes = new ArrayList<String>(batch.jarFiles.size());
+
+		for (File jarFile : batch.jarFiles)
 		{
-			PreparedStatement ps = connection.prepareStatement("INSERT INTO processed (groupId,artifactId,version,packaging,classifier,moduleName,majorVersion,minorVersion,jarHash) VALUES (?,?,?,?,?,?,?,?,?)");
-			ps.setString(1, mavenInfo.getGroupId());
-			ps.setString(2, mavenInfo.getArtifactId());
-			ps.setString(3, mavenInfo.getVersion());
-			ps.setString(4, "jar");
+			jarHashes.add(getJarHash(jarFile));
+		}
+
+		final
+		List<ModuleKey> retval = _commit(batch, jarHashes);
 
-			if (mavenInfo.getClassifier()==null)
+		//NB: outside of our lock, as the index calls into the registry while holding its own.
+		for (JarHashIndex jarHashIndex : jarHashIndexes)
+		{
+			for (String jarHash : jarHashes)
 			{
-				ps.setString(5, "");
+				jarHashIndex.added(jarHash);
 			}
-			else
+		}
+
+		return retval;
+	}
+
+	private synchronized
+	List<ModuleKey> _commit(Batch batch, List<String> jarHashes) throws IOException
+	{
+		try
+		{
+			connection.setAutoCommit(false);
+			try
 			{
-				ps.setString(5, mavenInfo.getClassifier());
-			}
+				for (Map.Entry<String, byte[]> me : batch.apiSignaturesByRpmDigest.entrySet())
+				{
+					insertApiSignature(me.getKey(), me.getValue());
+				}
 
-			ps.setString(6, moduleKey.getModuleName());
-			ps.setString(7, majorVersion);
+				final
+				List<ModuleKey> retval = new ArrayList<ModuleKey>(jarHashes.size());
 
-			if (moduleKey.getMinorVersion()==null)
+				for (int i = 0; i < jarHashes.size(); i++)
+				{
+					retval.add(insert(batch.mavenInfos.get(i), batch.moduleKeys.get(i), jarHashes.get(i)));
+				}
+
+				connection.commit();
+
+				//NB: only once committed, as a rollback would make liars of them.
+				for (int i = 0; i < retval.size(); i++)
+				{
+					cache.put(batch.mavenInfos.get(i), new CachedLookup(retval.get(i), Long.MAX_VALUE));
+				}
+
+				return retval;
+			}
+			catch (SQLException e)
 			{
-				ps.setString(8, "");
+				connection.rollback();
+				throw e;
 			}
-			else
+			finally
 			{
-				ps.setString(8, moduleKey.getMinorVersion());
+				connection.setAutoCommit(true);
 			}
-
-			ps.setString(9, jarHash);
-			ps.executeUpdate();
 		}
 		catch (SQLException e)
 		{
 			throw new IOException(e);
 		}
+	}
+
+	/**
+	 * @return the module key registered for the given artifact, which is the given one unless it was already registered
+	 */
+	private
+	ModuleKey insert(MavenInfo mavenInfo, ModuleKey moduleKey, String jarHash) throws SQLException
+	{
+		String majorVersion = moduleKey.getMajorVersion();
+
+		if (majorVersion == null)
+		{
+			majorVersion = "snapshot";
+		}
 
-		ModuleKey justInserted=get(mavenInfo);
+		PreparedStatement ps = statement("INSERT OR IGNORE INTO processed (groupId,artifactId,version,packaging,classifier,moduleName,majorVersion,minorVersion,jarHash) VALUES (?,?,?,?,?,?,?,?,?)");
 
-		if (justInserted==null)
+		ps.setString(1, mavenInfo.getGroupId());
+		ps.setString(2, mavenInfo.getArtifactId());
+		ps.setString(3, mavenInfo.getVersion());
+		ps.setString(4, "jar");
+
+		if (mavenInfo.getClassifier() == null)
+		{
+			ps.setString(5, "");
+		}
+		else
 		{
-			throw new AssertionError("just inserted "+mavenInfo+" / "+moduleKey+", but cannot fetch it");
+			ps.setString(5, mavenInfo.getClassifier());
 		}
 
+		ps.setString(6, moduleKey.getModuleName());
+		ps.setString(7, majorVersion);
+
+		if (moduleKey.getMinorVersion() == null)
+		{
+			ps.setString(8, "");
+		}
+		else
+		{
+			ps.setString(8, moduleKey.getMinorVersion());
+		}
+
+		ps.setString(9, jarHash);
+
+		//NB: the insert itself is the verification, no need to read it back... unless it was ignored.
+		ModuleKey retval = moduleKey;
+
+		if (ps.executeUpdate() != 1)
+		{
+			retval = lookup(mavenInfo);
+
+			if (retval == null)
+			{
+				throw new SQLException("unable to insert " + mavenInfo + " / " + moduleKey);
+			}
+
+			log.info("{} was already registered as {}, not {}", mavenInfo, retval, moduleKey);
+		}
+
+		return retval;
+
 		/*
 		final
 		File file=infoToMajorMap;
@@ -328,7 +887,7 @@ class RPMRegistry
 
 		log.warn("unable to locate dependency: {}", mavenInfo);
 
-		//TODO: make this into a depth counter (e.g. to bomb out [eventually] on circular dependencies), and on by default?
+		//NB: circular dependencies are caught by Main.grindMavenArtifact(), which tracks what each thread is grinding.
 		if (Main.RECURSIVE)
 		{
 			try
@@ -403,49 +962,350 @@ class RPMRegistry
 		return getMavenInfoFor(jarHash);
 	}
 
-	public
+	public synchronized
 	MavenInfo getMavenInfoFor(String jarHash) throws IOException
 	{
 		try
 		{
-			PreparedStatement ps = connection.prepareStatement("SELECT " + MAVEN_INFO + " FROM processed WHERE jarHash=?;");
+			PreparedStatement ps = statement("SELECT " + MAVEN_INFO + " FROM processed WHERE jarHash=?;");
+			ps.setString(1, jarHash);
+
+			ResultSet resultSet = ps.executeQuery();
 			try
 			{
+				if (resultSet.next())
+				{
+					return mavenInfo(resultSet);
+				}
+				else
+				{
+					return null;
+				}
+			}
+			finally
+			{
+				resultSet.close();
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+
+	}
+
+	/**
+	 * @return the api signature of the rpm with the given digest, or null if none (or only an outdated one) was recorded
+	 */
+	public synchronized
+	ApiSignature getApiSignature(String rpmDigest) throws IOException
+	{
+		try
+		{
+			PreparedStatement ps = statement("SELECT signature FROM apiSignatures WHERE rpmDigest=?;");
+			ps.setString(1, rpmDigest);
+
+			ResultSet resultSet = ps.executeQuery();
+			try
+			{
+				if (resultSet.next())
+				{
+					return ApiSignature.fromBytes(resultSet.getBytes(1));
+				}
+				else
+				{
+					return null;
+				}
+			}
+			finally
+			{
+				resultSet.close();
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	public
+	void putApiSignature(String rpmDigest, ApiSignature apiSignature) throws IOException
+	{
+		//NB: serialized outside of the lock.
+		final
+		byte[] bytes = apiSignature.toBytes();
+
+		synchronized (this)
+		{
+			try
+			{
+				insertApiSignature(rpmDigest, bytes);
+			}
+			catch (SQLException e)
+			{
+				throw new IOException(e);
+			}
+		}
+	}
+
+	private
+	void insertApiSignature(String rpmDigest, byte[] bytes) throws SQLException
+	{
+		PreparedStatement ps = statement("INSERT OR REPLACE INTO apiSignatures (rpmDigest, signature) VALUES (?,?);");
+		ps.setString(1, rpmDigest);
+		ps.setBytes(2, bytes);
+		ps.executeUpdate();
+
+		log.debug("recorded api signature ({} bytes) for rpm {}", bytes.length, rpmDigest);
+	}
+
+	/**
+	 * @return the verdict of a previous comparison of the rpm's inner jar with the (newer) jar, or null if they were never compared (with these criteria)
+	 */
+	public synchronized
+	ApiSignature.Verdict getCompatibilityVerdict(String oldRpmDigest, String newJarHash, int criteria) throws IOException
+	{
+		try
+		{
+			PreparedStatement ps = statement("SELECT compatible, differences FROM compatibilityVerdicts WHERE oldRpmDigest=? AND newJarHash=? AND criteria=?;");
+			ps.setString(1, oldRpmDigest);
+			ps.setString(2, newJarHash);
+			ps.setInt(3, criteria);
+
+			ResultSet resultSet = ps.executeQuery();
+			try
+			{
+				if (resultSet.next())
+				{
+					return new ApiSignature.Verdict(resultSet.getInt(1) != 0, resultSet.getString(2));
+				}
+				else
+				{
+					return null;
+				}
+			}
+			finally
+			{
+				resultSet.close();
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	public synchronized
+	void putCompatibilityVerdict(String oldRpmDigest, String newJarHash, int criteria, ApiSignature.Verdict verdict) throws IOException
+	{
+		try
+		{
+			PreparedStatement ps = statement("INSERT OR REPLACE INTO compatibilityVerdicts (oldRpmDigest, newJarHash, criteria, compatible, differences) VALUES (?,?,?,?,?);");
+			ps.setString(1, oldRpmDigest);
+			ps.setString(2, newJarHash);
+			ps.setInt(3, criteria);
+			ps.setInt(4, verdict.isCompatible() ? 1 : 0);
+			ps.setString(5, verdict.getDifferences());
+			ps.executeUpdate();
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return the analysis of a jar with the given hash (as the given module), or null if it was never analyzed by this version of the grinder
+	 */
+	public synchronized
+	JarAnalysis getJarAnalysis(String jarHash, String moduleKey) throws IOException
+	{
+		try
+		{
+			PreparedStatement ps = statement("SELECT analysis FROM jarAnalyses WHERE jarHash=? AND moduleKey=? AND version=?;");
+			ps.setString(1, jarHash);
+			ps.setString(2, moduleKey);
+			ps.setInt(3, JarAnalysis.VERSION);
+
+			ResultSet resultSet = ps.executeQuery();
+			try
+			{
+				if (resultSet.next())
+				{
+					return JarAnalysis.fromBytes(resultSet.getBytes(1));
+				}
+				else
+				{
+					return null;
+				}
+			}
+			finally
+			{
+				resultSet.close();
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	public
+	void putJarAnalysis(String jarHash, String moduleKey, JarAnalysis jarAnalysis) throws IOException
+	{
+		//NB: serialized outside of the lock.
+		final
+		byte[] bytes = jarAnalysis.toBytes();
+
+		synchronized (this)
+		{
+			try
+			{
+				PreparedStatement ps = statement("INSERT OR REPLACE INTO jarAnalyses (jarHash, moduleKey, version, analysis) VALUES (?,?,?,?);");
 				ps.setString(1, jarHash);
+				ps.setString(2, moduleKey);
+				ps.setInt(3, JarAnalysis.VERSION);
+				ps.setBytes(4, bytes);
+				ps.executeUpdate();
+			}
+			catch (SQLException e)
+			{
+				throw new IOException(e);
+			}
+		}
 
-				ResultSet resultSet = ps.executeQuery();
-				try
+		log.debug("recorded analysis ({} bytes) of {} as {}", bytes.length, jarHash, moduleKey);
+	}
+
+	/**
+	 * Folds the class entries of the given rpm (which must reside in this registry's repo) into the
+	 * repository-wide class index, unless that has already been done for this version of the rpm file.
+	 */
+	public synchronized
+	void indexClassEntries(RPM rpm) throws IOException
+	{
+		final
+		File file = rpm.getFile();
+
+		final
+		String rpmFile = file.getName();
+
+		final
+		long lastModified = file.lastModified();
+
+		try
+		{
+			PreparedStatement ps = statement("SELECT lastModified FROM indexedRpms WHERE rpmFile=?;");
+			ps.setString(1, rpmFile);
+
+			ResultSet resultSet = ps.executeQuery();
+			try
+			{
+				if (resultSet.next() && resultSet.getLong(1) == lastModified)
 				{
-					if (resultSet.next())
-					{
-						return mavenInfo(resultSet);
-					}
-					else
+					return;
+				}
+			}
+			finally
+			{
+				resultSet.close();
+			}
+
+			final
+			ModuleKey moduleKey = rpm.getModuleKey();
+
+			final
+			String majorVersion = (moduleKey.getMajorVersion() == null ? "snapshot" : moduleKey.getMajorVersion());
+
+			final
+			ClassEntryIndex classEntryIndex = rpm.getClassEntryIndex();
+
+			log.debug("indexing {} entries of {}", classEntryIndex.size(), rpmFile);
+
+			connection.setAutoCommit(false);
+			try
+			{
+				ps = statement("DELETE FROM classEntries WHERE rpmFile=?;");
+				ps.setString(1, rpmFile);
+				ps.executeUpdate();
+
+				ps = statement("INSERT INTO classEntries (entryName,moduleName,majorVersion,rpmFile) VALUES (?,?,?,?);");
+				for (String entryName : classEntryIndex.getEntries())
+				{
+					if (entryName.endsWith(".class"))
 					{
-						return null;
+						ps.setString(1, entryName);
+						ps.setString(2, moduleKey.getModuleName());
+						ps.setString(3, majorVersion);
+						ps.setString(4, rpmFile);
+						ps.addBatch();
 					}
 				}
-				finally
+
+				ps.executeBatch();
+
+				ps = statement("INSERT OR REPLACE INTO indexedRpms (rpmFile,lastModified) VALUES (?,?);");
+				ps.setString(1, rpmFile);
+				ps.setLong(2, lastModified);
+				ps.executeUpdate();
+
+				connection.commit();
+			}
+			catch (SQLException e)
+			{
+				connection.rollback();
+				throw e;
+			}
+			finally
+			{
+				connection.setAutoCommit(true);
+			}
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return the modules (by name & major version) whose rpms contain the given class entry (e.g. "com/example/Foo.class")
+	 */
+	public synchronized
+	Set<ModuleKey> getModulesProviding(String entryName) throws IOException
+	{
+		try
+		{
+			PreparedStatement ps = statement("SELECT DISTINCT moduleName, majorVersion FROM classEntries WHERE entryName=?;");
+			ps.setString(1, entryName);
+
+			ResultSet resultSet = ps.executeQuery();
+			try
+			{
+				final
+				Set<ModuleKey> retval = new LinkedHashSet<ModuleKey>();
+
+				while (resultSet.next())
 				{
-					resultSet.close();
+					retval.add(new ModuleKey(resultSet.getString(1), resultSet.getString(2), null));
 				}
+
+				return retval;
 			}
 			finally
 			{
-				ps.close();
+				resultSet.close();
 			}
 		}
 		catch (SQLException e)
 		{
 			throw new IOException(e);
 		}
-
 	}
 
 	public static
 	String getJarHash(File jarFile) throws IOException
 	{
-		return Exec.toString("sha256sum", jarFile.getAbsolutePath()).substring(0, 64);
+		return FileHash.sha256(jarFile);
 	}
 
 }
@@ -1,20 +1,30 @@
 package com.github.osndok.mrb.grinder.rpm;
 
+import com.github.osndok.mrb.grinder.ApiSignature;
 import com.github.osndok.mrb.grinder.DependencyNotProcessedException;
 import com.github.osndok.mrb.grinder.MavenInfo;
 import com.github.osndok.mrb.grinder.MavenJar;
 import com.github.osndok.mrb.grinder.ObsoleteJarException;
 import com.github.osndok.mrb.grinder.util.Exec;
+import com.github.osndok.mrb.grinder.util.Workspace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.module.util.Dependency;
 import javax.module.util.ModuleKey;
+import javax.module.util.SystemPropertyOrEnvironment;
 import javax.module.util.VersionString;
 import java.io.File;
-import java.io.FilenameFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
  * Created by robert on 10/30/14.
@@ -28,6 +38,13 @@ class RPMRepo
 	private
 	RPMRegistry rpmRegistry;
 
+	/**
+	 * Held while the repo (or its metadata) is being written to, such that several grinders (threads or
+	 * processes) can share the repo. NB: always taken *before* this object's monitor, never after.
+	 */
+	private final
+	RepoLock lock;
+
 	RPMRepo(File dir) throws IOException
 	{
 		this.dir = dir;
@@ -43,6 +60,37 @@ class RPMRepo
 		{
 			throw new IOException(dir + ": does not look like a yum RPM repo (see 'man createrepo')");
 		}
+
+		this.lock = RepoLock.forFile(new File(getStateDirectory(), "lock"));
+
+		if (getMetadataDirtyMarker().exists())
+		{
+			log.warn("{}: metadata was left stale by a previous run", dir);
+			pendingAdditions = 1;
+		}
+	}
+
+	/**
+	 * Where mrb keeps its own (non-yum) bookkeeping for this repo.
+	 */
+	public
+	File getStateDirectory()
+	{
+		final
+		File retval = new File(dir, ".mrb");
+
+		if (!retval.isDirectory() && !retval.mkdir() && !retval.isDirectory())
+		{
+			throw new IllegalStateException("unable to create: " + retval);
+		}
+
+		return retval;
+	}
+
+	private
+	File getMetadataDirtyMarker()
+	{
+		return new File(new File(dir, ".mrb"), "metadata-dirty");
 	}
 
 	/**
@@ -128,7 +176,7 @@ class RPMRepo
 				throw new ObsoleteJarException("already have "+guess+" @ "+rpm.getModuleKey().getMinorVersion()+", so don't need to install @ "+guess.getMinorVersion(), rpm.getModuleKey());
 			}
 			else
-			if (rpm.innerJarIsCompatibleWithNewer(mavenJar))
+			if (rpm.innerJarIsCompatibleWithNewer(mavenJar, this))
 			{
 				return guess;
 			}
@@ -168,6 +216,62 @@ class RPMRepo
 
 	private static final Logger log = LoggerFactory.getLogger(RPMRepo.class);
 
+	/**
+	 * A sorted copy of the repo directory's listing, such that a prefix lookup is a sub-set of a tree rather
+	 * than a scan (and filter) of every file in the repo. It is re-read whenever the directory's modification
+	 * time differs from that of the last listing (i.e. someone other than us has added or removed a file).
+	 */
+	private
+	TreeSet<String> fileNames;
+
+	private
+	long fileNamesModified;
+
+	private synchronized
+	String[] fileNamesStartingWith(String prefix)
+	{
+		final
+		long modified=dir.lastModified();
+
+		if (fileNames==null || modified!=fileNamesModified)
+		{
+			final
+			String[] listing=dir.list();
+
+			if (listing==null)
+			{
+				log.error("unable to list: {}", dir);
+				return new String[0];
+			}
+
+			log.debug("{}: indexing {} file names", dir, listing.length);
+
+			fileNames=new TreeSet<String>(Arrays.asList(listing));
+			fileNamesModified=modified;
+		}
+
+		final
+		SortedSet<String> retval=fileNames.subSet(prefix, prefix+Character.MAX_VALUE);
+
+		return retval.toArray(new String[retval.size()]);
+	}
+
+	/**
+	 * Adds a file that we have (just) copied into the repo directory to the file name index, without re-reading
+	 * the whole listing... unless the index was already out-of-date before the copy.
+	 *
+	 * @param modifiedBeforeCopy the directory modification time, as it was just before the copy
+	 */
+	private synchronized
+	void fileNameAdded(String fileName, long modifiedBeforeCopy)
+	{
+		if (fileNames!=null && fileNamesModified==modifiedBeforeCopy)
+		{
+			fileNames.add(fileName);
+			fileNamesModified=dir.lastModified();
+		}
+	}
+
 	public
 	RPM get(ModuleKey moduleKey)
 	{
@@ -175,17 +279,9 @@ class RPMRepo
 		String rpmPrefix = RPMSpec.RPM_NAME_PREFIX+moduleKey.toString();
 
 		final
-		String[] fileNames=dir.list(new FilenameFilter()
-		{
-			@Override
-			public
-			boolean accept(File file, String s)
-			{
-				return s.startsWith(rpmPrefix);
-			}
-		});
+		String[] fileNames=fileNamesStartingWith(rpmPrefix);
 
-		if (fileNames==null || fileNames.length==0)
+		if (fileNames.length==0)
 		{
 			log.info("found nothing for rpm prefix: {}", rpmPrefix);
 			return null;
@@ -270,7 +366,7 @@ class RPMRepo
 		return dir;
 	}
 
-	public
+	public synchronized
 	RPMRegistry getRpmRegistry()
 	{
 		if (rpmRegistry ==null)
@@ -287,17 +383,355 @@ class RPMRepo
 		return rpmRegistry;
 	}
 
-	//TODO: don't rebuild metadata after every addition... defer it, but still try if an error/exception occurs.
+	/**
+	 * If positive, a deferred repo will rebuild it's metadata (at the latest) after this many additions.
+	 */
+	private static final
+	int METADATA_EVERY = Integer.parseInt(SystemPropertyOrEnvironment.get("METADATA_EVERY", "0"));
+
+	/**
+	 * If positive, a deferred repo will rebuild it's metadata (at the latest) when an addition is made
+	 * this many seconds after the last rebuild.
+	 */
+	private static final
+	int METADATA_SECONDS = Integer.parseInt(SystemPropertyOrEnvironment.get("METADATA_SECONDS", "0"));
+
+	private
+	boolean deferMetadata;
+
+	private
+	int pendingAdditions;
+
+	private
+	long lastMetadataRebuild = System.currentTimeMillis();
+
+	/**
+	 * When deferred, additions only mark the repo as dirty, and it is the caller's responsibility to
+	 * eventually call flushMetadata() (e.g. via RPMManifold.finishBatch()), even if grinding fails.
+	 */
+	public synchronized
+	void setDeferMetadata(boolean deferMetadata)
+	{
+		this.deferMetadata = deferMetadata;
+	}
+
+	/**
+	 * If true, additions are patched into the existing metadata in-process (see RepodataWriter), rather than
+	 * having createrepo re-scan the whole repo.
+	 */
+	private static final
+	boolean INCREMENTAL_METADATA = SystemPropertyOrEnvironment.getBoolean("INCREMENTAL_METADATA", true);
+
+	/**
+	 * The file names of the rpms added since the last metadata rebuild, which are only a complete account of
+	 * the changes if they number the same as the pendingAdditions.
+	 */
+	private final
+	List<String> pendingFileNames = new ArrayList<String>();
+
 	public
 	void rebuildMetadata() throws IOException
 	{
-		Exec.andWait("createrepo", "--update", dir.getAbsolutePath());
+		lock.lock();
+		try
+		{
+			synchronized (this)
+			{
+				_rebuildMetadata();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private
+	void _rebuildMetadata() throws IOException
+	{
+		if (rpmRegistry != null)
+		{
+			//The registry lives in the repodata directory, which is published (and rewritten) along with the metadata.
+			rpmRegistry.checkpoint();
+		}
+
+		if (!INCREMENTAL_METADATA || pendingFileNames.isEmpty() || pendingFileNames.size() != pendingAdditions)
+		{
+			Exec.andWait("createrepo", "--update", dir.getAbsolutePath());
+		}
+		else
+		{
+			try
+			{
+				new RepodataWriter(dir).update(pendingFileNames);
+			}
+			catch (IOException e)
+			{
+				log.warn("{}: unable to update metadata in-process, falling back to createrepo", dir, e);
+				Exec.andWait("createrepo", "--update", dir.getAbsolutePath());
+			}
+		}
+
+		pendingAdditions = 0;
+		pendingFileNames.clear();
+		lastMetadataRebuild = System.currentTimeMillis();
+
+		final
+		File marker = getMetadataDirtyMarker();
+
+		if (marker.exists() && !marker.delete())
+		{
+			log.warn("unable to delete: {}", marker);
+		}
+	}
+
+	/**
+	 * To be called after a set of additions has been made (e.g. all the rpms from one spec file),
+	 * which will rebuild the metadata immediately (if not deferred), or when the batch limits are reached.
+	 */
+	public
+	void maybeRebuildMetadata() throws IOException
+	{
+		if (shouldRebuildMetadata())
+		{
+			rebuildMetadata();
+		}
+	}
+
+	private synchronized
+	boolean shouldRebuildMetadata()
+	{
+		if (pendingAdditions == 0)
+		{
+			return false;
+		}
+
+		if (!deferMetadata)
+		{
+			return true;
+		}
+		else
+		if (METADATA_EVERY > 0 && pendingAdditions >= METADATA_EVERY)
+		{
+			log.info("{}: rebuilding metadata after {} additions", dir, pendingAdditions);
+			return true;
+		}
+		else
+		if (METADATA_SECONDS > 0 && System.currentTimeMillis() - lastMetadataRebuild >= METADATA_SECONDS * 1000L)
+		{
+			log.info("{}: rebuilding metadata after {} seconds", dir, METADATA_SECONDS);
+			return true;
+		}
+		else
+		{
+			log.debug("{}: deferring metadata rebuild, {} pending additions", dir, pendingAdditions);
+			return false;
+		}
+	}
+
+	/**
+	 * Rebuilds the metadata if (and only if) there have been any additions since the last rebuild.
+	 */
+	public
+	void flushMetadata() throws IOException
+	{
+		lock.lock();
+		try
+		{
+			synchronized (this)
+			{
+				if (pendingAdditions > 0)
+				{
+					log.info("{}: rebuilding metadata for {} deferred additions", dir, pendingAdditions);
+					_rebuildMetadata();
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the given rpms to the repo, and the given maven artifact (which they were ground from) to the
+	 * registry, as one step with respect to any other grinder sharing this repo. That is to say, if another
+	 * grinder has registered the same artifact since the caller last checked, then nothing is added.
+	 *
+	 * @param replace if true (e.g. for snapshots, or when forced), the rpms are added even if the artifact is already registered
+	 * @return the module key that is registered for the artifact, which is the given one unless 'replace' is true and another was already registered
+	 * @throws ObsoleteJarException if 'replace' is false, and the artifact is already registered
+	 */
+	public
+	ModuleKey publish(MavenInfo mavenInfo, ModuleKey moduleKey, MavenJar mavenJar, File[] rpms, boolean replace) throws IOException, ObsoleteJarException
+	{
+		//NB: usually already computed by the compatibility check, but (if not) there is no need to hold the lock for it.
+		ApiSignature apiSignature;
+
+		try
+		{
+			apiSignature = mavenJar.getApiSignature();
+		}
+		catch (IOException e)
+		{
+			//NB: only an optimization (RPM.getApiSignature() tries again if needed), so it must not stop the publish.
+			log.warn("unable to compute the api signature of {}, so none will be recorded", mavenJar.getFile(), e);
+			apiSignature = null;
+		}
+
+		//NB: likewise, the rpms are indexed before taking the lock.
+		final
+		ClassEntryIndex[] classEntryIndexes = new ClassEntryIndex[rpms.length];
+
+		for (int i = 0; i < rpms.length; i++)
+		{
+			classEntryIndexes[i] = classEntryIndexOf(rpms[i]);
+		}
+
+		lock.lock();
+		try
+		{
+			final
+			RPMRegistry rpmRegistry = getRpmRegistry();
+
+			if (!replace)
+			{
+				rpmRegistry.shouldNotContain(mavenInfo);
+			}
+
+			//NB: all of the registry rows for this artifact are written at once, after its rpms are in place.
+			final
+			RPMRegistry.Batch batch = new RPMRegistry.Batch();
+
+			for (int i = 0; i < rpms.length; i++)
+			{
+				final
+				File rpm = rpms[i];
+
+				_add(rpm, classEntryIndexes[i]);
+
+				final
+				RPM added = new RPM(new File(dir, rpm.getName()));
+
+				//NB: the other rpms (if any) are the deployment-specific sub-packages of a war.
+				if (apiSignature != null && added.getModuleKey().equals(moduleKey))
+				{
+					batch.putApiSignature(added.getDigest(), apiSignature);
+				}
+			}
+
+			batch.append(mavenInfo, moduleKey, mavenJar.getFile());
+
+			return rpmRegistry.commit(batch).get(0);
+		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 
 	public
 	void add(File rpm) throws IOException
 	{
-		Exec.andWait("cp", "-v", rpm.getAbsolutePath(), dir.getAbsolutePath());
+		//NB: reads the whole rpm, so is done before taking the lock (which other grinders may be waiting on).
+		final
+		ClassEntryIndex classEntryIndex = classEntryIndexOf(rpm);
+
+		lock.lock();
+		try
+		{
+			_add(rpm, classEntryIndex);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the class entry index of the given (source) rpm, or null if it could not be read
+	 */
+	private
+	ClassEntryIndex classEntryIndexOf(File rpm)
+	{
+		try
+		{
+			return ClassEntryIndex.of(new RPM(rpm).listInnerJarEntries());
+		}
+		catch (IOException e)
+		{
+			log.warn("unable to index: {}", rpm, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param classEntryIndex computed (from the source rpm) before the repo was locked, but only written after the
+	 *                        copy, so that the index will not be older than the rpm file in the repo (which would
+	 *                        make it look stale); or null, if it could not be computed
+	 */
+	private
+	void _add(File rpm, ClassEntryIndex classEntryIndex) throws IOException
+	{
+		synchronized (this)
+		{
+			if (pendingAdditions++ == 0)
+			{
+				//Should we be killed before the metadata is rebuilt, the next run will know to rebuild it.
+				getStateDirectory();
+				new FileOutputStream(getMetadataDirtyMarker()).close();
+			}
+		}
+
+		//NB: held across the copy, so that a concurrent add cannot slip in between the two modification times.
+		synchronized (this)
+		{
+			final
+			long modifiedBeforeCopy=dir.lastModified();
+
+			final
+			File target=new File(dir, rpm.getName());
+
+			//NB: by way of a hidden name (that is not an '*.rpm') and a rename, so that the published rpm is never missing or partial.
+			final
+			File temp=new File(dir, "."+rpm.getName()+".tmp");
+
+			try
+			{
+				Workspace.linkOrCopy(rpm, temp);
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally
+			{
+				//NB: left behind if the move failed, or if both names were already links to the same file (which rename ignores).
+				Files.deleteIfExists(temp.toPath());
+			}
+
+			fileNameAdded(rpm.getName(), modifiedBeforeCopy);
+			pendingFileNames.add(rpm.getName());
+		}
+
+		if (classEntryIndex!=null)
+		{
+			try
+			{
+				classEntryIndex.write(ClassEntryIndex.indexFileFor(new File(dir, rpm.getName())));
+			}
+			catch (IOException e)
+			{
+				log.warn("unable to write class entry index for: {}", rpm, e);
+			}
+		}
+
+		try
+		{
+			getRpmRegistry().indexClassEntries(new RPM(new File(dir, rpm.getName())));
+		}
+		catch (IOException e)
+		{
+			//Not fatal, it will be indexed lazily if it is ever needed.
+			log.warn("unable to add {} to the class index", rpm, e);
+		}
 	}
 
 	public
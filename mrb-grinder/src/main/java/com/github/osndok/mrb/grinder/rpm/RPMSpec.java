@@ -13,13 +13,17 @@ import org.xml.sax.SAXException;
 import javax.module.meta.LoaderModule;
 import javax.module.util.Dependency;
 import javax.module.util.ModuleKey;
+import javax.module.util.SystemPropertyOrEnvironment;
 import javax.module.util.VersionString;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -88,20 +92,44 @@ class RPMSpec
 	private static final
 	ModuleKey LOADER_MODULE_KEY = LoaderModule.getModuleKey();
 
+	/**
+	 * If true, simple library modules (no war file, no spec shards, and only plain /usr/bin tools) are packaged
+	 * in-process by RPMWriter, rather than by way of a spec file and rpmbuild.
+	 */
+	private static final
+	boolean NATIVE_RPMS = SystemPropertyOrEnvironment.getBoolean("NATIVE_RPMS", false);
+
+	/**
+	 * Packages the given jar (and war file, and shards) into one or more rpms, either in-process (see NATIVE_RPMS),
+	 * or by writing a spec file and running rpmbuild on it.
+	 */
 	public static
-	File write(
-				  ModuleKey moduleKey,
-				  MavenJar mavenJar,
-				  Main main,
-				  File warFile,
-				  Collection<SpecShard> extraShards
+	File[] build(
+					ModuleKey moduleKey,
+					MavenJar mavenJar,
+					Main main,
+					File warFile,
+					Collection<SpecShard> extraShards
 	) throws IOException
 	{
 		final
-		RPMRepo rpmRepo = RPMManifold.getRepoFor(mavenJar.getInfo());
+		File jar = mavenJar.getFile().getCanonicalFile();
 
 		final
-		File jar = mavenJar.getFile().getCanonicalFile();
+		Set<Dependency> dependencies = listDependencies(moduleKey, mavenJar, main);
+
+		if (NATIVE_RPMS && canWriteNatively(moduleKey, mavenJar, warFile, extraShards))
+		{
+			final
+			File out = new File(new File(jar.getParentFile(), "out"), "noarch");
+
+			if (!out.isDirectory() && !out.mkdirs())
+			{
+				throw new IOException("unable to create directory: " + out);
+			}
+
+			return new File[]{writeNatively(moduleKey, mavenJar, dependencies, out)};
+		}
 
 		final
 		File spec = new File(jar.getParent(), jar.getName() + ".spec");
@@ -115,44 +143,26 @@ class RPMSpec
 			}
 		}
 
-		log.debug("writing spec for: {} / {} / {}", moduleKey, mavenJar, mavenJar.getInfo());
-
-		final
-		Map<String, String> generalInfos;
-		{
-			generalInfos = new HashMap<String, String>();
-			generalInfos.put("@NAME@", moduleKey.toString());
-			generalInfos.put("@VERSION@", rpmVersionString(moduleKey));
-			generalInfos.put("@RELEASE@", RELEASE);
+		write(moduleKey, mavenJar, warFile, extraShards, dependencies, spec);
 
-			//TODO: extract license information from embedded pom.xml
-			generalInfos.put("@LICENSE@", "Unknown");
+		log.debug("spec file:\n{}", readFile(spec));
 
-			generalInfos.put("@JAR@", jar.getName());
-
-			if (warFile == null)
-			{
-				//Repeating 'jar' will probably not cause an error, as an empty source declaration would
-				generalInfos.put("@WAR@", jar.getName());
-			}
-			else
-			{
-				generalInfos.put("@WAR@", warFile.getName());
-			}
+		final
+		File[] retval = RPM.buildMany(spec, mavenJar.getFile(), warFile);
 
-			generalInfos.put("@MODULE_NAME@", moduleKey.getModuleName());
-			generalInfos.put("@MAJOR_VERSION@", moduleKey.getMajorVersion());
-			generalInfos.put("@MINOR_VERSION@", moduleKey.getMinorVersion());
-		}
+		//NB: on failure, the spec file is left behind for inspection.
+		spec.delete();
 
-		//NB: do this (listing the dependencies) *strictly* before writing the spec file.
-		final
-		Set<Dependency> dependencies;
+		return retval;
+	}
 
+	private static
+	Set<Dependency> listDependencies(ModuleKey moduleKey, MavenJar mavenJar, Main main) throws IOException
+	{
 		try
 		{
 			//TODO: minor version is not being picked carried here (inside moduleKey)
-			dependencies = mavenJar.listRpmDependencies(moduleKey, main);
+			return mavenJar.listRpmDependencies(moduleKey, main);
 		}
 		catch (DependencyNotProcessedException e)
 		{
@@ -166,6 +176,57 @@ class RPMSpec
 		{
 			throw new IOException("unable to process pom.xml", e);
 		}
+	}
+
+	private static
+	Map<String, String> generalInfos(ModuleKey moduleKey, File jar, File warFile)
+	{
+		final
+		Map<String, String> generalInfos = new HashMap<String, String>();
+
+		generalInfos.put("@NAME@", moduleKey.toString());
+		generalInfos.put("@VERSION@", rpmVersionString(moduleKey));
+		generalInfos.put("@RELEASE@", RELEASE);
+
+		//TODO: extract license information from embedded pom.xml
+		generalInfos.put("@LICENSE@", "Unknown");
+
+		generalInfos.put("@JAR@", jar.getName());
+
+		if (warFile == null)
+		{
+			//Repeating 'jar' will probably not cause an error, as an empty source declaration would
+			generalInfos.put("@WAR@", jar.getName());
+		}
+		else
+		{
+			generalInfos.put("@WAR@", warFile.getName());
+		}
+
+		generalInfos.put("@MODULE_NAME@", moduleKey.getModuleName());
+		generalInfos.put("@MAJOR_VERSION@", moduleKey.getMajorVersion());
+		generalInfos.put("@MINOR_VERSION@", moduleKey.getMinorVersion());
+
+		return generalInfos;
+	}
+
+	private static
+	File write(
+				  ModuleKey moduleKey,
+				  MavenJar mavenJar,
+				  File warFile,
+				  Collection<SpecShard> extraShards,
+				  Set<Dependency> dependencies,
+				  File spec
+	) throws IOException
+	{
+		final
+		File jar = mavenJar.getFile().getCanonicalFile();
+
+		log.debug("writing spec for: {} / {} / {}", moduleKey, mavenJar, mavenJar.getInfo());
+
+		final
+		Map<String, String> generalInfos = generalInfos(moduleKey, jar, warFile);
 
 		final
 		Map<String, String> execClassesByToolName = mavenJar.getExecClassesByToolName(moduleKey);
@@ -450,15 +511,7 @@ class RPMSpec
 			}
 			else
 			{
-				StringBuilder sb = readTemplate("spec.exec");
-
-				replace(sb, generalInfos);
-				replace(sb, "@TOOL_NAME@", maybeRemovePath(toolName));
-				replace(sb, "@TOOL_PATH@", maybeAddPath(toolName));
-				replace(sb, "@CLASS@", className);
-				replace(sb, "@GRINDER_VERSION@", GrinderModule.FULL);
-
-				retval.append(sb.toString());
+				retval.append(execSnippet(generalInfos, toolName, className));
 			}
 		}
 
@@ -472,21 +525,7 @@ class RPMSpec
 
 			retval.append("\n\nmkdir -p ./usr/share/java/").append(targetModule).append("/plugins.d\n");
 			retval.append("cat -> ./usr/share/java/").append(targetModule).append("/plugins.d/").append(moduleKey).append(".plugin <<\"EOF\"\n");
-
-			for (Map.Entry<String, Set<String>> me2 : implementationsByInterfaceName.entrySet())
-			{
-				final
-				String interfaceName=me2.getKey();
-
-				for (String implementationClass : me2.getValue())
-				{
-					retval.append(interfaceName);
-					retval.append("\t");
-					retval.append(implementationClass);
-					retval.append("\n");
-				}
-			}
-
+			retval.append(pluginFileContents(implementationsByInterfaceName));
 			retval.append("EOF\n\n");
 		}
 
@@ -532,27 +571,269 @@ class RPMSpec
 			Properties properties=me.getValue();
 
 			String eofMarker=beginLiteralFile(retval, path);
-			retval.append("# Written by maven-rpm-bridge::mrb-grinder::RPMSpec\n");
+			retval.append(reactorPropertiesContents(properties));
+			retval.append(eofMarker);
+		}
+
+		return retval.toString();
+	}
+
+	/**
+	 * @return the spec.exec template (a shell snippet that writes the tool's launcher script) filled in for the given tool
+	 */
+	private static
+	String execSnippet(Map<String, String> generalInfos, String toolName, String className) throws IOException
+	{
+		StringBuilder sb = readTemplate("spec.exec");
+
+		replace(sb, generalInfos);
+		replace(sb, "@TOOL_NAME@", maybeRemovePath(toolName));
+		replace(sb, "@TOOL_PATH@", maybeAddPath(toolName));
+		replace(sb, "@CLASS@", className);
+		replace(sb, "@GRINDER_VERSION@", GrinderModule.FULL);
 
-			//TODO: is there no standard way of dumping properties to a string buffer?
-			for (String key : properties.stringPropertyNames())
+		return sb.toString();
+	}
+
+	private static
+	String pluginFileContents(Map<String, Set<String>> implementationsByInterfaceName)
+	{
+		final
+		StringBuilder retval=new StringBuilder();
+
+		for (Map.Entry<String, Set<String>> me : implementationsByInterfaceName.entrySet())
+		{
+			final
+			String interfaceName=me.getKey();
+
+			for (String implementationClass : me.getValue())
 			{
-				String value=properties.getProperty(key);
-				//Quote the value, in case it contains a space, or something...
-				//Hopefully it does not contain any quotes or vertical whitespace characters.
-				//TODO: check to see if the key or values contains illegal characters?
-				retval.append(key);
-				retval.append("=\"");
-				retval.append(value);
-				retval.append("\"\n");
+				retval.append(interfaceName);
+				retval.append("\t");
+				retval.append(implementationClass);
+				retval.append("\n");
 			}
+		}
 
-			retval.append(eofMarker);
+		return retval.toString();
+	}
+
+	private static
+	String reactorPropertiesContents(Properties properties)
+	{
+		final
+		StringBuilder retval=new StringBuilder("# Written by maven-rpm-bridge::mrb-grinder::RPMSpec\n");
+
+		//TODO: is there no standard way of dumping properties to a string buffer?
+		for (String key : properties.stringPropertyNames())
+		{
+			String value=properties.getProperty(key);
+			//Quote the value, in case it contains a space, or something...
+			//Hopefully it does not contain any quotes or vertical whitespace characters.
+			//TODO: check to see if the key or values contains illegal characters?
+			retval.append(key);
+			retval.append("=\"");
+			retval.append(value);
+			retval.append("\"\n");
 		}
 
 		return retval.toString();
 	}
 
+	private static
+	boolean canWriteNatively(ModuleKey moduleKey, MavenJar mavenJar, File warFile, Collection<SpecShard> extraShards) throws IOException
+	{
+		if (warFile!=null || !notNull(extraShards).isEmpty())
+		{
+			log.debug("{}: war files and spec shards require rpmbuild", moduleKey);
+			return false;
+		}
+
+		for (String toolName : mavenJar.getExecClassesByToolName(moduleKey).keySet())
+		{
+			if (toolName.indexOf('/')>=0 || toolName.indexOf('%')>=0)
+			{
+				log.debug("{}: tool path requires rpmbuild: {}", moduleKey, toolName);
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Produces (in-process) the same rpm that rpmbuild would have produced from the spec file, for those
+	 * modules that pass canWriteNatively().
+	 */
+	private static
+	File writeNatively(ModuleKey moduleKey, MavenJar mavenJar, Set<Dependency> dependencies, File outputDirectory) throws IOException
+	{
+		final
+		File jar = mavenJar.getFile().getCanonicalFile();
+
+		final
+		Map<String, String> generalInfos = generalInfos(moduleKey, jar, null);
+
+		final
+		String name = moduleKey.toString();
+
+		final
+		String rpmName = RPM_NAME_PREFIX + name;
+
+		final
+		RPMWriter rpm = new RPMWriter(rpmName, rpmVersionString(moduleKey), RELEASE);
+
+		rpm.setSummary(name + " java library, auto-converted");
+		rpm.setDescription(descriptionText(mavenJar));
+		rpm.setGroup("Java/MrB");
+		rpm.setVendor("Maven Central Repository");
+		rpm.setLicense(generalInfos.get("@LICENSE@"));
+
+		for (Dependency dependency : dependencies)
+		{
+			addRequires(rpm, dependency);
+		}
+
+		if (!moduleKey.matchesName(LOADER_MODULE_KEY) && !dependencies.contains(LOADER_MODULE_KEY))
+		{
+			addRequires(rpm, LOADER_MODULE_KEY);
+		}
+
+		final
+		String moduleDirectory = "/usr/share/java/" + name;
+
+		//NB: the spec's %defattr() sets the directory mode, regardless of the chmod in %install
+		rpm.addDirectory(moduleDirectory, 0755);
+		rpm.addFile(moduleDirectory + "/" + moduleKey.getModuleName() + ".jar", jar, 0644, RPMWriter.FILE_NONE);
+		rpm.addFile(moduleDirectory + "/" + moduleKey.getModuleName() + ".deps", utf8(depsFile(moduleKey, dependencies) + "\n"), 0644, RPMWriter.FILE_CONFIG);
+
+		boolean hasScripts=false;
+
+		for (Map.Entry<String, String> me : mavenJar.getExecClassesByToolName(moduleKey).entrySet())
+		{
+			final
+			String toolName = me.getKey();
+
+			if (toolName.equals("sysconfig"))
+			{
+				final
+				StringBuilder sb = new StringBuilder();
+
+				mavenJar.appendSysconfig(sb);
+				sb.append('\n');
+
+				rpm.addFile("/etc/sysconfig/" + moduleKey, utf8(sb.toString()), 0644, RPMWriter.FILE_NONE);
+			}
+			else
+			{
+				final
+				String script = heredocBody(execSnippet(generalInfos, toolName, me.getValue())).replace("%{name}", rpmName);
+
+				rpm.addFile("/usr/bin/" + toolName, utf8(script), 0755, RPMWriter.FILE_NONE);
+				hasScripts=true;
+			}
+		}
+
+		if (hasScripts)
+		{
+			//As rpmbuild would have found from the #! line...
+			rpm.addRequires("/bin/bash", RPMWriter.SENSE_ANY, null);
+		}
+
+		for (Map.Entry<ModuleKey, Map<String, Set<String>>> me : mavenJar.getPluginMapping(moduleKey).entrySet())
+		{
+			final
+			String path = "/usr/share/java/" + me.getKey() + "/plugins.d/" + moduleKey + ".plugin";
+
+			rpm.addFile(path, utf8(pluginFileContents(me.getValue())), 0644, RPMWriter.FILE_NONE);
+		}
+
+		for (Map.Entry<String, Properties> me : mavenJar.getReactorPropertiesByPath(moduleKey).entrySet())
+		{
+			rpm.addFile(me.getKey(), utf8(reactorPropertiesContents(me.getValue())), 0644, RPMWriter.FILE_CONFIG);
+		}
+
+		log.info("writing {} natively", rpm.getFileName());
+
+		return rpm.write(outputDirectory);
+	}
+
+	private static
+	void addRequires(RPMWriter rpm, ModuleKey dependency)
+	{
+		final
+		String minor=dependency.getMinorVersion();
+
+		if (minor==null)
+		{
+			rpm.addRequires(RPM_NAME_PREFIX + dependency, RPMWriter.SENSE_ANY, null);
+		}
+		else
+		{
+			//NB: the "rpm version" is "{major}.{minor}", as with requiresLine()
+			rpm.addRequires(RPM_NAME_PREFIX + dependency, RPMWriter.SENSE_GREATER | RPMWriter.SENSE_EQUAL,
+							   dependency.getMajorVersion() + "." + minor);
+		}
+	}
+
+	/**
+	 * @return the literal contents of the (first, quoted) here-document in the given shell snippet
+	 */
+	private static
+	String heredocBody(String snippet)
+	{
+		final
+		String opener = "<<\"EOF\"\n";
+
+		final
+		int start = snippet.indexOf(opener);
+
+		final
+		int end = snippet.lastIndexOf("\nEOF");
+
+		if (start < 0 || end < start)
+		{
+			throw new IllegalStateException("template does not contain a here-document");
+		}
+
+		return snippet.substring(start + opener.length(), end + 1);
+	}
+
+	private static
+	byte[] utf8(String s)
+	{
+		return s.getBytes(Charset.forName("UTF-8"));
+	}
+
+	private static
+	String readFile(File file) throws IOException
+	{
+		final
+		InputStream in = new FileInputStream(file);
+
+		try
+		{
+			final
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+			final
+			byte[] buffer = new byte[4096];
+
+			int read;
+
+			while ((read = in.read(buffer)) > 0)
+			{
+				baos.write(buffer, 0, read);
+			}
+
+			return baos.toString();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
 	private static
 	String beginLiteralFile(StringBuilder retval, String path)
 	{
@@ -658,7 +939,13 @@ class RPMSpec
 	private static
 	byte[] descriptionFromPomFile(MavenJar mavenJar) throws IOException
 	{
-		StringBuilder sb=new StringBuilder("\n%description\n");
+		return ("\n%description\n"+descriptionText(mavenJar)+"\n\n").getBytes();
+	}
+
+	private static
+	String descriptionText(MavenJar mavenJar) throws IOException
+	{
+		StringBuilder sb=new StringBuilder();
 
 		String descriptionFromPom=null;
 
@@ -690,8 +977,7 @@ class RPMSpec
 			sb.append(GrinderModule.FULL);
 		}
 
-		sb.append("\n\n");
-		return sb.toString().getBytes();
+		return sb.toString();
 	}
 
 	private static
@@ -0,0 +1,878 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes simple, noarch, binary rpms (lead, signature, header, and a gzip'd "newc" cpio payload) without
+ * the help of rpmbuild. This is only suitable for packages that consist of literal files and directories,
+ * as there is no way to express (or run) build/install scriptlets.
+ *
+ * The layout mimics what rpmbuild produces, with both headers carrying an immutable region tag, file
+ * digests in sha256, and the usual rpmlib() requirements.
+ *
+ * @url http://ftp.rpm.org/max-rpm/s1-rpm-file-format-rpm-file-format.html
+ * @url https://github.com/rpm-software-management/rpm/blob/master/doc/manual/format.md
+ */
+public
+class RPMWriter
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(RPMWriter.class);
+
+	//Dependency "sense" flags
+	public static final int SENSE_ANY     = 0;
+	public static final int SENSE_LESS    = 0x02;
+	public static final int SENSE_GREATER = 0x04;
+	public static final int SENSE_EQUAL   = 0x08;
+	public static final int SENSE_RPMLIB  = 0x01000000;
+
+	//File flags
+	public static final int FILE_NONE   = 0;
+	public static final int FILE_CONFIG = 0x01;
+
+	private static final int HEADER_I18NTABLE   = 100;
+	private static final int SIGNATURES_REGION  = 62;
+	private static final int IMMUTABLE_REGION   = 63;
+	private static final int SIGTAG_SHA256      = 273;
+
+	private static final int SUMMARY        = 1004;
+	private static final int DESCRIPTION    = 1005;
+	private static final int BUILDTIME      = 1006;
+	private static final int BUILDHOST      = 1007;
+	private static final int SIZE           = 1009;
+	private static final int VENDOR         = 1011;
+	private static final int LICENSE        = 1014;
+	private static final int GROUP          = 1016;
+	private static final int OS             = 1021;
+	private static final int ARCH           = 1022;
+	private static final int FILESIZES      = 1028;
+	private static final int FILEMODES      = 1030;
+	private static final int FILERDEVS      = 1033;
+	private static final int FILEMTIMES     = 1034;
+	private static final int FILEDIGESTS    = 1035;
+	private static final int FILELINKTOS    = 1036;
+	private static final int FILEFLAGS      = 1037;
+	private static final int FILEUSERNAME   = 1039;
+	private static final int FILEGROUPNAME  = 1040;
+	private static final int SOURCERPM      = 1044;
+	private static final int FILEVERIFYFLAGS= 1045;
+	private static final int PROVIDEFLAGS   = 1112;
+	private static final int PROVIDEVERSION = 1113;
+	private static final int REQUIREFLAGS   = 1048;
+	private static final int REQUIREVERSION = 1050;
+	private static final int RPMVERSION     = 1064;
+	private static final int FILEDEVICES    = 1095;
+	private static final int FILEINODES     = 1096;
+	private static final int FILELANGS      = 1097;
+	private static final int DIRINDEXES     = 1116;
+	private static final int BASENAMES      = 1117;
+	private static final int DIRNAMES       = 1118;
+	private static final int PAYLOADFLAGS   = 1126;
+	private static final int FILEDIGESTALGO = 5011;
+
+	private static final int TYPE_INT16        = 3;
+	private static final int TYPE_INT32        = 4;
+	private static final int TYPE_STRING       = 6;
+	private static final int TYPE_BIN          = 7;
+	private static final int TYPE_STRING_ARRAY = 8;
+	private static final int TYPE_I18NSTRING   = 9;
+
+	private static final int DIGEST_ALGO_SHA256 = 8;
+
+	private static final int S_IFDIR = 0040000;
+	private static final int S_IFREG = 0100000;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String name;
+	private final String version;
+	private final String release;
+
+	private String summary     = "";
+	private String description = "";
+	private String license     = "Unknown";
+	private String group       = "Unspecified";
+	private String vendor      = null;
+
+	private final
+	List<Relation> requires = new ArrayList<Relation>();
+
+	private final
+	List<Relation> provides = new ArrayList<Relation>();
+
+	/**
+	 * Sorted by path, which is the order rpm expects them in the header.
+	 */
+	private final
+	Map<String, Payload> filesByPath = new TreeMap<String, Payload>();
+
+	private final
+	int buildTime = (int) (System.currentTimeMillis() / 1000);
+
+	private static
+	class Relation
+	{
+		final String name;
+		final int    flags;
+		final String version;
+
+		Relation(String name, int flags, String version)
+		{
+			this.name = name;
+			this.flags = flags;
+			this.version = (version == null ? "" : version);
+		}
+	}
+
+	private static
+	class Payload
+	{
+		final byte[] contents;
+		final int    mode;
+		final int    flags;
+		final int    mtime;
+
+		Payload(byte[] contents, int mode, int flags, int mtime)
+		{
+			this.contents = contents;
+			this.mode = mode;
+			this.flags = flags;
+			this.mtime = mtime;
+		}
+
+		boolean isDirectory()
+		{
+			return contents == null;
+		}
+	}
+
+	public
+	RPMWriter(String name, String version, String release)
+	{
+		this.name = name;
+		this.version = version;
+		this.release = release;
+
+		//Every package provides itself, as rpmbuild would have it...
+		provides.add(new Relation(name, SENSE_EQUAL, version + "-" + release));
+
+		requires.add(new Relation("rpmlib(CompressedFileNames)", SENSE_RPMLIB | SENSE_LESS | SENSE_EQUAL, "3.0.4-1"));
+		requires.add(new Relation("rpmlib(FileDigests)", SENSE_RPMLIB | SENSE_LESS | SENSE_EQUAL, "4.6.0-1"));
+		requires.add(new Relation("rpmlib(PayloadFilesHavePrefix)", SENSE_RPMLIB | SENSE_LESS | SENSE_EQUAL, "4.0-1"));
+	}
+
+	public
+	String getFileName()
+	{
+		return name + "-" + version + "-" + release + ".noarch.rpm";
+	}
+
+	public
+	void setSummary(String summary)
+	{
+		this.summary = summary;
+	}
+
+	public
+	void setDescription(String description)
+	{
+		this.description = description;
+	}
+
+	public
+	void setLicense(String license)
+	{
+		this.license = license;
+	}
+
+	public
+	void setGroup(String group)
+	{
+		this.group = group;
+	}
+
+	public
+	void setVendor(String vendor)
+	{
+		this.vendor = vendor;
+	}
+
+	public
+	void addRequires(String name, int flags, String version)
+	{
+		requires.add(new Relation(name, flags, version));
+	}
+
+	public
+	void addProvides(String name, int flags, String version)
+	{
+		provides.add(new Relation(name, flags, version));
+	}
+
+	/**
+	 * @param path the absolute installation path, e.g. "/usr/share/java/foo"
+	 * @param mode the permission bits (only), e.g. 0755
+	 */
+	public
+	void addDirectory(String path, int mode)
+	{
+		filesByPath.put(checkPath(path), new Payload(null, S_IFDIR | mode, FILE_NONE, buildTime));
+	}
+
+	public
+	void addFile(String path, byte[] contents, int mode, int flags)
+	{
+		filesByPath.put(checkPath(path), new Payload(contents, S_IFREG | mode, flags, buildTime));
+	}
+
+	public
+	void addFile(String path, File source, int mode, int flags) throws IOException
+	{
+		final
+		int mtime = (int) (source.lastModified() / 1000);
+
+		filesByPath.put(checkPath(path), new Payload(readFile(source), S_IFREG | mode, flags, mtime));
+	}
+
+	private static
+	String checkPath(String path)
+	{
+		if (!path.startsWith("/") || path.endsWith("/") || path.contains("/../") || path.contains("//"))
+		{
+			throw new IllegalArgumentException("not a normalized absolute path: " + path);
+		}
+
+		return path;
+	}
+
+	/**
+	 * Writes the rpm into the given directory (under the conventional name), overwriting any existing file.
+	 */
+	public
+	File write(File directory) throws IOException
+	{
+		final
+		File file = new File(directory, getFileName());
+
+		final
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+		final
+		long payloadSize = writePayload(payload);
+
+		final
+		byte[] header = buildHeader();
+
+		final
+		byte[] compressedPayload = payload.toByteArray();
+
+		final
+		byte[] signature = buildSignature(header, compressedPayload, payloadSize);
+
+		final
+		OutputStream out = new FileOutputStream(file);
+
+		try
+		{
+			out.write(buildLead());
+			out.write(signature);
+
+			//The signature is padded to an eight-byte boundary (the lead already is one).
+			out.write(new byte[(8 - signature.length % 8) % 8]);
+
+			out.write(header);
+			out.write(compressedPayload);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		log.debug("wrote {} ({} files, {} bytes)", file, filesByPath.size(), file.length());
+
+		return file;
+	}
+
+	private
+	byte[] buildLead()
+	{
+		final
+		ByteBuffer lead = ByteBuffer.allocate(RPMHeader.LEAD_SIZE);
+
+		lead.putInt(0xedabeedb);
+		lead.put((byte) 3);  //major
+		lead.put((byte) 0);  //minor
+		lead.putShort((short) 0); //binary
+		lead.putShort((short) 0); //archnum (noarch)
+
+		final
+		byte[] nevr = (name + "-" + version + "-" + release).getBytes(UTF8);
+
+		//66 bytes, always nul-terminated
+		lead.put(nevr, 0, Math.min(nevr.length, 65));
+		lead.position(10 + 66);
+
+		lead.putShort((short) 1); //osnum (linux)
+		lead.putShort((short) 5); //signature type (header-style)
+
+		return lead.array();
+	}
+
+	private
+	long writePayload(OutputStream compressed) throws IOException
+	{
+		final
+		GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024)
+		{
+			{
+				def.setLevel(9);
+			}
+		};
+
+		long size = 0;
+		int inode = 1;
+
+		for (Map.Entry<String, Payload> me : filesByPath.entrySet())
+		{
+			final
+			Payload file = me.getValue();
+
+			size += writeCpioEntry(gzip, "." + me.getKey(), inode++, file.mode, file.isDirectory() ? 2 : 1, file.mtime, file.contents);
+		}
+
+		size += writeCpioEntry(gzip, "TRAILER!!!", 0, 0, 1, 0, null);
+
+		gzip.close();
+
+		return size;
+	}
+
+	private static
+	long writeCpioEntry(OutputStream out, String path, int inode, int mode, int nlink, int mtime, byte[] contents) throws IOException
+	{
+		final
+		byte[] name = path.getBytes(UTF8);
+
+		final
+		int fileSize = (contents == null ? 0 : contents.length);
+
+		final
+		StringBuilder sb = new StringBuilder(110);
+
+		sb.append("070701");
+
+		for (int field : new int[]{inode, mode, 0, 0, nlink, mtime, fileSize, 0, 0, 0, 0, name.length + 1, 0})
+		{
+			hex8(sb, field);
+		}
+
+		final
+		byte[] header = sb.toString().getBytes(UTF8);
+
+		out.write(header);
+		out.write(name);
+		out.write(0);
+
+		long written = header.length + name.length + 1;
+
+		written += pad4(out, written);
+
+		if (contents != null)
+		{
+			out.write(contents);
+			written += contents.length;
+			written += pad4(out, contents.length);
+		}
+
+		return written;
+	}
+
+	private static
+	void hex8(StringBuilder sb, int value)
+	{
+		final
+		String hex = Integer.toHexString(value).toUpperCase();
+
+		for (int i = hex.length(); i < 8; i++)
+		{
+			sb.append('0');
+		}
+
+		sb.append(hex);
+	}
+
+	private static
+	int pad4(OutputStream out, long length) throws IOException
+	{
+		final
+		int padding = (int) ((4 - (length & 3)) & 3);
+
+		out.write(new byte[padding]);
+
+		return padding;
+	}
+
+	private
+	byte[] buildHeader() throws IOException
+	{
+		final
+		HeaderBuilder h = new HeaderBuilder();
+
+		h.addStringArray(HEADER_I18NTABLE, "C");
+		h.addString(RPMHeader.NAME, name);
+		h.addString(RPMHeader.VERSION, version);
+		h.addString(RPMHeader.RELEASE, release);
+		h.addI18nString(SUMMARY, summary);
+		h.addI18nString(DESCRIPTION, description);
+		h.addInt32(BUILDTIME, buildTime);
+		h.addString(BUILDHOST, buildHost());
+
+		if (vendor != null)
+		{
+			h.addString(VENDOR, vendor);
+		}
+
+		h.addString(LICENSE, license);
+		h.addI18nString(GROUP, group);
+		h.addString(OS, "linux");
+		h.addString(ARCH, "noarch");
+		h.addString(SOURCERPM, name + "-" + version + "-" + release + ".src.rpm");
+		h.addString(RPMVERSION, "4.8.0");
+		h.addString(RPMHeader.PAYLOADFORMAT, "cpio");
+		h.addString(RPMHeader.PAYLOADCOMPRESSOR, "gzip");
+		h.addString(PAYLOADFLAGS, "9");
+
+		addRelations(h, RPMHeader.PROVIDENAME, PROVIDEFLAGS, PROVIDEVERSION, provides);
+		addRelations(h, RPMHeader.REQUIRENAME, REQUIREFLAGS, REQUIREVERSION, requires);
+
+		if (!filesByPath.isEmpty())
+		{
+			addFileList(h);
+		}
+		else
+		{
+			h.addInt32(SIZE, 0);
+		}
+
+		return h.build(IMMUTABLE_REGION);
+	}
+
+	private
+	void addFileList(HeaderBuilder h) throws IOException
+	{
+		final
+		int n = filesByPath.size();
+
+		final int[]    sizes    = new int[n];
+		final short[]  modes    = new short[n];
+		final short[]  rdevs    = new short[n];
+		final int[]    mtimes   = new int[n];
+		final String[] digests  = new String[n];
+		final String[] linktos  = new String[n];
+		final int[]    flags    = new int[n];
+		final String[] users    = new String[n];
+		final String[] groups   = new String[n];
+		final int[]    verify   = new int[n];
+		final int[]    devices  = new int[n];
+		final int[]    inodes   = new int[n];
+		final String[] langs    = new String[n];
+		final int[]    dirIndex = new int[n];
+		final String[] basenames= new String[n];
+
+		final
+		Map<String, Integer> dirIndexes = new LinkedHashMap<String, Integer>();
+
+		long totalSize = 0;
+		int i = 0;
+
+		for (Map.Entry<String, Payload> me : filesByPath.entrySet())
+		{
+			final
+			String path = me.getKey();
+
+			final
+			Payload file = me.getValue();
+
+			final
+			int slash = path.lastIndexOf('/');
+
+			final
+			String dirname = path.substring(0, slash + 1);
+
+			Integer index = dirIndexes.get(dirname);
+
+			if (index == null)
+			{
+				index = dirIndexes.size();
+				dirIndexes.put(dirname, index);
+			}
+
+			sizes[i]     = (file.isDirectory() ? 4096 : file.contents.length);
+			modes[i]     = (short) file.mode;
+			mtimes[i]    = file.mtime;
+			digests[i]   = (file.isDirectory() ? "" : hex(digest("SHA-256", file.contents)));
+			linktos[i]   = "";
+			flags[i]     = file.flags;
+			users[i]     = "root";
+			groups[i]    = "root";
+			verify[i]    = -1;
+			devices[i]   = 1;
+			inodes[i]    = i + 1;
+			langs[i]     = "";
+			dirIndex[i]  = index;
+			basenames[i] = path.substring(slash + 1);
+
+			totalSize += sizes[i];
+			i++;
+		}
+
+		h.addInt32(SIZE, (int) totalSize);
+		h.addInt32(FILESIZES, sizes);
+		h.addInt16(FILEMODES, modes);
+		h.addInt16(FILERDEVS, rdevs);
+		h.addInt32(FILEMTIMES, mtimes);
+		h.addStringArray(FILEDIGESTS, digests);
+		h.addStringArray(FILELINKTOS, linktos);
+		h.addInt32(FILEFLAGS, flags);
+		h.addStringArray(FILEUSERNAME, users);
+		h.addStringArray(FILEGROUPNAME, groups);
+		h.addInt32(FILEVERIFYFLAGS, verify);
+		h.addInt32(FILEDEVICES, devices);
+		h.addInt32(FILEINODES, inodes);
+		h.addStringArray(FILELANGS, langs);
+		h.addInt32(DIRINDEXES, dirIndex);
+		h.addStringArray(BASENAMES, basenames);
+		h.addStringArray(DIRNAMES, dirIndexes.keySet().toArray(new String[dirIndexes.size()]));
+		h.addInt32(FILEDIGESTALGO, DIGEST_ALGO_SHA256);
+	}
+
+	private static
+	void addRelations(HeaderBuilder h, int nameTag, int flagsTag, int versionTag, List<Relation> relations)
+	{
+		final
+		int n = relations.size();
+
+		final String[] names    = new String[n];
+		final int[]    flags    = new int[n];
+		final String[] versions = new String[n];
+
+		for (int i = 0; i < n; i++)
+		{
+			final
+			Relation relation = relations.get(i);
+
+			names[i] = relation.name;
+			flags[i] = relation.flags;
+			versions[i] = relation.version;
+		}
+
+		h.addStringArray(nameTag, names);
+		h.addInt32(flagsTag, flags);
+		h.addStringArray(versionTag, versions);
+	}
+
+	private static
+	byte[] buildSignature(byte[] header, byte[] compressedPayload, long payloadSize)
+	{
+		final
+		HeaderBuilder h = new HeaderBuilder();
+
+		final
+		MessageDigest md5 = messageDigest("MD5");
+
+		md5.update(header);
+		md5.update(compressedPayload);
+
+		h.addString(RPMHeader.SIGTAG_SHA1, hex(digest("SHA-1", header)));
+		h.addString(SIGTAG_SHA256, hex(digest("SHA-256", header)));
+		h.addInt32(RPMHeader.SIGTAG_SIZE, header.length + compressedPayload.length);
+		h.addBinary(RPMHeader.SIGTAG_MD5, md5.digest());
+		h.addInt32(RPMHeader.SIGTAG_PAYLOADSIZE, (int) payloadSize);
+
+		return h.build(SIGNATURES_REGION);
+	}
+
+	/**
+	 * Accumulates tagged values, and then lays them out as a "header structure" (preamble, index, and
+	 * data store), with an immutable region tag covering the entire header.
+	 */
+	private static
+	class HeaderBuilder
+	{
+		private static
+		class Value
+		{
+			final int    type;
+			final int    count;
+			final byte[] data;
+
+			Value(int type, int count, byte[] data)
+			{
+				this.type = type;
+				this.count = count;
+				this.data = data;
+			}
+		}
+
+		private final
+		Map<Integer, Value> valuesByTag = new TreeMap<Integer, Value>();
+
+		void addString(int tag, String value)
+		{
+			valuesByTag.put(tag, new Value(TYPE_STRING, 1, nulTerminated(value)));
+		}
+
+		void addI18nString(int tag, String value)
+		{
+			valuesByTag.put(tag, new Value(TYPE_I18NSTRING, 1, nulTerminated(value)));
+		}
+
+		void addStringArray(int tag, String... values)
+		{
+			final
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+			for (String value : values)
+			{
+				final
+				byte[] bytes = nulTerminated(value);
+
+				baos.write(bytes, 0, bytes.length);
+			}
+
+			valuesByTag.put(tag, new Value(TYPE_STRING_ARRAY, values.length, baos.toByteArray()));
+		}
+
+		void addInt32(int tag, int... values)
+		{
+			final
+			ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+
+			for (int value : values)
+			{
+				buffer.putInt(value);
+			}
+
+			valuesByTag.put(tag, new Value(TYPE_INT32, values.length, buffer.array()));
+		}
+
+		void addInt16(int tag, short[] values)
+		{
+			final
+			ByteBuffer buffer = ByteBuffer.allocate(values.length * 2);
+
+			for (short value : values)
+			{
+				buffer.putShort(value);
+			}
+
+			valuesByTag.put(tag, new Value(TYPE_INT16, values.length, buffer.array()));
+		}
+
+		void addBinary(int tag, byte[] value)
+		{
+			valuesByTag.put(tag, new Value(TYPE_BIN, value.length, value));
+		}
+
+		private static
+		byte[] nulTerminated(String value)
+		{
+			final
+			byte[] bytes = value.getBytes(UTF8);
+
+			final
+			byte[] retval = new byte[bytes.length + 1];
+
+			System.arraycopy(bytes, 0, retval, 0, bytes.length);
+
+			return retval;
+		}
+
+		byte[] build(int regionTag)
+		{
+			final
+			int indexLength = valuesByTag.size() + 1;
+
+			final
+			ByteArrayOutputStream store = new ByteArrayOutputStream();
+
+			final
+			ByteBuffer index = ByteBuffer.allocate(indexLength * 16);
+
+			//The region tag comes first in the index, but it's data (the trailer) comes last in the store.
+			index.position(16);
+
+			for (Map.Entry<Integer, Value> me : valuesByTag.entrySet())
+			{
+				final
+				Value value = me.getValue();
+
+				final
+				int alignment = alignmentOf(value.type);
+
+				while (store.size() % alignment != 0)
+				{
+					store.write(0);
+				}
+
+				index.putInt(me.getKey());
+				index.putInt(value.type);
+				index.putInt(store.size());
+				index.putInt(value.count);
+
+				store.write(value.data, 0, value.data.length);
+			}
+
+			final
+			int trailerOffset = store.size();
+
+			final
+			ByteBuffer trailer = ByteBuffer.allocate(16);
+
+			trailer.putInt(regionTag);
+			trailer.putInt(TYPE_BIN);
+			trailer.putInt(-indexLength * 16);
+			trailer.putInt(16);
+
+			store.write(trailer.array(), 0, 16);
+
+			index.position(0);
+			index.putInt(regionTag);
+			index.putInt(TYPE_BIN);
+			index.putInt(trailerOffset);
+			index.putInt(16);
+
+			final
+			ByteBuffer retval = ByteBuffer.allocate(16 + index.capacity() + store.size());
+
+			retval.putInt(0x8eade801);
+			retval.putInt(0);
+			retval.putInt(indexLength);
+			retval.putInt(store.size());
+			retval.put(index.array());
+			retval.put(store.toByteArray());
+
+			return retval.array();
+		}
+
+		private static
+		int alignmentOf(int type)
+		{
+			switch (type)
+			{
+				case TYPE_INT16: return 2;
+				case TYPE_INT32: return 4;
+				default:         return 1;
+			}
+		}
+	}
+
+	private static
+	String buildHost()
+	{
+		try
+		{
+			return InetAddress.getLocalHost().getHostName();
+		}
+		catch (IOException e)
+		{
+			return "localhost";
+		}
+	}
+
+	private static
+	byte[] readFile(File file) throws IOException
+	{
+		final
+		long length = file.length();
+
+		if (length > Integer.MAX_VALUE)
+		{
+			throw new IOException("too large to package in-process: " + file);
+		}
+
+		final
+		byte[] retval = new byte[(int) length];
+
+		final
+		InputStream in = new FileInputStream(file);
+
+		try
+		{
+			int offset = 0;
+
+			while (offset < retval.length)
+			{
+				final
+				int read = in.read(retval, offset, retval.length - offset);
+
+				if (read < 0)
+				{
+					throw new IOException("file shrank while reading: " + file);
+				}
+
+				offset += read;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return retval;
+	}
+
+	private static
+	MessageDigest messageDigest(String algorithm)
+	{
+		try
+		{
+			return MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	private static
+	byte[] digest(String algorithm, byte[] bytes)
+	{
+		return messageDigest(algorithm).digest(bytes);
+	}
+
+	private static
+	String hex(byte[] bytes)
+	{
+		final
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+		for (byte b : bytes)
+		{
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,173 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An exclusive, reentrant lock on a repo, that is held against other threads (by a plain java lock) as well as
+ * other processes (by an OS-level lock on a file in the repo's state directory), such that several grinders can
+ * safely add to the same repo at once.
+ *
+ * As the OS-level lock belongs to the whole process, there must be only one of these per lock file, hence
+ * the factory method.
+ */
+public
+class RepoLock
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(RepoLock.class);
+
+	private static final
+	ConcurrentMap<File, RepoLock> INSTANCES = new ConcurrentHashMap<File, RepoLock>();
+
+	public static
+	RepoLock forFile(File file) throws IOException
+	{
+		final
+		File canonical = file.getCanonicalFile();
+
+		RepoLock retval = INSTANCES.get(canonical);
+
+		if (retval == null)
+		{
+			final
+			RepoLock newLock = new RepoLock(canonical);
+
+			retval = INSTANCES.putIfAbsent(canonical, newLock);
+
+			if (retval == null)
+			{
+				retval = newLock;
+			}
+		}
+
+		return retval;
+	}
+
+	private final
+	File file;
+
+	private final
+	ReentrantLock threadLock = new ReentrantLock();
+
+	private
+	RandomAccessFile randomAccessFile;
+
+	private
+	FileLock fileLock;
+
+	private
+	RepoLock(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Blocks until no other thread or process holds this lock. Every call must be paired with a call to unlock(),
+	 * typically in a finally block.
+	 */
+	public
+	void lock() throws IOException
+	{
+		threadLock.lock();
+
+		if (threadLock.getHoldCount() > 1)
+		{
+			return;
+		}
+
+		try
+		{
+			randomAccessFile = new RandomAccessFile(file, "rw");
+
+			final
+			FileChannel channel = randomAccessFile.getChannel();
+
+			fileLock = channel.tryLock();
+
+			if (fileLock == null)
+			{
+				log.info("waiting for another process to release: {}", file);
+
+				final
+				long start = System.currentTimeMillis();
+
+				fileLock = channel.lock();
+
+				log.info("acquired {} after {}ms", file, System.currentTimeMillis() - start);
+			}
+		}
+		catch (IOException e)
+		{
+			closeQuietly();
+			threadLock.unlock();
+			throw e;
+		}
+	}
+
+	public
+	void unlock() throws IOException
+	{
+		if (!threadLock.isHeldByCurrentThread())
+		{
+			throw new IllegalMonitorStateException("not held by this thread: " + file);
+		}
+
+		try
+		{
+			if (threadLock.getHoldCount() == 1)
+			{
+				try
+				{
+					fileLock.release();
+				}
+				finally
+				{
+					closeQuietly();
+				}
+			}
+		}
+		finally
+		{
+			threadLock.unlock();
+		}
+	}
+
+	private
+	void closeQuietly()
+	{
+		fileLock = null;
+
+		if (randomAccessFile != null)
+		{
+			try
+			{
+				randomAccessFile.close();
+			}
+			catch (IOException e)
+			{
+				log.warn("unable to close: {}", file, e);
+			}
+
+			randomAccessFile = null;
+		}
+	}
+
+	@Override
+	public
+	String toString()
+	{
+		return "RepoLock{" +
+				   "file=" + file +
+				   '}';
+	}
+}
@@ -0,0 +1,1210 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import com.github.osndok.mrb.grinder.util.FileHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-process, incremental replacement for 'createrepo --update', for the (common) case where we know
+ * exactly which rpms were added to the repo since the metadata was last written.
+ *
+ * The existing primary, filelists, and other xml files are streamed (never loaded whole) into new ones, with
+ * any packages that are being replaced (i.e. same file name) dropped, and the new packages (as read from their
+ * rpm headers) appended. Then repomd.xml is rewritten to point to the new files, with fresh checksums. Only
+ * the added rpms are read, the rest of the repo is not even stat'd.
+ *
+ * Limitations, for which the caller should fall back to createrepo: rpms removed by hand are not noticed, only
+ * gzip-compressed metadata can be updated, and the sqlite databases (if any) are dropped from repomd.xml rather
+ * than updated (yum will then build them locally from the xml).
+ *
+ * @url http://createrepo.baseurl.org/
+ */
+public
+class RepodataWriter
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(RepodataWriter.class);
+
+	private static final String COMMON_NS    = "http://linux.duke.edu/metadata/common";
+	private static final String RPM_NS       = "http://linux.duke.edu/metadata/rpm";
+	private static final String REPO_NS      = "http://linux.duke.edu/metadata/repo";
+	private static final String FILELISTS_NS = "http://linux.duke.edu/metadata/filelists";
+	private static final String OTHER_NS     = "http://linux.duke.edu/metadata/other";
+
+	private static final String PRIMARY   = "primary";
+	private static final String FILELISTS = "filelists";
+	private static final String OTHER     = "other";
+
+	private static final int EPOCH       = 1003;
+	private static final int SUMMARY     = 1004;
+	private static final int DESCRIPTION = 1005;
+	private static final int BUILDTIME   = 1006;
+	private static final int BUILDHOST   = 1007;
+	private static final int SIZE        = 1009;
+	private static final int VENDOR      = 1011;
+	private static final int LICENSE     = 1014;
+	private static final int PACKAGER    = 1015;
+	private static final int GROUP       = 1016;
+	private static final int URL         = 1020;
+	private static final int ARCH        = 1022;
+	private static final int FILEMODES   = 1030;
+	private static final int SOURCERPM   = 1044;
+	private static final int PROVIDEFLAGS   = 1112;
+	private static final int PROVIDEVERSION = 1113;
+	private static final int REQUIREFLAGS   = 1048;
+	private static final int REQUIREVERSION = 1050;
+	private static final int DIRINDEXES  = 1116;
+	private static final int BASENAMES   = 1117;
+	private static final int DIRNAMES    = 1118;
+
+	private static final int SENSE_LESS    = 0x02;
+	private static final int SENSE_GREATER = 0x04;
+	private static final int SENSE_EQUAL   = 0x08;
+	private static final int SENSE_PREREQ  = 0x40 | 0x200 | 0x400;
+
+	private static final int S_IFMT  = 0170000;
+	private static final int S_IFDIR = 0040000;
+
+	private final
+	File repo;
+
+	private final
+	File repodata;
+
+	public
+	RepodataWriter(File repo)
+	{
+		this.repo = repo;
+		this.repodata = new File(repo, "repodata");
+	}
+
+	/**
+	 * @param addedFileNames the file names (within the repo directory) of the rpms added since the metadata was last written
+	 * @throws IOException if the existing metadata cannot be updated in-process (in which case, it is left untouched)
+	 */
+	public
+	void update(Collection<String> addedFileNames) throws IOException
+	{
+		final
+		long startTime = System.currentTimeMillis();
+
+		final
+		File repomd = new File(repodata, "repomd.xml");
+
+		final
+		Map<String, String> hrefsByType = new LinkedHashMap<String, String>();
+
+		final
+		List<List<XMLEvent>> preserved = new ArrayList<List<XMLEvent>>();
+
+		readRepomd(repomd, hrefsByType, preserved);
+
+		for (String type : new String[]{PRIMARY, FILELISTS, OTHER})
+		{
+			final
+			String href = hrefsByType.get(type);
+
+			if (href == null || !href.endsWith(".xml.gz"))
+			{
+				throw new IOException(repomd + ": no gzip'd " + type + " metadata to update: " + href);
+			}
+		}
+
+		final
+		List<Package> added = new ArrayList<Package>(addedFileNames.size());
+
+		final
+		Set<String> addedNames = new HashSet<String>();
+
+		for (String fileName : addedFileNames)
+		{
+			if (addedNames.add(fileName))
+			{
+				added.add(new Package(new File(repo, fileName)));
+			}
+		}
+
+		final
+		File oldPrimary = hrefFile(hrefsByType.get(PRIMARY));
+
+		final
+		Set<String> replacedPkgIds = new HashSet<String>();
+
+		final
+		int oldCount = scanPrimary(oldPrimary, addedNames, replacedPkgIds);
+
+		final
+		int newCount = oldCount - replacedPkgIds.size() + added.size();
+
+		log.debug("{}: {} packages, {} replaced, {} added", repo, oldCount, replacedPkgIds.size(), added.size());
+
+		final
+		List<Written> written = new ArrayList<Written>();
+
+		final
+		List<File> obsolete = new ArrayList<File>();
+
+		boolean success = false;
+
+		try
+		{
+			for (String type : new String[]{PRIMARY, FILELISTS, OTHER})
+			{
+				final
+				File oldFile = hrefFile(hrefsByType.get(type));
+
+				written.add(rewrite(type, oldFile, replacedPkgIds, newCount, added));
+				obsolete.add(oldFile);
+			}
+
+			//Anything else that describes the packages (e.g. "primary_db") is now stale, and must be dropped.
+			for (Map.Entry<String, String> me : hrefsByType.entrySet())
+			{
+				final
+				String type = me.getKey();
+
+				if (!type.equals(PRIMARY) && !type.equals(FILELISTS) && !type.equals(OTHER) && isPackageData(type))
+				{
+					log.debug("dropping stale '{}' metadata", type);
+					obsolete.add(hrefFile(me.getValue()));
+				}
+			}
+
+			writeRepomd(repomd, written, preserved);
+			success = true;
+		}
+		finally
+		{
+			if (!success)
+			{
+				for (Written w : written)
+				{
+					w.file.delete();
+				}
+			}
+		}
+
+		for (File file : obsolete)
+		{
+			file.delete();
+		}
+
+		log.info("{}: updated metadata with {} rpms in {}ms", repo, added.size(), System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * @return true if the given repomd data type is derived from the package list (and so would be made stale by an addition)
+	 */
+	private static
+	boolean isPackageData(String type)
+	{
+		return type.startsWith(PRIMARY) || type.startsWith(FILELISTS) || type.startsWith(OTHER);
+	}
+
+	private
+	File hrefFile(String href)
+	{
+		return new File(repo, href);
+	}
+
+	private static
+	void readRepomd(File repomd, Map<String, String> hrefsByType, List<List<XMLEvent>> preserved) throws IOException
+	{
+		final
+		InputStream in = new BufferedInputStream(new FileInputStream(repomd));
+
+		try
+		{
+			final
+			XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(in);
+
+			while (reader.hasNext())
+			{
+				final
+				XMLEvent event = reader.nextEvent();
+
+				if (!isStart(event, "data"))
+				{
+					continue;
+				}
+
+				final
+				List<XMLEvent> data = readSubtree(event, reader);
+
+				final
+				String type = attribute(event.asStartElement(), "type");
+
+				String href = null;
+
+				for (XMLEvent e : data)
+				{
+					if (isStart(e, "location"))
+					{
+						href = attribute(e.asStartElement(), "href");
+					}
+				}
+
+				hrefsByType.put(type, href);
+
+				if (!isPackageData(type))
+				{
+					//e.g. "group" (comps) or "updateinfo", which we do not (and need not) touch.
+					preserved.add(data);
+				}
+			}
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(repomd + ": unparsable", e);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the number of packages in the given primary metadata, collecting the pkgids of those whose file name is given
+	 */
+	private static
+	int scanPrimary(File primary, Set<String> fileNames, Set<String> pkgIds) throws IOException
+	{
+		final
+		InputStream in = new GZIPInputStream(new FileInputStream(primary), 64 * 1024);
+
+		try
+		{
+			final
+			XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(in);
+
+			int count = 0;
+
+			String pkgId = null;
+
+			while (reader.hasNext())
+			{
+				final
+				XMLEvent event = reader.nextEvent();
+
+				if (isStart(event, "package"))
+				{
+					count++;
+					pkgId = null;
+				}
+				else
+				if (isStart(event, "checksum") && "YES".equals(attribute(event.asStartElement(), "pkgid")))
+				{
+					pkgId = reader.getElementText().trim();
+				}
+				else
+				if (isStart(event, "location") && fileNames.contains(attribute(event.asStartElement(), "href")))
+				{
+					pkgIds.add(pkgId);
+				}
+			}
+
+			return count;
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(primary + ": unparsable", e);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static
+	class Written
+	{
+		final String type;
+		final File   file;
+		final String checksum;
+		final String openChecksum;
+		final long   size;
+		final long   openSize;
+
+		Written(String type, File file, String checksum, String openChecksum, long size, long openSize)
+		{
+			this.type = type;
+			this.file = file;
+			this.checksum = checksum;
+			this.openChecksum = openChecksum;
+			this.size = size;
+			this.openSize = openSize;
+		}
+	}
+
+	/**
+	 * Streams the given (old) metadata file into a new one, less the replaced packages, plus the added ones.
+	 */
+	private
+	Written rewrite(String type, File oldFile, Set<String> replacedPkgIds, int newCount, List<Package> added) throws IOException
+	{
+		final
+		File tmp = File.createTempFile("." + type + "-", ".xml.gz", repodata);
+
+		final
+		Digesting compressed;
+
+		final
+		Digesting open;
+
+		final
+		InputStream in = new GZIPInputStream(new FileInputStream(oldFile), 64 * 1024);
+
+		try
+		{
+			compressed = new Digesting(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+
+			final
+			GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024);
+
+			open = new Digesting(gzip);
+
+			final
+			XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(in);
+
+			final
+			XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(open, "UTF-8");
+
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+
+			int depth = 0;
+
+			while (reader.hasNext())
+			{
+				final
+				XMLEvent event = reader.nextEvent();
+
+				if (event.isStartElement())
+				{
+					depth++;
+
+					if (depth == 1)
+					{
+						//The root element, which declares the (new) package count.
+						copyStart(event.asStartElement(), writer, "packages", Integer.toString(newCount));
+						continue;
+					}
+
+					if (depth == 2 && isStart(event, "package"))
+					{
+						final
+						List<XMLEvent> subtree = readSubtree(event, reader);
+
+						depth--;
+
+						if (replacedPkgIds.contains(pkgIdOf(subtree)))
+						{
+							log.debug("dropping replaced package from {}", type);
+
+							//Also swallow the whitespace that followed it, lest the file slowly accumulate blank lines.
+							if (reader.hasNext() && reader.peek().isCharacters() && reader.peek().asCharacters().isWhiteSpace())
+							{
+								reader.nextEvent();
+							}
+						}
+						else
+						{
+							for (XMLEvent e : subtree)
+							{
+								copy(e, writer);
+							}
+						}
+
+						continue;
+					}
+				}
+				else
+				if (event.isEndElement())
+				{
+					depth--;
+
+					if (depth == 0)
+					{
+						for (Package p : added)
+						{
+							if (type.equals(PRIMARY))
+							{
+								p.writePrimary(writer);
+							}
+							else
+							if (type.equals(FILELISTS))
+							{
+								p.writeFilelists(writer);
+							}
+							else
+							{
+								p.writeOther(writer);
+							}
+
+							writer.writeCharacters("\n");
+						}
+					}
+				}
+				else
+				if (event.isStartDocument() || event.isEndDocument())
+				{
+					continue;
+				}
+
+				copy(event, writer);
+			}
+
+			writer.writeEndDocument();
+			writer.writeCharacters("\n");
+			writer.close();
+
+			gzip.close();
+		}
+		catch (XMLStreamException e)
+		{
+			tmp.delete();
+			throw new IOException(oldFile + ": unable to rewrite", e);
+		}
+		catch (IOException e)
+		{
+			tmp.delete();
+			throw e;
+		}
+		finally
+		{
+			in.close();
+		}
+
+		final
+		String checksum = compressed.hex();
+
+		final
+		File file = new File(repodata, checksum + "-" + type + ".xml.gz");
+
+		if (!tmp.renameTo(file))
+		{
+			tmp.delete();
+			throw new IOException("unable to rename: " + tmp);
+		}
+
+		return new Written(type, file, checksum, open.hex(), compressed.count, open.count);
+	}
+
+	private
+	void writeRepomd(File repomd, List<Written> written, List<List<XMLEvent>> preserved) throws IOException
+	{
+		final
+		File tmp = new File(repodata, ".repomd.xml.tmp");
+
+		final
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+
+		try
+		{
+			final
+			XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("repomd");
+			writer.writeDefaultNamespace(REPO_NS);
+			writer.writeNamespace("rpm", RPM_NS);
+			writer.writeCharacters("\n  ");
+			element(writer, "revision", Long.toString(System.currentTimeMillis() / 1000));
+
+			for (Written w : written)
+			{
+				writer.writeCharacters("\n  ");
+				writer.writeStartElement("data");
+				writer.writeAttribute("type", w.type);
+				writer.writeCharacters("\n    ");
+				writer.writeStartElement("checksum");
+				writer.writeAttribute("type", "sha256");
+				writer.writeCharacters(w.checksum);
+				writer.writeEndElement();
+				writer.writeCharacters("\n    ");
+				writer.writeStartElement("open-checksum");
+				writer.writeAttribute("type", "sha256");
+				writer.writeCharacters(w.openChecksum);
+				writer.writeEndElement();
+				writer.writeCharacters("\n    ");
+				writer.writeEmptyElement("location");
+				writer.writeAttribute("href", "repodata/" + w.file.getName());
+				writer.writeCharacters("\n    ");
+				element(writer, "timestamp", Long.toString(w.file.lastModified() / 1000));
+				writer.writeCharacters("\n    ");
+				element(writer, "size", Long.toString(w.size));
+				writer.writeCharacters("\n    ");
+				element(writer, "open-size", Long.toString(w.openSize));
+				writer.writeCharacters("\n  ");
+				writer.writeEndElement();
+			}
+
+			for (List<XMLEvent> data : preserved)
+			{
+				writer.writeCharacters("\n  ");
+
+				for (XMLEvent event : data)
+				{
+					copy(event, writer);
+				}
+			}
+
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.writeCharacters("\n");
+			writer.close();
+		}
+		catch (XMLStreamException e)
+		{
+			out.close();
+			tmp.delete();
+			throw new IOException("unable to write: " + tmp, e);
+		}
+
+		out.close();
+
+		if (!tmp.renameTo(repomd))
+		{
+			tmp.delete();
+			throw new IOException("unable to rename: " + tmp);
+		}
+	}
+
+	/**
+	 * The repo metadata of one (newly added) rpm, as read from it's header.
+	 */
+	private static
+	class Package
+	{
+		private final File      file;
+		private final RPMHeader header;
+		private final String    pkgId;
+
+		private final String name;
+		private final String arch;
+		private final String epoch;
+		private final String version;
+		private final String release;
+
+		Package(File file) throws IOException
+		{
+			this.file = file;
+			this.header = RPMHeader.read(file);
+			this.pkgId = FileHash.sha256(file);
+
+			this.name = header.getName();
+			this.arch = (header.getString(SOURCERPM) == null ? "src" : notNull(header.getString(ARCH)));
+
+			final
+			Long epochNumber = header.getNumber(EPOCH);
+
+			this.epoch = (epochNumber == null ? "0" : epochNumber.toString());
+			this.version = header.getVersion();
+			this.release = header.getRelease();
+		}
+
+		void writePrimary(XMLStreamWriter w) throws XMLStreamException
+		{
+			w.writeStartElement("package");
+			w.writeAttribute("type", "rpm");
+			w.writeCharacters("\n  ");
+			element(w, "name", name);
+			w.writeCharacters("\n  ");
+			element(w, "arch", arch);
+			w.writeCharacters("\n  ");
+			writeVersion(w);
+			w.writeCharacters("\n  ");
+			w.writeStartElement("checksum");
+			w.writeAttribute("type", "sha256");
+			w.writeAttribute("pkgid", "YES");
+			w.writeCharacters(pkgId);
+			w.writeEndElement();
+			w.writeCharacters("\n  ");
+			element(w, "summary", text(SUMMARY));
+			w.writeCharacters("\n  ");
+			element(w, "description", text(DESCRIPTION));
+			w.writeCharacters("\n  ");
+			element(w, "packager", text(PACKAGER));
+			w.writeCharacters("\n  ");
+			element(w, "url", text(URL));
+			w.writeCharacters("\n  ");
+			w.writeEmptyElement("time");
+			w.writeAttribute("file", Long.toString(file.lastModified() / 1000));
+			w.writeAttribute("build", number(header, BUILDTIME));
+			w.writeCharacters("\n  ");
+			w.writeEmptyElement("size");
+			w.writeAttribute("package", Long.toString(file.length()));
+			w.writeAttribute("installed", number(header, SIZE));
+			w.writeAttribute("archive", number(header.getSignature(), RPMHeader.SIGTAG_PAYLOADSIZE));
+			w.writeCharacters("\n  ");
+			w.writeEmptyElement("location");
+			w.writeAttribute("href", file.getName());
+			w.writeCharacters("\n  ");
+			w.writeStartElement("format");
+			w.writeCharacters("\n    ");
+			element(w, "rpm", "license", text(LICENSE));
+			w.writeCharacters("\n    ");
+			element(w, "rpm", "vendor", text(VENDOR));
+			w.writeCharacters("\n    ");
+			element(w, "rpm", "group", text(GROUP));
+			w.writeCharacters("\n    ");
+			element(w, "rpm", "buildhost", text(BUILDHOST));
+			w.writeCharacters("\n    ");
+			element(w, "rpm", "sourcerpm", text(SOURCERPM));
+			w.writeCharacters("\n    ");
+			w.writeEmptyElement("rpm", "header-range", RPM_NS);
+			w.writeAttribute("start", Long.toString(header.getHeaderOffset()));
+			w.writeAttribute("end", Long.toString(header.getPayloadOffset()));
+			writeRelations(w, "provides", header.getProvides(), header.getNumbers(PROVIDEFLAGS), header.getStringArray(PROVIDEVERSION));
+			writeRelations(w, "requires", header.getRequires(), header.getNumbers(REQUIREFLAGS), header.getStringArray(REQUIREVERSION));
+
+			for (String path : files(true))
+			{
+				w.writeCharacters("\n    ");
+				w.writeStartElement("file");
+
+				if (path.endsWith("/"))
+				{
+					w.writeAttribute("type", "dir");
+					path = path.substring(0, path.length() - 1);
+				}
+
+				w.writeCharacters(path);
+				w.writeEndElement();
+			}
+
+			w.writeCharacters("\n  ");
+			w.writeEndElement();
+			w.writeCharacters("\n");
+			w.writeEndElement();
+		}
+
+		void writeFilelists(XMLStreamWriter w) throws XMLStreamException
+		{
+			writePackageStart(w);
+
+			for (String path : files(false))
+			{
+				w.writeCharacters("\n  ");
+				w.writeStartElement("file");
+
+				if (path.endsWith("/"))
+				{
+					w.writeAttribute("type", "dir");
+					path = path.substring(0, path.length() - 1);
+				}
+
+				w.writeCharacters(path);
+				w.writeEndElement();
+			}
+
+			w.writeCharacters("\n");
+			w.writeEndElement();
+		}
+
+		void writeOther(XMLStreamWriter w) throws XMLStreamException
+		{
+			//NB: our rpms have no changelogs.
+			writePackageStart(w);
+			w.writeCharacters("\n");
+			w.writeEndElement();
+		}
+
+		private
+		void writePackageStart(XMLStreamWriter w) throws XMLStreamException
+		{
+			w.writeStartElement("package");
+			w.writeAttribute("pkgid", pkgId);
+			w.writeAttribute("name", name);
+			w.writeAttribute("arch", arch);
+			w.writeCharacters("\n  ");
+			writeVersion(w);
+		}
+
+		private
+		void writeVersion(XMLStreamWriter w) throws XMLStreamException
+		{
+			w.writeEmptyElement("version");
+			w.writeAttribute("epoch", epoch);
+			w.writeAttribute("ver", version);
+			w.writeAttribute("rel", release);
+		}
+
+		private
+		void writeRelations(XMLStreamWriter w, String elementName, List<String> names, long[] flags, List<String> versions)
+			throws XMLStreamException
+		{
+			boolean started = false;
+
+			for (int i = 0; i < names.size(); i++)
+			{
+				final
+				String name = names.get(i);
+
+				if (name.startsWith("rpmlib("))
+				{
+					continue;
+				}
+
+				if (!started)
+				{
+					w.writeCharacters("\n    ");
+					w.writeStartElement("rpm", elementName, RPM_NS);
+					started = true;
+				}
+
+				final
+				int flag = (i < flags.length ? (int) flags[i] : 0);
+
+				final
+				String evr = (i < versions.size() ? versions.get(i) : "");
+
+				w.writeCharacters("\n      ");
+				w.writeEmptyElement("rpm", "entry", RPM_NS);
+				w.writeAttribute("name", name);
+
+				final
+				String comparison = comparison(flag);
+
+				if (comparison != null && evr.length() > 0)
+				{
+					w.writeAttribute("flags", comparison);
+
+					String rest = evr;
+
+					final
+					int colon = rest.indexOf(':');
+
+					if (colon >= 0)
+					{
+						w.writeAttribute("epoch", rest.substring(0, colon));
+						rest = rest.substring(colon + 1);
+					}
+					else
+					{
+						w.writeAttribute("epoch", "0");
+					}
+
+					final
+					int dash = rest.lastIndexOf('-');
+
+					if (dash >= 0)
+					{
+						w.writeAttribute("ver", rest.substring(0, dash));
+						w.writeAttribute("rel", rest.substring(dash + 1));
+					}
+					else
+					{
+						w.writeAttribute("ver", rest);
+					}
+				}
+
+				if ((flag & SENSE_PREREQ) != 0)
+				{
+					w.writeAttribute("pre", "1");
+				}
+			}
+
+			if (started)
+			{
+				w.writeCharacters("\n    ");
+				w.writeEndElement();
+			}
+		}
+
+		/**
+		 * @param primaryOnly if true, only those files that yum expects in primary.xml (/etc, bin directories)
+		 * @return the package's file paths, with directories having a trailing slash
+		 */
+		private
+		List<String> files(boolean primaryOnly)
+		{
+			final
+			List<String> basenames = header.getStringArray(BASENAMES);
+
+			final
+			List<String> dirnames = header.getStringArray(DIRNAMES);
+
+			final
+			long[] dirindexes = header.getNumbers(DIRINDEXES);
+
+			final
+			long[] modes = header.getNumbers(FILEMODES);
+
+			final
+			List<String> retval = new ArrayList<String>(basenames.size());
+
+			for (int i = 0; i < basenames.size(); i++)
+			{
+				final
+				String path = dirnames.get((int) dirindexes[i]) + basenames.get(i);
+
+				if (primaryOnly && !path.startsWith("/etc/") && !path.contains("bin/") && !path.equals("/usr/lib/sendmail"))
+				{
+					continue;
+				}
+
+				final
+				boolean directory = (i < modes.length && (modes[i] & S_IFMT) == S_IFDIR);
+
+				retval.add(directory ? path + "/" : path);
+			}
+
+			return retval;
+		}
+
+		private
+		String text(int tag)
+		{
+			return notNull(header.getString(tag));
+		}
+	}
+
+	private static
+	String comparison(int flags)
+	{
+		switch (flags & (SENSE_LESS | SENSE_GREATER | SENSE_EQUAL))
+		{
+			case SENSE_EQUAL:                 return "EQ";
+			case SENSE_LESS:                  return "LT";
+			case SENSE_GREATER:               return "GT";
+			case SENSE_LESS | SENSE_EQUAL:    return "LE";
+			case SENSE_GREATER | SENSE_EQUAL: return "GE";
+			default:                          return null;
+		}
+	}
+
+	private static
+	String number(RPMHeader header, int tag)
+	{
+		final
+		Long retval = header.getNumber(tag);
+
+		return (retval == null ? "0" : retval.toString());
+	}
+
+	/**
+	 * @return the given string, less any characters that cannot appear in an xml document
+	 */
+	private static
+	String notNull(String s)
+	{
+		if (s == null)
+		{
+			return "";
+		}
+
+		final
+		StringBuilder sb = new StringBuilder(s.length());
+
+		for (int i = 0; i < s.length(); i++)
+		{
+			final
+			char c = s.charAt(i);
+
+			if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r')
+			{
+				sb.append(c);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private static
+	void element(XMLStreamWriter w, String name, String text) throws XMLStreamException
+	{
+		w.writeStartElement(name);
+		w.writeCharacters(text);
+		w.writeEndElement();
+	}
+
+	private static
+	void element(XMLStreamWriter w, String prefix, String name, String text) throws XMLStreamException
+	{
+		w.writeStartElement(prefix, name, RPM_NS);
+		w.writeCharacters(text);
+		w.writeEndElement();
+	}
+
+	private static
+	boolean isStart(XMLEvent event, String localName)
+	{
+		return event.isStartElement() && event.asStartElement().getName().getLocalPart().equals(localName);
+	}
+
+	private static
+	String attribute(StartElement element, String localName)
+	{
+		final
+		Attribute attribute = element.getAttributeByName(new QName(localName));
+
+		return (attribute == null ? null : attribute.getValue());
+	}
+
+	/**
+	 * @return the given start element, and every event up to (and including) it's matching end element
+	 */
+	private static
+	List<XMLEvent> readSubtree(XMLEvent start, XMLEventReader reader) throws XMLStreamException
+	{
+		final
+		List<XMLEvent> retval = new ArrayList<XMLEvent>();
+
+		retval.add(start);
+
+		int depth = 1;
+
+		while (depth > 0)
+		{
+			final
+			XMLEvent event = reader.nextEvent();
+
+			if (event.isStartElement())
+			{
+				depth++;
+			}
+			else
+			if (event.isEndElement())
+			{
+				depth--;
+			}
+
+			retval.add(event);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * @return the pkgid of a package subtree, be it an attribute (filelists, other) or a checksum element (primary)
+	 */
+	private static
+	String pkgIdOf(List<XMLEvent> subtree)
+	{
+		final
+		String attribute = attribute(subtree.get(0).asStartElement(), "pkgid");
+
+		if (attribute != null)
+		{
+			return attribute;
+		}
+
+		for (int i = 1; i < subtree.size() - 1; i++)
+		{
+			final
+			XMLEvent event = subtree.get(i);
+
+			if (isStart(event, "checksum") && "YES".equals(attribute(event.asStartElement(), "pkgid")))
+			{
+				final
+				StringBuilder sb = new StringBuilder();
+
+				for (int j = i + 1; j < subtree.size() && subtree.get(j).isCharacters(); j++)
+				{
+					sb.append(subtree.get(j).asCharacters().getData());
+				}
+
+				return sb.toString().trim();
+			}
+		}
+
+		return null;
+	}
+
+	private static
+	void copy(XMLEvent event, XMLStreamWriter w) throws XMLStreamException
+	{
+		if (event.isStartElement())
+		{
+			copyStart(event.asStartElement(), w, null, null);
+		}
+		else
+		if (event.isEndElement())
+		{
+			w.writeEndElement();
+		}
+		else
+		if (event.isCharacters())
+		{
+			final
+			Characters characters = event.asCharacters();
+
+			if (characters.isCData())
+			{
+				w.writeCData(characters.getData());
+			}
+			else
+			{
+				w.writeCharacters(characters.getData());
+			}
+		}
+	}
+
+	/**
+	 * Writes the given start element, optionally replacing (or adding) one of it's attributes.
+	 */
+	@SuppressWarnings("unchecked")
+	private static
+	void copyStart(StartElement element, XMLStreamWriter w, String attributeName, String attributeValue)
+		throws XMLStreamException
+	{
+		final
+		QName name = element.getName();
+
+		w.writeStartElement(name.getPrefix(), name.getLocalPart(), name.getNamespaceURI());
+
+		final
+		Iterator<Namespace> namespaces = element.getNamespaces();
+
+		while (namespaces.hasNext())
+		{
+			final
+			Namespace namespace = namespaces.next();
+
+			if (namespace.isDefaultNamespaceDeclaration())
+			{
+				w.writeDefaultNamespace(namespace.getNamespaceURI());
+			}
+			else
+			{
+				w.writeNamespace(namespace.getPrefix(), namespace.getNamespaceURI());
+			}
+		}
+
+		final
+		Iterator<Attribute> attributes = element.getAttributes();
+
+		while (attributes.hasNext())
+		{
+			final
+			Attribute attribute = attributes.next();
+
+			final
+			QName attributeQName = attribute.getName();
+
+			if (attributeQName.getLocalPart().equals(attributeName) && attributeQName.getNamespaceURI().length() == 0)
+			{
+				continue;
+			}
+
+			if (attributeQName.getNamespaceURI().length() == 0)
+			{
+				w.writeAttribute(attributeQName.getLocalPart(), attribute.getValue());
+			}
+			else
+			{
+				w.writeAttribute(attributeQName.getPrefix(), attributeQName.getNamespaceURI(), attributeQName.getLocalPart(),
+									attribute.getValue());
+			}
+		}
+
+		if (attributeName != null)
+		{
+			w.writeAttribute(attributeName, attributeValue);
+		}
+	}
+
+	/**
+	 * Counts (and sha256 digests) the bytes that pass through it.
+	 */
+	private static
+	class Digesting extends FilterOutputStream
+	{
+		private final
+		MessageDigest digest = sha256();
+
+		long count;
+
+		Digesting(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public
+		void write(int b) throws IOException
+		{
+			out.write(b);
+			digest.update((byte) b);
+			count++;
+		}
+
+		@Override
+		public
+		void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			digest.update(b, off, len);
+			count += len;
+		}
+
+		String hex()
+		{
+			return hex(digest.digest());
+		}
+
+		static
+		String hex(byte[] bytes)
+		{
+			final
+			StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+			for (byte b : bytes)
+			{
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+
+			return sb.toString();
+		}
+	}
+
+	private static
+	MessageDigest sha256()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.github.osndok.mrb.grinder.util;
+
+/**
+ * A fixed-size set of strings that can answer "definitely not present" in constant time (and without
+ * touching the disk), at the cost of occasionally answering "maybe present" for a string that was never added.
+ *
+ * The k bit positions are derived from two 32-bit hashes of the string (Kirsch & Mitzenmacher), so no
+ * string is ever hashed more than twice. Sized for the given number of strings at about a 1% false positive
+ * rate; adding more than that still works, but with a gradually increasing false positive rate.
+ *
+ * NB: not thread-safe.
+ */
+public
+class BloomFilter
+{
+	private final
+	long[] bits;
+
+	private final
+	int numBits;
+
+	private final
+	int numHashes;
+
+	private
+	int size;
+
+	public
+	BloomFilter(int expectedSize)
+	{
+		final
+		int n = Math.max(expectedSize, 64);
+
+		//m = -n ln(p) / (ln 2)^2, for p=0.01, is about 9.6 bits per entry... and k = (m/n) ln 2, is about 7
+		final
+		long m = (long) Math.ceil(n * 9.6);
+
+		this.numBits = (int) Math.min(m, Integer.MAX_VALUE - 63);
+		this.bits = new long[(numBits + 63) / 64];
+		this.numHashes = 7;
+	}
+
+	public
+	void add(String s)
+	{
+		final
+		int h1 = s.hashCode();
+
+		final
+		int h2 = mix(h1);
+
+		for (int i = 0; i < numHashes; i++)
+		{
+			final
+			int bit = index(h1 + i * h2);
+
+			bits[bit >>> 6] |= (1L << (bit & 63));
+		}
+
+		size++;
+	}
+
+	/**
+	 * @return false if the given string was certainly never added, true if it (probably) was
+	 */
+	public
+	boolean mightContain(String s)
+	{
+		final
+		int h1 = s.hashCode();
+
+		final
+		int h2 = mix(h1);
+
+		for (int i = 0; i < numHashes; i++)
+		{
+			final
+			int bit = index(h1 + i * h2);
+
+			if ((bits[bit >>> 6] & (1L << (bit & 63))) == 0)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the number of strings added (including any duplicates)
+	 */
+	public
+	int size()
+	{
+		return size;
+	}
+
+	private
+	int index(int hash)
+	{
+		return (hash & Integer.MAX_VALUE) % numBits;
+	}
+
+	/**
+	 * The murmur3 finalizer, which turns String.hashCode() into a second (well distributed) hash.
+	 */
+	private static
+	int mix(int h)
+	{
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+
+		//An even step would only ever visit half of the bit positions.
+		return h | 1;
+	}
+}
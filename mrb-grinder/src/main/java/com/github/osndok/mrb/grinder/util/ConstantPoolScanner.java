@@ -0,0 +1,457 @@
+package com.github.osndok.mrb.grinder.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads just enough of a class file to list the classes that it refers to (i.e. the CONSTANT_Class entries of
+ * its constant pool), its access flags, and whether it mentions any of a few "marker" strings (e.g. an
+ * annotation type), such that a full parse can be reserved for the classes that might actually need one.
+ *
+ * The class bytes are read into a buffer that is reused from one class to the next (and remains available
+ * for a full parse), and the class names are interned by this scanner, such that a name that is referenced
+ * by many classes is only ever decoded (and allocated) once.
+ *
+ * NB: not thread-safe, use one per thread (or jar).
+ */
+public
+class ConstantPoolScanner
+{
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private static final int CONSTANT_Utf8               = 1;
+	private static final int CONSTANT_Integer            = 3;
+	private static final int CONSTANT_Float              = 4;
+	private static final int CONSTANT_Long               = 5;
+	private static final int CONSTANT_Double             = 6;
+	private static final int CONSTANT_Class              = 7;
+	private static final int CONSTANT_String             = 8;
+	private static final int CONSTANT_Fieldref           = 9;
+	private static final int CONSTANT_Methodref          = 10;
+	private static final int CONSTANT_InterfaceMethodref = 11;
+	private static final int CONSTANT_NameAndType        = 12;
+	private static final int CONSTANT_MethodHandle       = 15;
+	private static final int CONSTANT_MethodType         = 16;
+	private static final int CONSTANT_Dynamic            = 17;
+	private static final int CONSTANT_InvokeDynamic      = 18;
+	private static final int CONSTANT_Module             = 19;
+	private static final int CONSTANT_Package            = 20;
+
+	private final
+	byte[][] markers;
+
+	private
+	byte[] bytes = new byte[16 * 1024];
+
+	private
+	int length;
+
+	/**
+	 * The offset of each Utf8 entry (of its two-byte length), by constant pool index.
+	 */
+	private
+	int[] utf8Offsets = new int[1024];
+
+	/**
+	 * The Utf8 indexes of the class entries, in constant pool order.
+	 */
+	private
+	int[] classNameIndexes = new int[256];
+
+	private
+	int accessFlags;
+
+	private
+	boolean hasMarker;
+
+	private final
+	List<String> classNames = new ArrayList<String>();
+
+	/**
+	 * @param markers strings (e.g. "Ljavax/module/Plugin;") whose presence in a class's constant pool is reported by hasMarker()
+	 */
+	public
+	ConstantPoolScanner(Collection<String> markers)
+	{
+		this.markers = new byte[markers.size()][];
+
+		int i = 0;
+
+		for (String marker : markers)
+		{
+			this.markers[i++] = marker.getBytes(ISO_8859_1);
+		}
+	}
+
+	/**
+	 * Reads (all of) the given class file, and closes the stream.
+	 */
+	public
+	void scan(InputStream in) throws IOException
+	{
+		try
+		{
+			length = 0;
+
+			int read;
+
+			while ((read = in.read(bytes, length, bytes.length - length)) >= 0)
+			{
+				length += read;
+
+				if (length == bytes.length)
+				{
+					final
+					byte[] bigger = new byte[bytes.length * 2];
+
+					System.arraycopy(bytes, 0, bigger, 0, length);
+					bytes = bigger;
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		parse();
+	}
+
+	private
+	void parse() throws IOException
+	{
+		if (length < 10 || u2(0) != 0xCAFE || u2(2) != 0xBABE)
+		{
+			throw new IOException("not a class file");
+		}
+
+		final
+		int count = u2(8);
+
+		if (utf8Offsets.length < count)
+		{
+			utf8Offsets = new int[count];
+		}
+
+		hasMarker = false;
+		classNames.clear();
+
+		int classes = 0;
+		int offset = 10;
+
+		for (int i = 1; i < count; i++)
+		{
+			final
+			int tag = bytes[offset] & 0xff;
+
+			switch (tag)
+			{
+				case CONSTANT_Utf8:
+				{
+					utf8Offsets[i] = offset + 1;
+
+					final
+					int utf8Length = u2(offset + 1);
+
+					if (!hasMarker)
+					{
+						hasMarker = isMarker(offset + 3, utf8Length);
+					}
+
+					offset += 3 + utf8Length;
+					break;
+				}
+
+				case CONSTANT_Class:
+					if (classes == classNameIndexes.length)
+					{
+						final
+						int[] bigger = new int[classes * 2];
+
+						System.arraycopy(classNameIndexes, 0, bigger, 0, classes);
+						classNameIndexes = bigger;
+					}
+
+					classNameIndexes[classes++] = u2(offset + 1);
+					offset += 3;
+					break;
+
+				case CONSTANT_String:
+				case CONSTANT_MethodType:
+				case CONSTANT_Module:
+				case CONSTANT_Package:
+					offset += 3;
+					break;
+
+				case CONSTANT_MethodHandle:
+					offset += 4;
+					break;
+
+				case CONSTANT_Integer:
+				case CONSTANT_Float:
+				case CONSTANT_Fieldref:
+				case CONSTANT_Methodref:
+				case CONSTANT_InterfaceMethodref:
+				case CONSTANT_NameAndType:
+				case CONSTANT_Dynamic:
+				case CONSTANT_InvokeDynamic:
+					offset += 5;
+					break;
+
+				case CONSTANT_Long:
+				case CONSTANT_Double:
+					//NB: these take up two slots.
+					offset += 9;
+					i++;
+					break;
+
+				default:
+					throw new IOException("unknown constant pool tag " + tag + " at index " + i);
+			}
+
+			if (offset > length)
+			{
+				throw new IOException("truncated constant pool");
+			}
+		}
+
+		if (offset + 2 > length)
+		{
+			throw new IOException("truncated class file");
+		}
+
+		accessFlags = u2(offset);
+
+		for (int i = 0; i < classes; i++)
+		{
+			final
+			int utf8Offset = utf8Offsets[classNameIndexes[i]];
+
+			//Arrays (e.g. "[Ljava/lang/String;") are not classes that one can depend upon.
+			if (bytes[utf8Offset + 2] != '[')
+			{
+				classNames.add(intern(utf8Offset));
+			}
+		}
+	}
+
+	private
+	boolean isMarker(int start, int utf8Length)
+	{
+		for (byte[] marker : markers)
+		{
+			if (marker.length == utf8Length && regionEquals(marker, start))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private
+	boolean regionEquals(byte[] key, int start)
+	{
+		for (int i = 0; i < key.length; i++)
+		{
+			if (key[i] != bytes[start + i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private
+	int u2(int offset)
+	{
+		return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+	}
+
+	/**
+	 * @return the class's access flags (e.g. ACC_PUBLIC=0x0001, ACC_ABSTRACT=0x0400), as of the last scan
+	 */
+	public
+	int getAccessFlags()
+	{
+		return accessFlags;
+	}
+
+	public
+	boolean isPublic()
+	{
+		return (accessFlags & 0x0001) != 0;
+	}
+
+	/**
+	 * @return true for abstract classes and interfaces
+	 */
+	public
+	boolean isAbstract()
+	{
+		return (accessFlags & 0x0400) != 0;
+	}
+
+	/**
+	 * @return true if the last scanned class contains any of the marker strings
+	 */
+	public
+	boolean hasMarker()
+	{
+		return hasMarker;
+	}
+
+	/**
+	 * @return the (slash-separated) names of the classes referred to by the last scanned class, which is only valid until the next scan
+	 */
+	public
+	List<String> getClassNames()
+	{
+		return classNames;
+	}
+
+	/**
+	 * @return a stream of the last scanned class file, for when a full parse is needed after all
+	 */
+	public
+	InputStream asInputStream()
+	{
+		return new ByteArrayInputStream(bytes, 0, length);
+	}
+
+	//-------------------- the intern table: open addressing, keyed by the (modified utf-8) bytes -----------------
+
+	private
+	byte[][] internKeys = new byte[4096][];
+
+	private
+	String[] internValues = new String[4096];
+
+	private
+	int internSize;
+
+	/**
+	 * @return the number of distinct class names decoded so far
+	 */
+	public
+	int getInternedCount()
+	{
+		return internSize;
+	}
+
+	private
+	String intern(int utf8Offset) throws IOException
+	{
+		final
+		int start = utf8Offset + 2;
+
+		final
+		int utf8Length = u2(utf8Offset);
+
+		final
+		int mask = internKeys.length - 1;
+
+		int slot = hash(bytes, start, utf8Length) & mask;
+
+		byte[] key;
+
+		while ((key = internKeys[slot]) != null)
+		{
+			if (key.length == utf8Length && regionEquals(key, start))
+			{
+				return internValues[slot];
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		final
+		String retval = decode(utf8Offset, start, utf8Length);
+
+		key = new byte[utf8Length];
+		System.arraycopy(bytes, start, key, 0, utf8Length);
+
+		internKeys[slot] = key;
+		internValues[slot] = retval;
+
+		if (++internSize * 2 > internKeys.length)
+		{
+			growInternTable();
+		}
+
+		return retval;
+	}
+
+	/**
+	 * FNV-1a
+	 */
+	private static
+	int hash(byte[] array, int start, int length)
+	{
+		int retval = 0x811c9dc5;
+
+		for (int i = start; i < start + length; i++)
+		{
+			retval = (retval ^ array[i]) * 0x01000193;
+		}
+
+		return retval;
+	}
+
+	private
+	String decode(int utf8Offset, int start, int utf8Length) throws IOException
+	{
+		for (int i = start; i < start + utf8Length; i++)
+		{
+			if (bytes[i] < 0)
+			{
+				//NB: the class file's "modified" utf-8 is exactly what DataInput expects (length prefix included).
+				return new DataInputStream(new ByteArrayInputStream(bytes, utf8Offset, utf8Length + 2)).readUTF();
+			}
+		}
+
+		return new String(bytes, start, utf8Length, ISO_8859_1);
+	}
+
+	private
+	void growInternTable()
+	{
+		final
+		byte[][] oldKeys = internKeys;
+
+		final
+		String[] oldValues = internValues;
+
+		internKeys = new byte[oldKeys.length * 2][];
+		internValues = new String[oldKeys.length * 2];
+
+		final
+		int mask = internKeys.length - 1;
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			final
+			byte[] key = oldKeys[i];
+
+			if (key != null)
+			{
+				int slot = hash(key, 0, key.length) & mask;
+
+				while (internKeys[slot] != null)
+				{
+					slot = (slot + 1) & mask;
+				}
+
+				internKeys[slot] = key;
+				internValues[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package com.github.osndok.mrb.grinder.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A simple directed graph of "node requires node" edges, with the minimal amount of
+ * machinery needed to process the nodes in dependency order (leaves first).
+ *
+ * Insertion order is preserved throughout, so that two runs over the same input will
+ * produce the same ordering (and the same cycle report).
+ *
+ * NB: not thread-safe; the expectation is that the graph is built up-front and then handed
+ * to a single scheduling thread.
+ */
+public
+class DependencyGraph<T>
+{
+	private final
+	Map<T, Set<T>> requirementsByNode = new LinkedHashMap<T, Set<T>>();
+
+	private final
+	Map<T, Set<T>> dependentsByNode = new LinkedHashMap<T, Set<T>>();
+
+	public
+	boolean addNode(T node)
+	{
+		if (requirementsByNode.containsKey(node))
+		{
+			return false;
+		}
+
+		requirementsByNode.put(node, new LinkedHashSet<T>());
+		dependentsByNode.put(node, new LinkedHashSet<T>());
+		return true;
+	}
+
+	/**
+	 * Records that 'node' cannot be processed until 'requirement' has been processed.
+	 * Either node is implicitly added, if not already present.
+	 */
+	public
+	void addEdge(T node, T requirement)
+	{
+		addNode(node);
+		addNode(requirement);
+
+		requirementsByNode.get(node).add(requirement);
+		dependentsByNode.get(requirement).add(node);
+	}
+
+	public
+	boolean contains(T node)
+	{
+		return requirementsByNode.containsKey(node);
+	}
+
+	public
+	int size()
+	{
+		return requirementsByNode.size();
+	}
+
+	public
+	Set<T> getNodes()
+	{
+		return Collections.unmodifiableSet(requirementsByNode.keySet());
+	}
+
+	public
+	Set<T> getRequirements(T node)
+	{
+		return unmodifiable(requirementsByNode.get(node));
+	}
+
+	public
+	Set<T> getDependents(T node)
+	{
+		return unmodifiable(dependentsByNode.get(node));
+	}
+
+	private static <T>
+	Set<T> unmodifiable(Set<T> set)
+	{
+		if (set==null)
+		{
+			return Collections.emptySet();
+		}
+		else
+		{
+			return Collections.unmodifiableSet(set);
+		}
+	}
+
+	/**
+	 * @return the number of requirements for each node, suitable for counting-down as requirements are satisfied.
+	 */
+	public
+	Map<T, Integer> getRequirementCounts()
+	{
+		final
+		Map<T, Integer> retval=new LinkedHashMap<T, Integer>(requirementsByNode.size());
+
+		for (Map.Entry<T, Set<T>> me : requirementsByNode.entrySet())
+		{
+			retval.put(me.getKey(), me.getValue().size());
+		}
+
+		return retval;
+	}
+
+	/**
+	 * @return all the nodes, such that every node appears *after* all of its requirements (Kahn's algorithm).
+	 * @throws IllegalStateException if the graph contains a cycle, which is described in the message.
+	 */
+	public
+	List<T> topologicalOrder()
+	{
+		final
+		Map<T, Integer> remaining=getRequirementCounts();
+
+		final
+		List<T> retval=new ArrayList<T>(remaining.size());
+
+		for (Map.Entry<T, Integer> me : remaining.entrySet())
+		{
+			if (me.getValue()==0)
+			{
+				retval.add(me.getKey());
+			}
+		}
+
+		//NB: 'retval' doubles as the work queue.
+		for (int i=0; i<retval.size(); i++)
+		{
+			for (T dependent : dependentsByNode.get(retval.get(i)))
+			{
+				final
+				int count=remaining.get(dependent)-1;
+
+				remaining.put(dependent, count);
+
+				if (count==0)
+				{
+					retval.add(dependent);
+				}
+			}
+		}
+
+		if (retval.size()!=requirementsByNode.size())
+		{
+			throw new IllegalStateException("dependency cycle: "+findCycle());
+		}
+
+		return retval;
+	}
+
+	/**
+	 * @return a list of nodes forming a cycle (where the first node is repeated at the end), or null if the graph is acyclic.
+	 */
+	public
+	List<T> findCycle()
+	{
+		final
+		Set<T> finished=new LinkedHashSet<T>();
+
+		for (T node : requirementsByNode.keySet())
+		{
+			final
+			List<T> cycle=findCycle(node, new ArrayList<T>(), new LinkedHashSet<T>(), finished);
+
+			if (cycle!=null)
+			{
+				return cycle;
+			}
+		}
+
+		return null;
+	}
+
+	private
+	List<T> findCycle(T node, List<T> path, Set<T> onPath, Set<T> finished)
+	{
+		if (finished.contains(node))
+		{
+			return null;
+		}
+
+		if (onPath.contains(node))
+		{
+			final
+			List<T> cycle=new ArrayList<T>(path.subList(path.indexOf(node), path.size()));
+
+			cycle.add(node);
+			return cycle;
+		}
+
+		path.add(node);
+		onPath.add(node);
+
+		for (T requirement : requirementsByNode.get(node))
+		{
+			final
+			List<T> cycle=findCycle(requirement, path, onPath, finished);
+
+			if (cycle!=null)
+			{
+				return cycle;
+			}
+		}
+
+		path.remove(path.size()-1);
+		onPath.remove(node);
+		finished.add(node);
+
+		return null;
+	}
+
+	/**
+	 * @return every node that (directly or indirectly) requires any of the given nodes, not including the given nodes themselves.
+	 */
+	public
+	Set<T> allDependentsOf(Collection<T> nodes)
+	{
+		final
+		Set<T> retval=new LinkedHashSet<T>();
+
+		final
+		List<T> queue=new ArrayList<T>(nodes);
+
+		for (int i=0; i<queue.size(); i++)
+		{
+			for (T dependent : getDependents(queue.get(i)))
+			{
+				if (retval.add(dependent))
+				{
+					queue.add(dependent);
+				}
+			}
+		}
+
+		retval.removeAll(nodes);
+		return retval;
+	}
+}
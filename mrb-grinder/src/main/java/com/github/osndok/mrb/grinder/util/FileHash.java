@@ -0,0 +1,284 @@
+package com.github.osndok.mrb.grinder.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.module.util.SystemPropertyOrEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-process SHA-256 hashing of files (as was once done by forking 'sha256sum'), with the results remembered by
+ * the file's identity and (size, mtime), such that the same jar is not hashed twice in one grind. Optionally,
+ * the hash is also stored in a 'user.mrb.sha256' extended attribute, such that later runs need not hash it at all.
+ */
+public
+class FileHash
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(FileHash.class);
+
+	private static final
+	Charset US_ASCII = Charset.forName("US-ASCII");
+
+	private static final
+	int BUFFER_SIZE = 1024 * 1024;
+
+	private static final
+	int MEMO_SIZE = Integer.parseInt(SystemPropertyOrEnvironment.get("FILE_HASH_MEMO_SIZE", "10000"));
+
+	/**
+	 * Whether to read & write the hash in an extended attribute (silently ignored where unsupported).
+	 */
+	private static final
+	boolean FILE_HASH_XATTR = SystemPropertyOrEnvironment.getBoolean("FILE_HASH_XATTR", true);
+
+	/**
+	 * NB: the "user." namespace is implied by the UserDefinedFileAttributeView.
+	 */
+	private static final
+	String XATTR_NAME = "mrb.sha256";
+
+	private static final
+	char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static
+	class Key
+	{
+		final String path;
+		final Object fileKey;
+		final long   size;
+		final long   lastModified;
+
+		Key(String path, BasicFileAttributes attributes)
+		{
+			this.path = path;
+			this.fileKey = attributes.fileKey();
+			this.size = attributes.size();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+		}
+
+		/**
+		 * @return the part of this key that (unlike the path) can be checked against a file's extended attribute
+		 */
+		String stamp()
+		{
+			return size + ":" + lastModified;
+		}
+
+		@Override
+		public
+		boolean equals(Object o)
+		{
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+
+			final
+			Key key = (Key) o;
+
+			return size == key.size
+				&& lastModified == key.lastModified
+				&& path.equals(key.path)
+				&& (fileKey == null ? key.fileKey == null : fileKey.equals(key.fileKey));
+		}
+
+		@Override
+		public
+		int hashCode()
+		{
+			int result = path.hashCode();
+			result = 31 * result + (fileKey != null ? fileKey.hashCode() : 0);
+			result = 31 * result + (int) (size ^ (size >>> 32));
+			result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+			return result;
+		}
+	}
+
+	private static final
+	Map<Key, String> memo = new LinkedHashMap<Key, String>(256, 0.75f, true)
+	{
+		@Override
+		protected
+		boolean removeEldestEntry(Map.Entry<Key, String> eldest)
+		{
+			return size() > MEMO_SIZE;
+		}
+	};
+
+	/**
+	 * @return the lowercase hex SHA-256 of the given file's contents (as 'sha256sum' would print it)
+	 */
+	public static
+	String sha256(File file) throws IOException
+	{
+		final
+		Path path = file.getCanonicalFile().toPath();
+
+		final
+		Key key = new Key(path.toString(), Files.readAttributes(path, BasicFileAttributes.class));
+
+		synchronized (memo)
+		{
+			final
+			String retval = memo.get(key);
+
+			if (retval != null)
+			{
+				return retval;
+			}
+		}
+
+		String retval = (FILE_HASH_XATTR ? readAttribute(path, key) : null);
+
+		if (retval == null)
+		{
+			retval = hash(path);
+
+			if (FILE_HASH_XATTR)
+			{
+				writeAttribute(path, key, retval);
+			}
+		}
+
+		synchronized (memo)
+		{
+			memo.put(key, retval);
+		}
+
+		return retval;
+	}
+
+	private static
+	String hash(Path path) throws IOException
+	{
+		final
+		MessageDigest messageDigest;
+
+		try
+		{
+			messageDigest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException(e);
+		}
+
+		final
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try
+		{
+			final
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(channel.size(), BUFFER_SIZE)));
+
+			while (channel.read(buffer) >= 0)
+			{
+				buffer.flip();
+				messageDigest.update(buffer);
+				buffer.clear();
+			}
+		}
+		finally
+		{
+			channel.close();
+		}
+
+		final
+		byte[] digest = messageDigest.digest();
+
+		final
+		char[] retval = new char[digest.length * 2];
+
+		for (int i = 0; i < digest.length; i++)
+		{
+			retval[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+			retval[2 * i + 1] = HEX[digest[i] & 0xf];
+		}
+
+		return new String(retval);
+	}
+
+	/**
+	 * @return the hash stored in the file's extended attribute, if it was stored for this very size & mtime
+	 */
+	private static
+	String readAttribute(Path path, Key key)
+	{
+		try
+		{
+			final
+			UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+
+			if (view == null || !view.list().contains(XATTR_NAME))
+			{
+				return null;
+			}
+
+			final
+			ByteBuffer buffer = ByteBuffer.allocate(view.size(XATTR_NAME));
+
+			view.read(XATTR_NAME, buffer);
+			buffer.flip();
+
+			//e.g. "12345:1414771200000:<hex>"
+			final
+			String value = US_ASCII.decode(buffer).toString();
+
+			final
+			String stamp = key.stamp() + ':';
+
+			if (value.startsWith(stamp) && value.length() == stamp.length() + 64)
+			{
+				return value.substring(stamp.length());
+			}
+
+			log.debug("stale hash attribute: {}", path);
+		}
+		catch (IOException e)
+		{
+			log.debug("unable to read hash attribute of {}: {}", path, e.toString());
+		}
+		catch (UnsupportedOperationException e)
+		{
+			log.debug("unable to read hash attribute of {}: {}", path, e.toString());
+		}
+
+		return null;
+	}
+
+	private static
+	void writeAttribute(Path path, Key key, String hash)
+	{
+		try
+		{
+			final
+			UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+
+			if (view != null)
+			{
+				view.write(XATTR_NAME, US_ASCII.encode(key.stamp() + ':' + hash));
+			}
+		}
+		catch (IOException e)
+		{
+			//e.g. a read-only file (or file system), or one that does not support extended attributes.
+			log.debug("unable to write hash attribute of {}: {}", path, e.toString());
+		}
+		catch (UnsupportedOperationException e)
+		{
+			log.debug("unable to write hash attribute of {}: {}", path, e.toString());
+		}
+	}
+}
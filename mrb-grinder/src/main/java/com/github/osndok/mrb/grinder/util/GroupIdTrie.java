@@ -0,0 +1,186 @@
+package com.github.osndok.mrb.grinder.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable longest-prefix-match table for maven groupIds, such that routing a groupId costs one
+ * hash lookup per dot-separated segment (e.g. "com", "example", "thing"), rather than a comparison with
+ * every configured prefix.
+ *
+ * The matching is exactly that of String.startsWith(), so a prefix need not end on a segment boundary
+ * (i.e. "com.exam" matches "com.example.thing"). Internally, all but the last segment of a prefix select
+ * a node of the trie, and the last (possibly partial, or empty) segment is kept as a "tail" of that node,
+ * to be compared against the next segment of the groupId.
+ */
+public
+class GroupIdTrie<T>
+{
+	private static
+	class Tail<T>
+	{
+		final String segmentPrefix;
+		final String prefix;
+		final T      value;
+
+		Tail(String segmentPrefix, String prefix, T value)
+		{
+			this.segmentPrefix = segmentPrefix;
+			this.prefix = prefix;
+			this.value = value;
+		}
+	}
+
+	private static
+	class Node<T>
+	{
+		final Map<String, Node<T>> children = new HashMap<String, Node<T>>();
+
+		/**
+		 * Longest first, so that the first match is the best match.
+		 */
+		final List<Tail<T>> tails = new ArrayList<Tail<T>>(1);
+	}
+
+	private final
+	Node<T> root;
+
+	private final
+	int size;
+
+	private
+	GroupIdTrie(Node<T> root, int size)
+	{
+		this.root = root;
+		this.size = size;
+	}
+
+	public static
+	<T> GroupIdTrie<T> compile(Map<String, T> valuesByPrefix)
+	{
+		final
+		Node<T> root = new Node<T>();
+
+		for (Map.Entry<String, T> me : valuesByPrefix.entrySet())
+		{
+			final
+			String prefix = me.getKey();
+
+			final
+			String[] segments = prefix.split("\\.", -1);
+
+			Node<T> node = root;
+
+			for (int i = 0; i < segments.length - 1; i++)
+			{
+				Node<T> child = node.children.get(segments[i]);
+
+				if (child == null)
+				{
+					child = new Node<T>();
+					node.children.put(segments[i], child);
+				}
+
+				node = child;
+			}
+
+			node.tails.add(new Tail<T>(segments[segments.length - 1], prefix, me.getValue()));
+		}
+
+		sortTails(root);
+
+		return new GroupIdTrie<T>(root, valuesByPrefix.size());
+	}
+
+	private static
+	<T> void sortTails(Node<T> node)
+	{
+		Collections.sort(node.tails, new Comparator<Tail<T>>()
+		{
+			@Override
+			public
+			int compare(Tail<T> a, Tail<T> b)
+			{
+				return b.segmentPrefix.length() - a.segmentPrefix.length();
+			}
+		});
+
+		for (Node<T> child : node.children.values())
+		{
+			sortTails(child);
+		}
+	}
+
+	/**
+	 * @return the value of the longest prefix of the given groupId, or null if no prefix matches
+	 */
+	public
+	T get(String groupId)
+	{
+		final
+		Tail<T> tail = longestMatch(groupId);
+
+		return (tail == null ? null : tail.value);
+	}
+
+	/**
+	 * @return the longest prefix of the given groupId, or null if no prefix matches
+	 */
+	public
+	String getMatchingPrefix(String groupId)
+	{
+		final
+		Tail<T> tail = longestMatch(groupId);
+
+		return (tail == null ? null : tail.prefix);
+	}
+
+	private
+	Tail<T> longestMatch(String groupId)
+	{
+		Tail<T> retval = null;
+
+		Node<T> node = root;
+
+		int start = 0;
+
+		while (node != null)
+		{
+			final
+			int dot = groupId.indexOf('.', start);
+
+			final
+			String segment = (dot < 0 ? groupId.substring(start) : groupId.substring(start, dot));
+
+			//A deeper match is always longer than a shallower one, so we need only remember the last.
+			for (Tail<T> tail : node.tails)
+			{
+				if (segment.startsWith(tail.segmentPrefix))
+				{
+					retval = tail;
+					break;
+				}
+			}
+
+			if (dot < 0)
+			{
+				break;
+			}
+
+			node = node.children.get(segment);
+			start = dot + 1;
+		}
+
+		return retval;
+	}
+
+	public
+	int size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,121 @@
+package com.github.osndok.mrb.grinder.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The file operations of grinding (temporary directories, copies, and their cleanup), done in-process rather
+ * than by forking 'mktemp', 'cp', and 'rm' (each of which costs a process and two gobbler threads).
+ */
+public
+class Workspace
+{
+	private static final
+	Logger log = LoggerFactory.getLogger(Workspace.class);
+
+	/**
+	 * @return a new, empty, directory (e.g. "/tmp/mrb-grinder-1234567890") that only this user can access
+	 */
+	public static
+	File createTempDirectory(String prefix) throws IOException
+	{
+		return Files.createTempDirectory(prefix).toFile();
+	}
+
+	/**
+	 * Places the contents of the given file at the given destination (replacing any file that is already there),
+	 * preferably as a hard link, which only works within one file system, and is only safe because neither copy is
+	 * ever modified in place. Otherwise, the bytes are copied. Does nothing if they are already the same file.
+	 */
+	public static
+	void linkOrCopy(File from, File to) throws IOException
+	{
+		final
+		Path source = from.toPath();
+
+		final
+		Path target = to.toPath();
+
+		//NB: otherwise, the delete would destroy the only copy.
+		if (Files.exists(target) && Files.isSameFile(source, target))
+		{
+			log.debug("already the same file: {} = {}", from, to);
+			return;
+		}
+
+		Files.deleteIfExists(target);
+
+		try
+		{
+			Files.createLink(target, source);
+			log.debug("linked: {} -> {}", from, to);
+			return;
+		}
+		catch (IOException e)
+		{
+			//e.g. across file systems (EXDEV), or too many links.
+			log.debug("unable to link {} -> {}: {}", from, to, e.toString());
+		}
+		catch (UnsupportedOperationException e)
+		{
+			log.debug("unable to link {} -> {}: {}", from, to, e.toString());
+		}
+
+		Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+		log.debug("copied: {} -> {}", from, to);
+	}
+
+	/**
+	 * Deletes the given file or directory, and (without following any symbolic links) everything in it. Does
+	 * nothing if it does not exist.
+	 */
+	public static
+	void deleteRecursively(File file) throws IOException
+	{
+		try
+		{
+			Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public
+				FileVisitResult visitFile(Path path, BasicFileAttributes attributes) throws IOException
+				{
+					Files.delete(path);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public
+				FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException
+				{
+					if (e != null)
+					{
+						throw e;
+					}
+
+					Files.delete(dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		catch (NoSuchFileException e)
+		{
+			if (file.exists())
+			{
+				throw e;
+			}
+		}
+
+		log.debug("deleted: {}", file);
+	}
+}
@@ -0,0 +1,201 @@
+package com.github.osndok.mrb.grinder;
+
+import com.github.osndok.mrb.grinder.util.BloomFilter;
+import com.github.osndok.mrb.grinder.util.GroupIdTrie;
+import junit.framework.Assert;
+import org.osjava.jardiff.PublicDiffCriteria;
+import org.semver.Comparer;
+import org.semver.Delta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+public
+class ApiSignatureTest extends Assert
+{
+	public
+	void testAgreesWithComparer() throws IOException
+	{
+		final
+		File both = jarOf(BloomFilter.class, GroupIdTrie.class);
+
+		final
+		File one = jarOf(BloomFilter.class);
+
+		try
+		{
+			final
+			ApiSignature bothSignature = ApiSignature.of(both);
+
+			final
+			ApiSignature oneSignature = ApiSignature.of(one);
+
+			assertTrue(bothSignature.isCompatibleWithNewer(ApiSignature.of(both)));
+			assertTrue(comparerSays(both, both));
+
+			//a removed class...
+			assertFalse(bothSignature.isCompatibleWithNewer(oneSignature));
+			assertFalse(comparerSays(both, one));
+
+			//...and an added one.
+			assertFalse(oneSignature.isCompatibleWithNewer(bothSignature));
+			assertFalse(comparerSays(one, both));
+		}
+		finally
+		{
+			both.delete();
+			one.delete();
+		}
+	}
+
+	public
+	void testRoundTrip() throws IOException
+	{
+		final
+		File jar = jarOf(BloomFilter.class, GroupIdTrie.class);
+
+		try
+		{
+			final
+			ApiSignature original = ApiSignature.of(jar);
+
+			final
+			ApiSignature copy = ApiSignature.fromBytes(original.toBytes());
+
+			assertNotNull(copy);
+			assertEquals(original.size(), copy.size());
+			assertTrue(original.isCompatibleWithNewer(copy));
+			assertTrue(copy.isCompatibleWithNewer(original));
+		}
+		finally
+		{
+			jar.delete();
+		}
+	}
+
+	public
+	void testClassFileTooNew() throws IOException
+	{
+		final
+		byte[] bytes = classFile(BloomFilter.class);
+
+		//NB: major version 61 (Java 17), which the bundled asm does not understand.
+		bytes[6] = 0;
+		bytes[7] = 61;
+
+		final
+		Map<String, byte[]> classFilesByName = new LinkedHashMap<String, byte[]>();
+
+		classFilesByName.put(classFileName(BloomFilter.class), bytes);
+
+		final
+		File jar = jarOf(classFilesByName);
+
+		try
+		{
+			ApiSignature.of(jar);
+			fail("read an unsupported class file");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains(jar.toString()));
+		}
+		finally
+		{
+			jar.delete();
+		}
+	}
+
+	private
+	boolean comparerSays(File older, File newer) throws IOException
+	{
+		final
+		Delta delta = new Comparer(new PublicDiffCriteria(), older, newer, Collections.<String>emptySet(),
+									  Collections.<String>emptySet()).diff();
+
+		return delta.computeCompatibilityType() == Delta.CompatibilityType.BACKWARD_COMPATIBLE_IMPLEMENTER;
+	}
+
+	private
+	File jarOf(Class<?>... classes) throws IOException
+	{
+		final
+		Map<String, byte[]> classFilesByName = new LinkedHashMap<String, byte[]>();
+
+		for (Class<?> c : classes)
+		{
+			classFilesByName.put(classFileName(c), classFile(c));
+		}
+
+		return jarOf(classFilesByName);
+	}
+
+	private
+	File jarOf(Map<String, byte[]> classFilesByName) throws IOException
+	{
+		final
+		File retval = File.createTempFile("api-signature-test-", ".jar");
+
+		final
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(retval));
+
+		try
+		{
+			for (Map.Entry<String, byte[]> me : classFilesByName.entrySet())
+			{
+				out.putNextEntry(new ZipEntry(me.getKey()));
+				out.write(me.getValue());
+				out.closeEntry();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		return retval;
+	}
+
+	private
+	String classFileName(Class<?> c)
+	{
+		return c.getName().replace('.', '/') + ".class";
+	}
+
+	private
+	byte[] classFile(Class<?> c) throws IOException
+	{
+		final
+		InputStream in = c.getClassLoader().getResourceAsStream(classFileName(c));
+
+		try
+		{
+			final
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			final
+			byte[] buffer = new byte[4096];
+
+			int read;
+
+			while ((read = in.read(buffer)) > 0)
+			{
+				out.write(buffer, 0, read);
+			}
+
+			return out.toByteArray();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.github.osndok.mrb.grinder;
+
+import junit.framework.Assert;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+public
+class JarAnalysisTest extends Assert
+{
+	public
+	void testRoundTrip() throws IOException
+	{
+		final
+		Map<String, String> execClassesByToolName = new HashMap<String, String>();
+
+		execClassesByToolName.put("foo-v1", "com.example.Foo");
+		execClassesByToolName.put("foo-v1-Bar", "com.example.Bar");
+
+		final
+		Properties properties = new Properties();
+
+		properties.setProperty("CLASS_NAME", "com.example.Foo");
+		properties.setProperty("EXECUTE", "foo-v1");
+
+		final
+		Map<String, Properties> reactorPropertiesByPath = new HashMap<String, Properties>();
+
+		reactorPropertiesByPath.put("/etc/foo/foo-v1.reactor", properties);
+
+		final
+		Map<String, List<String>> pluginInterfacesByClassName = new HashMap<String, List<String>>();
+
+		pluginInterfacesByClassName.put("com.example.Plugged", Arrays.asList("com.example.Api", "java.lang.Runnable"));
+
+		final
+		Set<String> referencedClassNames = new TreeSet<String>(Arrays.asList("java/lang/Object", "com/example/Api"));
+
+		final
+		JarAnalysis copy = JarAnalysis.fromBytes(new JarAnalysis(execClassesByToolName, reactorPropertiesByPath,
+																	pluginInterfacesByClassName, referencedClassNames).toBytes());
+
+		assertEquals(execClassesByToolName, copy.getExecClassesByToolName());
+		assertEquals(reactorPropertiesByPath, copy.getReactorPropertiesByPath());
+		assertEquals(pluginInterfacesByClassName, copy.getPluginInterfacesByClassName());
+		assertEquals(referencedClassNames, copy.getReferencedClassNames());
+	}
+}
@@ -0,0 +1,127 @@
+package com.github.osndok.mrb.grinder;
+
+import com.github.osndok.mrb.grinder.rpm.RPMFixtures;
+import com.github.osndok.mrb.grinder.rpm.RPMRegistry;
+import com.github.osndok.mrb.grinder.rpm.RPMRepo;
+import com.github.osndok.mrb.grinder.util.Workspace;
+import junit.framework.Assert;
+import org.apache.bcel.Const;
+import org.apache.bcel.generic.AnnotationEntryGen;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ElementValuePairGen;
+import org.apache.bcel.generic.ObjectType;
+
+import javax.module.util.ModuleKey;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+public
+class MavenJarTest extends Assert
+{
+	public
+	void testPluginMappingColdAndCached() throws Exception
+	{
+		final
+		File dir = Workspace.createTempDirectory("mrb-maven-jar-test-");
+
+		try
+		{
+			final
+			File jar = pluginJar(new File(dir, "plugged-1.0.jar"));
+
+			final
+			RPMRepo rpmRepo = RPMFixtures.repo(new File(dir, "repo"));
+
+			final
+			ModuleKey moduleKey = new ModuleKey("plugged", "1", null);
+
+			final
+			Map<String, Set<String>> implementationsByInterface = new HashMap<String, Set<String>>();
+
+			//NB: the other interface (java.util.EventListener) is not provided by any (listed) dependency.
+			implementationsByInterface.put("com.example.Api", Collections.singleton("com.example.Plugged"));
+
+			final
+			Map<ModuleKey, Map<String, Set<String>>> expected = new HashMap<ModuleKey, Map<String, Set<String>>>();
+
+			expected.put(moduleKey, implementationsByInterface);
+
+			assertNull(rpmRepo.getRpmRegistry().getJarAnalysis(RPMRegistry.getJarHash(jar), moduleKey.toString()));
+			assertEquals(expected, grind(jar, rpmRepo, moduleKey));
+
+			assertNotNull(rpmRepo.getRpmRegistry().getJarAnalysis(RPMRegistry.getJarHash(jar), moduleKey.toString()));
+			assertEquals(expected, grind(jar, rpmRepo, moduleKey));
+		}
+		finally
+		{
+			Workspace.deleteRecursively(dir);
+		}
+	}
+
+	/**
+	 * Does as much of grinding the given jar as concerns plugins, and in the same order as RPMSpec.build() does,
+	 * which scans the classes (while listing the dependencies) before it asks for the plugin mapping.
+	 */
+	@SuppressWarnings("deprecation")
+	private
+	Map<ModuleKey, Map<String, Set<String>>> grind(File jar, RPMRepo rpmRepo, ModuleKey moduleKey) throws Exception
+	{
+		final
+		MavenJar mavenJar = new MavenJar(jar, new MavenInfo("com.example", "plugged", "1.0"));
+
+		mavenJar.setRpmRepo(rpmRepo);
+
+		//NB: as this jar has no pom, the dependencies are listed without scanning the classes, so scan them first.
+		mavenJar.getExecClassesByToolName(moduleKey);
+		mavenJar.listRpmDependencies(moduleKey, null);
+
+		return mavenJar.getPluginMapping(moduleKey);
+	}
+
+	/**
+	 * Writes a jar of an interface, and a @Plugin class that implements both it and an interface from elsewhere.
+	 */
+	private
+	File pluginJar(File file) throws IOException
+	{
+		final
+		ClassGen api = new ClassGen("com.example.Api", "java.lang.Object", "Api.java",
+									   Const.ACC_PUBLIC | Const.ACC_INTERFACE | Const.ACC_ABSTRACT, new String[0]);
+
+		final
+		ClassGen plugged = new ClassGen("com.example.Plugged", "java.lang.Object", "Plugged.java",
+										   Const.ACC_PUBLIC | Const.ACC_SUPER,
+										   new String[]{"com.example.Api", "java.util.EventListener"});
+
+		plugged.addEmptyConstructor(Const.ACC_PUBLIC);
+		plugged.addAnnotationEntry(new AnnotationEntryGen(new ObjectType("javax.module.Plugin"),
+															 Collections.<ElementValuePairGen>emptyList(), true,
+															 plugged.getConstantPool()));
+
+		final
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+
+		try
+		{
+			for (ClassGen classGen : new ClassGen[]{api, plugged})
+			{
+				out.putNextEntry(new ZipEntry(classGen.getClassName().replace('.', '/') + ".class"));
+				out.write(classGen.getJavaClass().getBytes());
+				out.closeEntry();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		return file;
+	}
+}
@@ -0,0 +1,49 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import com.github.osndok.mrb.grinder.util.Workspace;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.IOException;
+
+public
+class InnerJarCacheTest extends Assert
+{
+	public
+	void testHitsAndEviction() throws IOException
+	{
+		final
+		File dir = Workspace.createTempDirectory("mrb-jar-cache-");
+
+		try
+		{
+			RPM a = new RPM(rpm(dir, "a", 1000));
+			RPM b = new RPM(rpm(dir, "b", 1000));
+
+			//Room for only one of them.
+			InnerJarCache cache = new InnerJarCache(new File(dir, "cache"), 1500);
+
+			File first = cache.get(a);
+			assertEquals(1000, first.length());
+			assertEquals(first, cache.get(a));
+
+			//Pretend that 'a' has not been used in a while.
+			assertTrue(first.setLastModified(System.currentTimeMillis() - 3600 * 1000));
+
+			File second = cache.get(b);
+			assertFalse(first.equals(second));
+			assertTrue(second.exists());
+			assertFalse(first.exists());
+		}
+		finally
+		{
+			Workspace.deleteRecursively(dir);
+		}
+	}
+
+	private static
+	File rpm(File dir, String name, int jarSize) throws IOException
+	{
+		return RPMFixtures.rpm(dir, "mrb-" + name + "-v1", "1", "/usr/share/java/" + name + "-v1/" + name + ".jar", new byte[jarSize]);
+	}
+}
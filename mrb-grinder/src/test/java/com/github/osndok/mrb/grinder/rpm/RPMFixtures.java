@@ -0,0 +1,73 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Test fixtures for (and from outside of) the rpm package.
+ */
+public
+class RPMFixtures
+{
+	/**
+	 * @return a new repo in the given (new) directory, which has no metadata as yet
+	 */
+	public static
+	RPMRepo repo(File dir) throws IOException
+	{
+		final
+		File repodata = new File(dir, "repodata");
+
+		if (!repodata.mkdirs())
+		{
+			throw new IOException("unable to create: " + repodata);
+		}
+
+		return new RPMRepo(dir);
+	}
+
+	/**
+	 * @return a new (release zero) rpm in the given directory, which contains just the one file
+	 */
+	public static
+	File rpm(File dir, String name, String version, String path, byte[] contents) throws IOException
+	{
+		final
+		RPMWriter writer = new RPMWriter(name, version, "0");
+
+		writer.addFile(path, contents, 0644, RPMWriter.FILE_NONE);
+
+		return writer.write(dir);
+	}
+
+	/**
+	 * Reads the remainder of the given stream as UTF-8, and closes it.
+	 */
+	public static
+	String read(InputStream in) throws IOException
+	{
+		try
+		{
+			final
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+			final
+			byte[] buffer = new byte[4096];
+
+			int read;
+
+			while ((read = in.read(buffer)) > 0)
+			{
+				baos.write(buffer, 0, read);
+			}
+
+			return baos.toString("UTF-8");
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
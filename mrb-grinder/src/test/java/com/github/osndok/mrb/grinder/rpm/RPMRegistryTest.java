@@ -0,0 +1,71 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import com.github.osndok.mrb.grinder.ApiSignature;
+import com.github.osndok.mrb.grinder.MavenInfo;
+import com.github.osndok.mrb.grinder.util.Workspace;
+import junit.framework.Assert;
+
+import javax.module.util.ModuleKey;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.jar.JarOutputStream;
+
+public
+class RPMRegistryTest extends Assert
+{
+	public
+	void testBatch() throws IOException
+	{
+		final
+		File dir = Workspace.createTempDirectory("mrb-registry-test-");
+
+		try
+		{
+			final
+			RPMRegistry registry = RPMFixtures.repo(new File(dir, "repo")).getRpmRegistry();
+
+			final
+			File a = emptyJar(new File(dir, "a.jar"));
+
+			final
+			File b = emptyJar(new File(dir, "b-other.jar"));
+
+			final
+			MavenInfo aInfo = new MavenInfo("com.example", "a", "1.0");
+
+			final
+			ModuleKey aKey = new ModuleKey("a", "1", "0");
+
+			final
+			ModuleKey bKey = new ModuleKey("b", "1", "0");
+
+			final
+			RPMRegistry.Batch batch = new RPMRegistry.Batch();
+
+			batch.putApiSignature("digest-of-a", ApiSignature.of(a));
+			batch.append(aInfo, aKey, a);
+			batch.append(new MavenInfo("com.example", "b", "1.0"), bKey, b);
+
+			assertEquals(Arrays.asList(aKey, bKey), registry.commit(batch));
+			assertNotNull(registry.getApiSignature("digest-of-a"));
+			assertEquals(aKey, registry.get(aInfo));
+			assertEquals(aInfo, registry.getMavenInfoFor(a));
+
+			//...and an artifact that is already registered keeps its first module key.
+			assertEquals(aKey, registry.append(aInfo, new ModuleKey("a", "2", "0"), a));
+		}
+		finally
+		{
+			Workspace.deleteRecursively(dir);
+		}
+	}
+
+	private
+	File emptyJar(File file) throws IOException
+	{
+		new JarOutputStream(new FileOutputStream(file)).close();
+		return file;
+	}
+}
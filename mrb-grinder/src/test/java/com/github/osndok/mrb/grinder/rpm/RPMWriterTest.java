@@ -0,0 +1,126 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import com.github.osndok.mrb.grinder.util.Exec;
+import com.github.osndok.mrb.grinder.util.Workspace;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.IOException;
+
+public
+class RPMWriterTest extends Assert
+{
+	public
+	void testRoundTrip() throws IOException
+	{
+		final
+		File dir = Workspace.createTempDirectory("mrb-rpm-writer-");
+
+		try
+		{
+			RPMWriter writer = new RPMWriter("mrb-example-v1", "1.2", "0");
+			writer.setSummary("example java library, auto-converted");
+			writer.setDescription("Just an example.");
+			writer.addRequires("mrb-other-v3", RPMWriter.SENSE_GREATER | RPMWriter.SENSE_EQUAL, "3.1");
+			writer.addDirectory("/usr/share/java/example-v1", 0755);
+			writer.addFile("/usr/share/java/example-v1/example.jar", "not really a jar".getBytes("UTF-8"), 0644, RPMWriter.FILE_NONE);
+			writer.addFile("/usr/share/java/example-v1/example.deps", "example 1\n".getBytes("UTF-8"), 0644, RPMWriter.FILE_CONFIG);
+
+			File rpm = writer.write(dir);
+
+			assertEquals("mrb-example-v1-1.2-0.noarch.rpm", rpm.getName());
+
+			RPMHeader header = RPMHeader.read(rpm);
+
+			assertEquals("mrb-example-v1", header.getName());
+			assertEquals("1.2", header.getVersion());
+			assertEquals("0", header.getRelease());
+			assertTrue(header.getProvides().contains("mrb-example-v1"));
+			assertTrue(header.getRequires().contains("mrb-other-v3"));
+			assertEquals("gzip", header.getPayloadCompressor());
+
+			//The signature's size covers the header and the (compressed) payload.
+			long size = header.getSignature().getNumber(RPMHeader.SIGTAG_SIZE);
+			assertTrue(rpm.length() - size < header.getPayloadOffset());
+
+			checkWithRpmCommand(rpm);
+
+			RPMPayload payload = RPMPayload.open(rpm);
+
+			try
+			{
+				assertTrue(payload.nextEntry());
+				assertEquals("./usr/share/java/example-v1", payload.getEntryName());
+				assertFalse(payload.isRegularFile());
+
+				//NB: entries are written in path order
+				assertTrue(payload.seekToSuffix(".deps"));
+				assertEquals("example 1\n", RPMFixtures.read(payload.getInputStream()));
+
+				assertTrue(payload.seekToSuffix(".jar"));
+				assertEquals("not really a jar", RPMFixtures.read(payload.getInputStream()));
+
+				assertFalse(payload.nextEntry());
+			}
+			finally
+			{
+				payload.close();
+			}
+		}
+		finally
+		{
+			Workspace.deleteRecursively(dir);
+		}
+	}
+
+	/**
+	 * As our own readers would share any misunderstanding of the format with the writer, the real 'rpm' command
+	 * (where installed) must also be able to read (and verify the digests of) what was written.
+	 */
+	private static
+	void checkWithRpmCommand(File rpm) throws IOException
+	{
+		if (!onPath("rpm"))
+		{
+			System.err.println("rpm is not on the PATH, skipping 'rpm -qp' checks");
+			return;
+		}
+
+		final
+		String path = rpm.getAbsolutePath();
+
+		assertEquals("mrb-example-v1|1.2|0|noarch",
+						Exec.toString("rpm", "-qp", "--queryformat", "%{NAME}|%{VERSION}|%{RELEASE}|%{ARCH}", path).trim());
+
+		assertTrue(Exec.toString("rpm", "-qp", "--requires", path).contains("mrb-other-v3 >= 3.1"));
+
+		final
+		String files = Exec.toString("rpm", "-qpl", path);
+
+		assertTrue(files.contains("/usr/share/java/example-v1/example.jar"));
+		assertTrue(files.contains("/usr/share/java/example-v1/example.deps"));
+
+		//NB: throws if any digest does not match.
+		Exec.toString("rpm", "-K", path);
+	}
+
+	private static
+	boolean onPath(String command)
+	{
+		final
+		String path = System.getenv("PATH");
+
+		if (path != null)
+		{
+			for (String dir : path.split(File.pathSeparator))
+			{
+				if (new File(dir, command).canExecute())
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,131 @@
+package com.github.osndok.mrb.grinder.rpm;
+
+import com.github.osndok.mrb.grinder.util.Workspace;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public
+class RepodataWriterTest extends Assert
+{
+	public
+	void testIncrementalUpdate() throws IOException
+	{
+		final
+		File repo = Workspace.createTempDirectory("mrb-repodata-");
+
+		assertTrue(new File(repo, "repodata").mkdir());
+
+		try
+		{
+			emptyMetadata(repo);
+
+			File a = rpm(repo, "mrb-a-v1", "1.0", "/usr/share/java/a-v1/a.jar");
+			File b = rpm(repo, "mrb-b-v1", "1.0", "/usr/bin/b");
+
+			RepodataWriter writer = new RepodataWriter(repo);
+			writer.update(Arrays.asList(a.getName(), b.getName()));
+
+			String primary = metadata(repo, "primary");
+			assertTrue(primary, primary.contains("packages=\"2\""));
+			assertTrue(primary.contains("<name>mrb-a-v1</name>"));
+			assertTrue(primary.contains("<file>/usr/bin/b</file>"));
+			assertFalse(primary.contains("a.jar"));
+
+			String filelists = metadata(repo, "filelists");
+			assertTrue(filelists.contains("<file>/usr/share/java/a-v1/a.jar</file>"));
+
+			//Replacing an rpm (same file name, different contents) must not duplicate it's entries.
+			assertTrue(a.delete());
+			a = rpm(repo, "mrb-a-v1", "1.0", "/usr/share/java/a-v1/a2.jar");
+			writer.update(Collections.singletonList(a.getName()));
+
+			primary = metadata(repo, "primary");
+			assertTrue(primary, primary.contains("packages=\"2\""));
+			assertEquals(2, count(primary, "<package "));
+
+			filelists = metadata(repo, "filelists");
+			assertEquals(2, count(filelists, "<package "));
+			assertFalse(filelists.contains("a.jar"));
+			assertTrue(filelists.contains("a2.jar"));
+
+			assertEquals(2, count(metadata(repo, "other"), "<package "));
+
+			//The old metadata files are removed, leaving just the three, and repomd.xml
+			assertEquals(4, new File(repo, "repodata").list().length);
+		}
+		finally
+		{
+			Workspace.deleteRecursively(repo);
+		}
+	}
+
+	private static
+	File rpm(File repo, String name, String version, String path) throws IOException
+	{
+		return RPMFixtures.rpm(repo, name, version, path, path.getBytes("UTF-8"));
+	}
+
+	private static
+	void emptyMetadata(File repo) throws IOException
+	{
+		StringBuilder repomd = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<repomd xmlns=\"http://linux.duke.edu/metadata/repo\">\n");
+
+		String[][] types = {
+			{"primary", "metadata", "http://linux.duke.edu/metadata/common\" xmlns:rpm=\"http://linux.duke.edu/metadata/rpm"},
+			{"filelists", "filelists", "http://linux.duke.edu/metadata/filelists"},
+			{"other", "otherdata", "http://linux.duke.edu/metadata/other"},
+		};
+
+		for (String[] type : types)
+		{
+			String href = "repodata/empty-" + type[0] + ".xml.gz";
+
+			OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(repo, href)));
+			out.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<" + type[1] + " xmlns=\"" + type[2] + "\" packages=\"0\">\n</" + type[1] + ">\n").getBytes("UTF-8"));
+			out.close();
+
+			repomd.append("<data type=\"").append(type[0]).append("\"><location href=\"").append(href).append("\"/></data>\n");
+		}
+
+		repomd.append("</repomd>\n");
+
+		OutputStream out = new FileOutputStream(new File(repo, "repodata/repomd.xml"));
+		out.write(repomd.toString().getBytes("UTF-8"));
+		out.close();
+	}
+
+	private static
+	String metadata(File repo, String type) throws IOException
+	{
+		String repomd = RPMFixtures.read(new FileInputStream(new File(repo, "repodata/repomd.xml")));
+
+		Matcher matcher = Pattern.compile("<location href=\"([^\"]*-" + type + "\\.xml\\.gz)\"").matcher(repomd);
+		assertTrue(repomd, matcher.find());
+
+		return RPMFixtures.read(new GZIPInputStream(new FileInputStream(new File(repo, matcher.group(1)))));
+	}
+
+	private static
+	int count(String haystack, String needle)
+	{
+		int retval = 0;
+
+		for (int i = haystack.indexOf(needle); i >= 0; i = haystack.indexOf(needle, i + 1))
+		{
+			retval++;
+		}
+
+		return retval;
+	}
+}
@@ -0,0 +1,49 @@
+package com.github.osndok.mrb.grinder.util;
+
+import junit.framework.Assert;
+
+public
+class BloomFilterTest extends Assert
+{
+	public
+	void testNoFalseNegatives()
+	{
+		BloomFilter bloomFilter=new BloomFilter(10000);
+
+		for (int i=0; i<10000; i++)
+		{
+			bloomFilter.add("present-"+i);
+		}
+
+		for (int i=0; i<10000; i++)
+		{
+			assertTrue(bloomFilter.mightContain("present-"+i));
+		}
+
+		assertEquals(10000, bloomFilter.size());
+	}
+
+	public
+	void testFalsePositiveRate()
+	{
+		BloomFilter bloomFilter=new BloomFilter(10000);
+
+		for (int i=0; i<10000; i++)
+		{
+			bloomFilter.add("present-"+i);
+		}
+
+		int falsePositives=0;
+
+		for (int i=0; i<10000; i++)
+		{
+			if (bloomFilter.mightContain("absent-"+i))
+			{
+				falsePositives++;
+			}
+		}
+
+		//Sized for 1%, so 3% would be a sign that the hashes are not independent.
+		assertTrue("false positives: "+falsePositives, falsePositives<300);
+	}
+}
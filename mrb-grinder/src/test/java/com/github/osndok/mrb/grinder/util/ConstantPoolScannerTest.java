@@ -0,0 +1,108 @@
+package com.github.osndok.mrb.grinder.util;
+
+import junit.framework.Assert;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.JavaClass;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public
+class ConstantPoolScannerTest extends Assert
+{
+	public
+	void testAgreesWithBcel() throws IOException
+	{
+		final
+		ConstantPoolScanner scanner = new ConstantPoolScanner(Collections.<String>emptySet());
+
+		for (Class<?> c : new Class<?>[]{BloomFilter.class, GroupIdTrie.class, ConstantPoolScanner.class})
+		{
+			scanner.scan(classFile(c));
+
+			final
+			JavaClass javaClass = new ClassParser(classFile(c), c.getSimpleName() + ".class").parse();
+
+			assertEquals(javaClass.getAccessFlags(), scanner.getAccessFlags());
+			assertEquals(javaClass.isPublic(), scanner.isPublic());
+			assertEquals(javaClass.isAbstract(), scanner.isAbstract());
+			assertEquals(bcelClassNames(javaClass), scanner.getClassNames());
+		}
+	}
+
+	public
+	void testMarkers() throws IOException
+	{
+		final
+		ConstantPoolScanner scanner = new ConstantPoolScanner(Arrays.asList("testMarkers", "Ljava/lang/Deprecated;"));
+
+		scanner.scan(classFile(ConstantPoolScannerTest.class));
+		assertTrue(scanner.hasMarker());
+
+		scanner.scan(classFile(BloomFilter.class));
+		assertFalse(scanner.hasMarker());
+	}
+
+	public
+	void testNamesAreInterned() throws IOException
+	{
+		final
+		ConstantPoolScanner scanner = new ConstantPoolScanner(Collections.<String>emptySet());
+
+		scanner.scan(classFile(BloomFilter.class));
+
+		final
+		List<String> first = new ArrayList<String>(scanner.getClassNames());
+
+		final
+		int count = scanner.getInternedCount();
+
+		scanner.scan(classFile(BloomFilter.class));
+
+		assertEquals(count, scanner.getInternedCount());
+
+		for (int i = 0; i < first.size(); i++)
+		{
+			assertSame(first.get(i), scanner.getClassNames().get(i));
+		}
+	}
+
+	private
+	List<String> bcelClassNames(JavaClass javaClass)
+	{
+		final
+		List<String> retval = new ArrayList<String>();
+
+		final
+		ConstantPool constantPool = javaClass.getConstantPool();
+
+		for (Constant constant : constantPool.getConstantPool())
+		{
+			if (constant instanceof ConstantClass)
+			{
+				final
+				String name = ((ConstantClass) constant).getBytes(constantPool);
+
+				if (!name.startsWith("["))
+				{
+					retval.add(name);
+				}
+			}
+		}
+
+		return retval;
+	}
+
+	private
+	InputStream classFile(Class<?> c)
+	{
+		return c.getClassLoader().getResourceAsStream(c.getName().replace('.', '/') + ".class");
+	}
+}
@@ -0,0 +1,69 @@
+package com.github.osndok.mrb.grinder.util;
+
+import junit.framework.Assert;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public
+class DependencyGraphTest extends Assert
+{
+	public
+	void testLeavesFirst()
+	{
+		DependencyGraph<String> graph=new DependencyGraph<String>();
+
+		graph.addEdge("app", "lib");
+		graph.addEdge("app", "api");
+		graph.addEdge("lib", "api");
+		graph.addNode("loner");
+
+		List<String> order=graph.topologicalOrder();
+
+		assertEquals(4, order.size());
+		assertTrue(order.indexOf("api") < order.indexOf("lib"));
+		assertTrue(order.indexOf("lib") < order.indexOf("app"));
+		assertNull(graph.findCycle());
+
+		assertEquals(0, graph.getRequirementCounts().get("api").intValue());
+		assertEquals(2, graph.getRequirementCounts().get("app").intValue());
+	}
+
+	public
+	void testCycleDetection()
+	{
+		DependencyGraph<String> graph=new DependencyGraph<String>();
+
+		graph.addEdge("a", "b");
+		graph.addEdge("b", "c");
+		graph.addEdge("c", "a");
+		graph.addEdge("d", "a");
+
+		assertEquals(Arrays.asList("a", "b", "c", "a"), graph.findCycle());
+
+		try
+		{
+			graph.topologicalOrder();
+			fail();
+		}
+		catch (IllegalStateException e)
+		{
+			//expected
+		}
+	}
+
+	public
+	void testAllDependents()
+	{
+		DependencyGraph<String> graph=new DependencyGraph<String>();
+
+		graph.addEdge("app", "lib");
+		graph.addEdge("lib", "api");
+		graph.addEdge("other", "util");
+
+		assertEquals(Collections.singleton("app"), graph.allDependentsOf(Collections.singleton("lib")));
+		assertEquals(2, graph.allDependentsOf(Collections.singleton("api")).size());
+		assertTrue(graph.allDependentsOf(Collections.singleton("app")).isEmpty());
+	}
+}
@@ -0,0 +1,51 @@
+package com.github.osndok.mrb.grinder.util;
+
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public
+class FileHashTest extends Assert
+{
+	public
+	void testKnownValues() throws IOException
+	{
+		final
+		File file = File.createTempFile("file-hash-test-", ".bin");
+
+		try
+		{
+			write(file, "");
+			assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", FileHash.sha256(file));
+
+			//NB: a different size, so that the change is noticed even within the mtime granularity.
+			write(file, "abc");
+			assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", FileHash.sha256(file));
+
+			//...and again, from the memo (or extended attribute).
+			assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", FileHash.sha256(file));
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	private
+	void write(File file, String contents) throws IOException
+	{
+		final
+		FileOutputStream out = new FileOutputStream(file);
+
+		try
+		{
+			out.write(contents.getBytes("US-ASCII"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.github.osndok.mrb.grinder.util;
+
+import junit.framework.Assert;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public
+class GroupIdTrieTest extends Assert
+{
+	public
+	void testLongestPrefixWins()
+	{
+		Map<String, String> routes=new LinkedHashMap<String, String>();
+		routes.put("com.example", "example");
+		routes.put("com.example.secret", "secret");
+		routes.put("com.exam", "partial");
+		routes.put("org.acme.", "acme");
+
+		GroupIdTrie<String> trie=GroupIdTrie.compile(routes);
+
+		assertEquals("example", trie.get("com.example"));
+		assertEquals("example", trie.get("com.example.public"));
+		assertEquals("secret", trie.get("com.example.secret.stuff"));
+		assertEquals("com.example.secret", trie.getMatchingPrefix("com.example.secret"));
+		assertEquals("partial", trie.get("com.exams"));
+		assertEquals("acme", trie.get("org.acme.tools"));
+		assertNull(trie.get("org.acme"));
+		assertNull(trie.get("com"));
+		assertNull(trie.get("net.example"));
+	}
+
+	public
+	void testMatchesStartsWith()
+	{
+		String[] prefixes={"a", "a.b", "a.bc", "a.b.", "b.c.d", "", "ab"};
+		String[] groupIds={"a", "a.b", "a.bcd", "a.b.c", "ab.c", "b.c.de", "b.c", "x", "a.b.c.d.e"};
+
+		Map<String, String> routes=new LinkedHashMap<String, String>();
+
+		for (String prefix : prefixes)
+		{
+			routes.put(prefix, prefix);
+		}
+
+		GroupIdTrie<String> trie=GroupIdTrie.compile(routes);
+
+		for (String groupId : groupIds)
+		{
+			String expected=null;
+
+			for (String prefix : prefixes)
+			{
+				if (groupId.startsWith(prefix) && (expected==null || prefix.length()>expected.length()))
+				{
+					expected=prefix;
+				}
+			}
+
+			assertEquals(groupId, expected, trie.get(groupId));
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.github.osndok.mrb.grinder.util;
+
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public
+class WorkspaceTest extends Assert
+{
+	public
+	void testLinkOrCopy() throws IOException
+	{
+		final
+		File dir = Workspace.createTempDirectory("mrb-workspace-test-");
+
+		try
+		{
+			final
+			File from = new File(dir, "from.jar");
+
+			final
+			File to = new File(dir, "to.jar");
+
+			write(from, "new");
+			write(to, "old");
+
+			Workspace.linkOrCopy(from, to);
+
+			assertEquals("new", read(to));
+			assertEquals("new", read(from));
+		}
+		finally
+		{
+			Workspace.deleteRecursively(dir);
+		}
+
+		assertFalse(dir.exists());
+	}
+
+	public
+	void testLinkOrCopyOntoSameFile() throws IOException
+	{
+		final
+		File dir = Workspace.createTempDirectory("mrb-workspace-test-");
+
+		try
+		{
+			final
+			File from = new File(dir, "from.jar");
+
+			final
+			File to = new File(dir, "to.jar");
+
+			write(from, "new");
+
+			Workspace.linkOrCopy(from, from);
+			assertEquals("new", read(from));
+
+			//...and again, once they are (probably) links to the same file.
+			Workspace.linkOrCopy(from, to);
+			Workspace.linkOrCopy(from, to);
+			Workspace.linkOrCopy(to, from);
+
+			assertEquals("new", read(to));
+			assertEquals("new", read(from));
+		}
+		finally
+		{
+			Workspace.deleteRecursively(dir);
+		}
+	}
+
+	public
+	void testDeleteRecursively() throws IOException
+	{
+		final
+		File dir = Workspace.createTempDirectory("mrb-workspace-test-");
+
+		final
+		File noarch = new File(dir, "out/noarch");
+
+		assertTrue(noarch.mkdirs());
+		write(new File(noarch, "x-v1-1.0-1.noarch.rpm"), "rpm");
+		write(new File(dir, "x.spec"), "spec");
+
+		Workspace.deleteRecursively(dir);
+		assertFalse(dir.exists());
+
+		//...and again, which is not an error.
+		Workspace.deleteRecursively(dir);
+	}
+
+	private
+	void write(File file, String contents) throws IOException
+	{
+		final
+		FileOutputStream out = new FileOutputStream(file);
+
+		try
+		{
+			out.write(contents.getBytes("US-ASCII"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private
+	String read(File file) throws IOException
+	{
+		final
+		FileInputStream in = new FileInputStream(file);
+
+		try
+		{
+			final
+			byte[] bytes = new byte[(int) file.length()];
+
+			int offset = 0;
+
+			while (offset < bytes.length)
+			{
+				offset += in.read(bytes, offset, bytes.length - offset);
+			}
+
+			return new String(bytes, "US-ASCII");
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}